@@ -0,0 +1,74 @@
+package iuh.fit.se.client.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One server node: host, port and balancing weight. A node of weight 2 is
+ * given about twice as many outstanding requests as one of weight 1.
+ */
+public class ServerAddress {
+    private final String host;
+    private final int port;
+    private final int weight;
+
+    public ServerAddress(String host, int port, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be at least 1: " + weight);
+        }
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+    }
+
+    /**
+     * @param text "host:port", optionally followed by "/weight"
+     */
+    public static ServerAddress parse(String text) {
+        String value = text.trim();
+        int weight = 1;
+        int slash = value.indexOf('/');
+        if (slash >= 0) {
+            weight = Integer.parseInt(value.substring(slash + 1).trim());
+            value = value.substring(0, slash);
+        }
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port but got '" + text + "'");
+        }
+        return new ServerAddress(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)), weight);
+    }
+
+    /**
+     * @param text comma-separated nodes, e.g. "localhost:9999,localhost:10000/2"
+     */
+    public static List<ServerAddress> parseList(String text) {
+        List<ServerAddress> addresses = new ArrayList<>();
+        for (String item : text.split(",")) {
+            if (!item.trim().isEmpty()) {
+                addresses.add(parse(item));
+            }
+        }
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No server nodes in '" + text + "'");
+        }
+        return addresses;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port + (weight != 1 ? "/" + weight : "");
+    }
+}
@@ -1,28 +1,108 @@
 package iuh.fit.se.client.config;
 
+import iuh.fit.se.common.BinaryCodec;
 import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.SerializedCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class ServerConfig {
-    private static String host = Constants.SERVER_HOST;
-    private static int port = Constants.SERVER_PORT;
+    // "legacy" = ObjectOutputStream stream, "framed" = length-prefixed frames carrying
+    // serialized objects, "binary" = frames with the compact BinaryCodec encoding
+    public static final String PROTOCOL_LEGACY = "legacy";
+    public static final String PROTOCOL_FRAMED = "framed";
+    public static final String PROTOCOL_BINARY = "binary";
+
+    // Server nodes sharing one database, e.g. -Dclient.servers=localhost:9999,localhost:10000/2.
+    // Requests go to the healthy node with the fewest outstanding requests per unit of weight.
+    private static List<ServerAddress> servers = Collections.unmodifiableList(ServerAddress.parseList(
+            System.getProperty("client.servers", Constants.SERVER_HOST + ":" + Constants.SERVER_PORT)));
+    // How often each node is pinged; a node that fails a ping gets no requests until one succeeds
+    private static int healthCheckSeconds = Integer.getInteger("client.healthCheckSeconds", 5);
+    private static String protocol = System.getProperty("client.protocol", PROTOCOL_BINARY);
+    // Ask framed servers to deflate large replies (helps terminals on slow links)
+    private static boolean compression = Boolean.parseBoolean(System.getProperty("client.compression", "true"));
+
+    public static List<ServerAddress> getServers() {
+        return servers;
+    }
+
+    public static void setServers(List<ServerAddress> servers) {
+        if (servers.isEmpty()) {
+            throw new IllegalArgumentException("At least one server node is required");
+        }
+        ServerConfig.servers = Collections.unmodifiableList(new ArrayList<>(servers));
+    }
 
+    /**
+     * @return the first node's host
+     */
     public static String getHost() {
-        return host;
+        return servers.get(0).getHost();
     }
 
+    /**
+     * Replaces the node list with a single node.
+     */
     public static void setHost(String host) {
-        ServerConfig.host = host;
+        setServers(Collections.singletonList(new ServerAddress(host, getPort(), 1)));
     }
 
+    /**
+     * @return the first node's port
+     */
     public static int getPort() {
-        return port;
+        return servers.get(0).getPort();
     }
 
+    /**
+     * Replaces the node list with a single node.
+     */
     public static void setPort(int port) {
-        ServerConfig.port = port;
+        setServers(Collections.singletonList(new ServerAddress(getHost(), port, 1)));
+    }
+
+    public static int getHealthCheckSeconds() {
+        return healthCheckSeconds;
+    }
+
+    public static void setHealthCheckSeconds(int healthCheckSeconds) {
+        ServerConfig.healthCheckSeconds = healthCheckSeconds;
+    }
+
+    public static String getProtocol() {
+        return protocol;
+    }
+
+    public static void setProtocol(String protocol) {
+        ServerConfig.protocol = protocol;
+    }
+
+    public static boolean isCompression() {
+        return compression;
+    }
+
+    public static void setCompression(boolean compression) {
+        ServerConfig.compression = compression;
+    }
+
+    /**
+     * @return the codec to propose in the handshake, or 0 for the legacy object stream
+     */
+    public static byte getCodecId() {
+        if (PROTOCOL_BINARY.equals(protocol)) {
+            return BinaryCodec.ID;
+        }
+        if (PROTOCOL_FRAMED.equals(protocol)) {
+            return SerializedCodec.ID;
+        }
+        return 0;
     }
 
     public static String getServerAddress() {
-        return host + ":" + port;
+        return servers.stream().map(ServerAddress::toString).collect(Collectors.joining(","));
     }
 }
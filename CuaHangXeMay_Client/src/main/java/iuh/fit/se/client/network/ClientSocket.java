@@ -1,26 +1,77 @@
 package iuh.fit.se.client.network;
 
+import iuh.fit.se.client.config.ServerAddress;
 import iuh.fit.se.client.config.ServerConfig;
+import iuh.fit.se.common.Constants;
 import iuh.fit.se.common.Request;
 import iuh.fit.se.common.Response;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Connections to the server nodes in ServerConfig. Each request goes to the
+ * healthy node with the fewest outstanding requests per unit of weight; a
+ * background task pings every node and reconnects the ones that are down.
+ * Requests a node refused without running (BUSY, SHUTTING_DOWN) are sent to
+ * another node; after a lost connection only reads are, since a write may
+ * already have been applied.
+ */
 public class ClientSocket {
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+    private static final long PING_TIMEOUT_SECONDS = 3;
+
+    // Safe to send again to another node when the connection fails mid-request
+    private static final Set<String> IDEMPOTENT_ACTIONS = new HashSet<>(Arrays.asList(
+            Constants.PING, Constants.GET_ALL_USERS, Constants.GET_USER_BY_ID,
+            Constants.GET_ALL_PRODUCTS, Constants.GET_PRODUCT_BY_ID, Constants.SEARCH_PRODUCTS,
+            Constants.GET_PRODUCTS_BY_CATEGORY, Constants.GET_ALL_CATEGORIES,
+            Constants.GET_ALL_CUSTOMERS, Constants.GET_CUSTOMER_BY_ID, Constants.SEARCH_CUSTOMERS,
+            Constants.GET_ALL_ORDERS, Constants.GET_ORDER_BY_ID, Constants.GET_ORDERS_BY_CUSTOMER,
+            Constants.GET_ORDER_ITEMS, Constants.GET_ALL_INVENTORY, Constants.GET_LOW_STOCK_PRODUCTS,
+            Constants.GET_SERVER_STATS, Constants.GET_SESSIONS));
+
     private static ClientSocket instance;
-    private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private boolean isConnected;
 
-    // Add synchronization lock
+    // Built from ServerConfig on connect; empty after disconnect()
+    private volatile List<ServerNode> nodes = Collections.emptyList();
+    // Where the search for the least busy node starts, so idle nodes take turns
+    private final AtomicInteger nextNode = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+
+    // Guards connect/disconnect and subscription state; requests do not hold it for the round trip
     private final Object lock = new Object();
 
+    // Change-event listeners by topic; kept across reconnects and re-subscribed on each new channel
+    private final Map<String, List<Consumer<Response>>> listeners = new ConcurrentHashMap<>();
+    // Changes each time every open node's subscription is confirmed; 0 while one is missing.
+    // Events missed while a node's channel was down are lost, so cached data older than this is stale.
+    private volatile long subscriptionGeneration;
+    private final AtomicLong generations = new AtomicLong();
+
+    // Session token from LOGIN; added to every request that does not carry its own
+    private volatile String token;
+
     private ClientSocket() {
-        this.isConnected = false;
     }
 
     public static synchronized ClientSocket getInstance() {
@@ -30,99 +81,484 @@ public class ClientSocket {
         return instance;
     }
 
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    private Request withToken(Request request) {
+        if (request.getToken() == null) {
+            request.setToken(token);
+        }
+        return request;
+    }
+
+    /**
+     * Opens a channel to every node that has none.
+     *
+     * @return true if at least one node is available
+     */
     public boolean connect() {
         synchronized (lock) {
-            try {
-                if (socket != null && !socket.isClosed() && isConnected) {
-                    return true; // Already connected
+            if (nodes.isEmpty()) {
+                List<ServerNode> created = new ArrayList<>();
+                for (ServerAddress address : ServerConfig.getServers()) {
+                    created.add(new ServerNode(address));
                 }
+                nodes = Collections.unmodifiableList(created);
+            }
+            boolean available = false;
+            for (ServerNode node : nodes) {
+                if (node.isAvailable() || open(node)) {
+                    available = true;
+                }
+            }
+            startHealthChecks();
+            return available;
+        }
+    }
 
-                socket = new Socket(ServerConfig.getHost(), ServerConfig.getPort());
-                socket.setKeepAlive(true);
-                socket.setSoTimeout(30000); // 30 seconds timeout
-
-                out = new ObjectOutputStream(socket.getOutputStream());
-                out.flush();
-                in = new ObjectInputStream(socket.getInputStream());
+    /**
+     * Called with the lock held.
+     */
+    private boolean open(ServerNode node) {
+        ServerAddress address = node.getAddress();
+        try {
+            MultiplexedChannel channel = new MultiplexedChannel(address.getHost(), address.getPort(),
+                    ServerConfig.getCodecId(), ServerConfig.isCompression());
+            channel.setPushListener(this::onPush);
+            channel.setCloseListener(() -> onChannelClosed(node, channel));
+            node.setChannel(channel);
+            System.out.println("Connected to server: " + address);
 
-                isConnected = true;
-                System.out.println("Connected to server: " + ServerConfig.getServerAddress());
-                return true;
-            } catch (IOException e) {
-                System.err.println("Cannot connect to server: " + e.getMessage());
-                isConnected = false;
-                return false;
+            if (!listeners.isEmpty()) {
+                sendSubscribe(node, channel, new ArrayList<>(listeners.keySet()));
             }
+            updateGeneration();
+            return true;
+        } catch (IOException e) {
+            // Logged once per outage, not on every health check
+            if (node.isHealthy() || node.getChannel() == null) {
+                System.err.println("Cannot connect to server " + address + ": " + e.getMessage());
+            }
+            node.setHealthy(false);
+            return false;
         }
     }
 
     public Response sendRequest(Request request) {
-        synchronized (lock) {
-            if (!isConnected || socket == null || socket.isClosed()) {
-                if (!connect()) {
-                    return Response.error("Không thể kết nối đến server");
+        try {
+            return awaitResponse(sendRequestAsync(request));
+        } catch (ExecutionException e) {
+            System.err.println("Error sending request: " + e.getCause().getMessage());
+            return Response.error("Lỗi kết nối: " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            return Response.error("Hết thời gian chờ phản hồi từ server");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Response.error("Yêu cầu bị gián đoạn");
+        }
+    }
+
+    /**
+     * Sends without waiting; any number of requests can be in flight at once
+     * and each future completes when its own reply arrives.
+     */
+    public CompletableFuture<Response> sendRequestAsync(Request request) {
+        return send(withToken(request), new HashSet<>(), 0);
+    }
+
+    private CompletableFuture<Response> send(Request request, Set<ServerNode> tried, int attempt) {
+        ServerNode node = pick(tried);
+        MultiplexedChannel channel = node != null ? node.getChannel() : null;
+        if (channel == null) {
+            return CompletableFuture.completedFuture(Response.error("Không thể kết nối đến server"));
+        }
+        tried.add(node);
+
+        return channel.sendAsync(request).handle((response, error) -> {
+            if (error == null && !isRefused(node, response)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            boolean retry = (error == null || isIdempotent(request)) && attempt < nodes.size();
+            if (!retry) {
+                return error == null ? CompletableFuture.completedFuture(response)
+                        : CompletableFuture.<Response>failedFuture(error);
+            }
+            System.err.println("Retrying " + request.getAction() + " elsewhere: "
+                    + (error != null ? error.getMessage() : response.getMessage()));
+            return send(request, tried, attempt + 1);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Sends a request whose reply may come in CHUNK parts; onPart is called
+     * for each on the reader thread. The timeout restarts with every part,
+     * so long streams are not cut off. Moved to another node only while no
+     * part has arrived.
+     */
+    public Response sendStreaming(Request request, Consumer<Response> onPart) {
+        return sendStreaming(withToken(request), onPart, new HashSet<>(), 0);
+    }
+
+    private Response sendStreaming(Request request, Consumer<Response> onPart, Set<ServerNode> tried, int attempt) {
+        ServerNode node = pick(tried);
+        MultiplexedChannel channel = node != null ? node.getChannel() : null;
+        if (channel == null) {
+            return Response.error("Không thể kết nối đến server");
+        }
+        tried.add(node);
+
+        AtomicLong parts = new AtomicLong();
+        CompletableFuture<Response> future = channel.sendStreaming(request, part -> {
+            parts.incrementAndGet();
+            onPart.accept(part);
+        });
+        try {
+            long seen = -1;
+            while (true) {
+                try {
+                    Response response = future.get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    if (isRefused(node, response) && parts.get() == 0 && attempt < nodes.size()) {
+                        return sendStreaming(request, onPart, tried, attempt + 1);
+                    }
+                    return response;
+                } catch (TimeoutException e) {
+                    if (parts.get() == seen) {
+                        future.cancel(false);
+                        return Response.error("Hết thời gian chờ phản hồi từ server");
+                    }
+                    seen = parts.get();
                 }
             }
+        } catch (ExecutionException e) {
+            System.err.println("Error sending request: " + e.getCause().getMessage());
+            if (parts.get() == 0 && isIdempotent(request) && attempt < nodes.size()) {
+                return sendStreaming(request, onPart, tried, attempt + 1);
+            }
+            return Response.error("Lỗi kết nối: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            return Response.error("Yêu cầu bị gián đoạn");
+        }
+    }
+
+    /**
+     * Sends the request to every connected node, e.g. LOGOUT so that no node
+     * keeps accepting the session.
+     *
+     * @return the first successful reply, else the last one
+     */
+    public Response broadcast(Request request) {
+        withToken(request);
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for (ServerNode node : nodes) {
+            MultiplexedChannel channel = node.getChannel();
+            if (channel != null && channel.isOpen()) {
+                // Sent one after another: each send encodes the request before the next changes its id
+                futures.add(channel.sendAsync(request));
+            }
+        }
+        if (futures.isEmpty()) {
+            return sendRequest(request);
+        }
 
+        Response result = null;
+        for (CompletableFuture<Response> future : futures) {
+            Response response;
             try {
-                // Reset streams if needed
-                out.reset();
-                out.writeObject(request);
-                out.flush();
-
-                Response response = (Response) in.readObject();
-                return response;
-
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.println("Error sending request: " + e.getMessage());
-                e.printStackTrace();
-                disconnect();
-
-                // Try to reconnect once
-                if (connect()) {
-                    try {
-                        out.reset();
-                        out.writeObject(request);
-                        out.flush();
-                        return (Response) in.readObject();
-                    } catch (Exception ex) {
-                        return Response.error("Lỗi kết nối: " + ex.getMessage());
+                response = awaitResponse(future);
+            } catch (ExecutionException | TimeoutException e) {
+                response = Response.error("Lỗi kết nối: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Response.error("Yêu cầu bị gián đoạn");
+            }
+            if (result == null || !result.isSuccess()) {
+                result = response;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the available node with the lowest load, preferring ones not
+     *         yet tried for this request; null if no node can be reached
+     */
+    private ServerNode pick(Set<ServerNode> tried) {
+        ServerNode node = leastLoaded(tried);
+        if (node == null && !connect()) {
+            return null;
+        }
+        if (node == null) {
+            node = leastLoaded(tried);
+        }
+        // Every node has been tried: one that reconnected may take the request again
+        return node != null ? node : leastLoaded(Collections.emptySet());
+    }
+
+    private ServerNode leastLoaded(Set<ServerNode> excluded) {
+        List<ServerNode> current = nodes;
+        int count = current.size();
+        if (count == 0) {
+            return null;
+        }
+        int start = Math.floorMod(nextNode.getAndIncrement(), count);
+        ServerNode best = null;
+        double bestLoad = 0;
+        for (int i = 0; i < count; i++) {
+            ServerNode node = current.get((start + i) % count);
+            if (!node.isAvailable() || excluded.contains(node)) {
+                continue;
+            }
+            double load = node.getLoad();
+            if (best == null || load < bestLoad) {
+                best = node;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the node turned the request away without running it;
+     *         a node that is shutting down is also taken out of rotation
+     */
+    private boolean isRefused(ServerNode node, Response response) {
+        if (Constants.SHUTTING_DOWN.equals(response.getStatus())) {
+            node.setHealthy(false);
+            return true;
+        }
+        return Constants.BUSY.equals(response.getStatus());
+    }
+
+    private boolean isIdempotent(Request request) {
+        if (!Constants.BATCH.equals(request.getAction())) {
+            return IDEMPOTENT_ACTIONS.contains(request.getAction());
+        }
+        Object requests = request.getData("requests");
+        if (!(requests instanceof List)) {
+            return false;
+        }
+        for (Object item : (List<?>) requests) {
+            if (!(item instanceof Request) || !isIdempotent((Request) item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Response awaitResponse(CompletableFuture<Response> future)
+            throws ExecutionException, TimeoutException, InterruptedException {
+        try {
+            return future.get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void startHealthChecks() {
+        if (healthChecker != null) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "server-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ServerConfig.getHealthCheckSeconds());
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, period, period, TimeUnit.SECONDS);
+    }
+
+    private void checkHealth() {
+        for (ServerNode node : nodes) {
+            MultiplexedChannel channel = node.getChannel();
+            if (channel == null || !channel.isOpen()) {
+                // A node that announced shutdown keeps its channel until the replies it owes have arrived
+                if (channel != null && channel.getOutstandingRequests() > 0) {
+                    continue;
+                }
+                synchronized (lock) {
+                    if (nodes.contains(node) && node.getChannel() == channel) {
+                        if (channel != null) {
+                            channel.close();
+                        }
+                        open(node);
                     }
                 }
-
-                return Response.error("Lỗi kết nối: " + e.getMessage());
+                continue;
+            }
+            try {
+                Response pong = channel.sendAsync(new Request(Constants.PING)).get(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                node.setHealthy(pong.isSuccess());
+            } catch (ExecutionException | TimeoutException e) {
+                if (node.isHealthy()) {
+                    System.err.println("Server " + node.getAddress() + " failed health check: " + e.getMessage());
+                }
+                node.setHealthy(false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
-    public void disconnect() {
+    /**
+     * Calls the listener for every change event on the topic. Listeners run
+     * on a socket reader thread and must hand work to the UI thread.
+     * Only framed protocols can receive events; every node is subscribed,
+     * since each pushes only the changes made through it.
+     */
+    public void subscribe(String topic, Consumer<Response> listener) {
         synchronized (lock) {
-            try {
-                isConnected = false;
-                if (in != null) {
-                    try { in.close(); } catch (Exception e) {}
+            boolean first = !listeners.containsKey(topic);
+            listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+            if (!first) {
+                return;
+            }
+            for (ServerNode node : nodes) {
+                MultiplexedChannel channel = node.getChannel();
+                if (channel != null && channel.isOpen()) {
+                    sendSubscribe(node, channel, Collections.singletonList(topic));
                 }
-                if (out != null) {
-                    try { out.close(); } catch (Exception e) {}
+            }
+        }
+    }
+
+    /**
+     * Forgets all listeners, e.g. on logout when the server has dropped this
+     * connection's subscriptions and the panels holding them are gone.
+     */
+    public void clearSubscriptions() {
+        synchronized (lock) {
+            listeners.clear();
+            for (ServerNode node : nodes) {
+                node.setSubscribedChannel(null);
+            }
+            subscriptionGeneration = 0;
+        }
+    }
+
+    private void sendSubscribe(ServerNode node, MultiplexedChannel channel, Collection<String> topics) {
+        Request request = new Request(Constants.SUBSCRIBE);
+        request.addData("topics", new ArrayList<>(topics));
+        channel.sendAsync(withToken(request)).whenComplete((response, error) -> {
+            if (error != null || !response.isSuccess()) {
+                System.err.println("Change subscription failed on " + node.getAddress() + ": "
+                        + (error != null ? error.getMessage() : response.getMessage()));
+                return;
+            }
+            synchronized (lock) {
+                if (node.getChannel() == channel) {
+                    node.setSubscribedChannel(channel);
+                    updateGeneration();
                 }
-                if (socket != null && !socket.isClosed()) {
-                    try { socket.close(); } catch (Exception e) {}
+            }
+        });
+    }
+
+    private void onChannelClosed(ServerNode node, MultiplexedChannel channel) {
+        synchronized (lock) {
+            if (node.getChannel() != channel) {
+                return;
+            }
+            node.setHealthy(false);
+            if (node.isSubscribed()) {
+                // Changes made through this node may not have reached us
+                node.setSubscribedChannel(null);
+                subscriptionGeneration = 0;
+            }
+            updateGeneration();
+        }
+    }
+
+    /**
+     * Called with the lock held. Starts a new generation once every open
+     * node has confirmed its subscription.
+     */
+    private void updateGeneration() {
+        boolean live = !listeners.isEmpty();
+        boolean anyOpen = false;
+        for (ServerNode node : nodes) {
+            MultiplexedChannel channel = node.getChannel();
+            if (channel == null || !channel.isOpen()) {
+                continue;
+            }
+            anyOpen = true;
+            if (!node.isSubscribed()) {
+                live = false;
+            }
+        }
+        if (!live || !anyOpen) {
+            subscriptionGeneration = 0;
+        } else if (subscriptionGeneration == 0) {
+            subscriptionGeneration = generations.incrementAndGet();
+        }
+    }
+
+    private void onPush(Response message) {
+        if (!Constants.EVENT.equals(message.getStatus())) {
+            return;
+        }
+        List<Consumer<Response>> topicListeners = listeners.get(message.getMessage());
+        if (topicListeners != null) {
+            for (Consumer<Response> listener : topicListeners) {
+                listener.accept(message);
+            }
+        }
+    }
+
+    public long getSubscriptionGeneration() {
+        return subscriptionGeneration;
+    }
+
+    /**
+     * @return true if data loaded at the given generation is still being kept
+     *         current by change events
+     */
+    public boolean isLive(long generation) {
+        return generation != 0 && generation == subscriptionGeneration && isConnected();
+    }
+
+    public void disconnect() {
+        synchronized (lock) {
+            if (healthChecker != null) {
+                healthChecker.shutdownNow();
+                healthChecker = null;
+            }
+            List<ServerNode> closing = nodes;
+            // Cleared first so the close listeners below find nothing to update
+            nodes = Collections.emptyList();
+            for (ServerNode node : closing) {
+                MultiplexedChannel channel = node.getChannel();
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } catch (Exception e) {
+                    System.err.println("Error disconnecting: " + e.getMessage());
                 }
-                System.out.println("Disconnected from server");
-            } catch (Exception e) {
-                System.err.println("Error disconnecting: " + e.getMessage());
-            } finally {
-                socket = null;
-                in = null;
-                out = null;
             }
+            subscriptionGeneration = 0;
+            System.out.println("Disconnected from server");
         }
     }
 
     public boolean isConnected() {
-        synchronized (lock) {
-            return isConnected && socket != null && !socket.isClosed();
+        for (ServerNode node : nodes) {
+            if (node.isAvailable()) {
+                return true;
+            }
         }
+        return false;
     }
 
     public void reconnect() {
@@ -0,0 +1,254 @@
+package iuh.fit.se.client.network;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.FrameIO;
+import iuh.fit.se.common.MessageCodec;
+import iuh.fit.se.common.PayloadCompressor;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * One socket to the server carrying many in-flight requests. Each request
+ * gets a correlation id; a reader thread completes the matching future when
+ * the reply arrives, in whatever order the server sends them.
+ */
+public class MultiplexedChannel {
+    private final Socket socket;
+    // null = legacy object stream
+    private final MessageCodec codec;
+    // null unless the server agreed to compress in the handshake
+    private PayloadCompressor compressor;
+    private ObjectOutputStream out;
+    private ObjectInputStream in;
+    private DataOutputStream frameOut;
+    private DataInputStream frameIn;
+
+    private final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    // CHUNK replies of streaming requests, by correlation id
+    private final Map<Long, Consumer<Response>> partListeners = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean open;
+    // Server announced shutdown: replies still arrive, new requests should go elsewhere
+    private volatile boolean serverClosing;
+    // Receives change events; runs on the reader thread, so it must not block
+    private volatile Consumer<Response> pushListener;
+    // Told once when the channel closes, whatever the cause
+    private volatile Runnable closeListener;
+
+    /**
+     * @param codecId codec to propose in the framed handshake, or 0 for the legacy object stream
+     * @param compression whether to offer Deflate compression (framed protocols only)
+     */
+    public MultiplexedChannel(String host, int port, byte codecId, boolean compression) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setKeepAlive(true);
+        socket.setTcpNoDelay(true);
+
+        if (codecId != 0) {
+            frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            try {
+                FrameIO.writeClientHello(frameOut, codecId, compression ? FrameIO.CAP_DEFLATE : 0);
+                FrameIO.Handshake handshake = FrameIO.readServerHello(frameIn);
+                codec = handshake.getCodec();
+                if (handshake.hasCapability(FrameIO.CAP_DEFLATE)) {
+                    compressor = new PayloadCompressor(PayloadCompressor.DEFAULT_THRESHOLD);
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        } else {
+            codec = null;
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(socket.getInputStream());
+        }
+        open = true;
+
+        Thread reader = new Thread(this::readLoop, "server-reader-" + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Like sendAsync, but CHUNK replies that arrive before the final response
+     * go to onPart, in order, on the reader thread.
+     */
+    public CompletableFuture<Response> sendStreaming(Request request, Consumer<Response> onPart) {
+        return send(request, onPart);
+    }
+
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return send(request, null);
+    }
+
+    private CompletableFuture<Response> send(Request request, Consumer<Response> onPart) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (!open) {
+            future.completeExceptionally(new IOException("Connection closed"));
+            return future;
+        }
+
+        long id = nextCorrelationId.incrementAndGet();
+        request.setCorrelationId(id);
+        pending.put(id, future);
+        if (onPart != null) {
+            partListeners.put(id, onPart);
+        }
+        // Also drops the entry when the caller times out or cancels
+        future.whenComplete((response, error) -> {
+            pending.remove(id);
+            partListeners.remove(id);
+        });
+
+        try {
+            write(request);
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            close();
+        }
+        return future;
+    }
+
+    private void write(Request request) throws IOException {
+        writeLock.lock();
+        try {
+            if (codec != null) {
+                byte[] payload = codec.encode(request);
+                byte flags = 0;
+                if (compressor != null && compressor.shouldCompress(payload.length)) {
+                    byte[] compressed = compressor.compress(payload);
+                    if (compressed.length < payload.length) {
+                        payload = compressed;
+                        flags = FrameIO.FLAG_COMPRESSED;
+                    }
+                }
+                FrameIO.writeFrame(frameOut, flags, request.getCorrelationId(), payload);
+            } else {
+                out.reset();
+                out.writeObject(request);
+                out.flush();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private Response read() throws IOException, ClassNotFoundException {
+        if (codec != null) {
+            FrameIO.Frame frame = FrameIO.readFrame(frameIn);
+            byte[] payload = frame.getPayload();
+            if (frame.isCompressed()) {
+                if (compressor == null) {
+                    throw new IOException("Unexpected compressed frame");
+                }
+                payload = compressor.decompress(payload);
+            }
+            Response response = (Response) codec.decode(payload);
+            response.setCorrelationId(frame.getCorrelationId());
+            return response;
+        }
+        return (Response) in.readObject();
+    }
+
+    private void readLoop() {
+        try {
+            while (open) {
+                Response response = read();
+                if (codec != null && response.getCorrelationId() == 0) {
+                    onPush(response);
+                    continue;
+                }
+                if (Constants.CHUNK.equals(response.getStatus())) {
+                    Consumer<Response> listener = partListeners.get(response.getCorrelationId());
+                    if (listener != null) {
+                        listener.accept(response);
+                    }
+                    continue;
+                }
+                CompletableFuture<Response> future = pending.get(response.getCorrelationId());
+                if (future != null) {
+                    future.complete(response);
+                } else {
+                    System.err.println("Unexpected response id " + response.getCorrelationId()
+                            + ": " + response.getMessage());
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            if (open) {
+                System.err.println("Connection to server lost: " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    public void setPushListener(Consumer<Response> pushListener) {
+        this.pushListener = pushListener;
+    }
+
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
+    private void onPush(Response message) {
+        if (Constants.SHUTTING_DOWN.equals(message.getStatus())) {
+            serverClosing = true;
+            System.err.println("Server is shutting down: " + message.getMessage());
+            return;
+        }
+        Consumer<Response> listener = pushListener;
+        if (listener != null) {
+            listener.accept(message);
+        }
+    }
+
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+
+        if (compressor != null) {
+            compressor.close();
+        }
+
+        IOException closed = new IOException("Connection closed");
+        for (CompletableFuture<Response> future : pending.values()) {
+            future.completeExceptionally(closed);
+        }
+
+        Runnable listener = closeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return false once the server has announced shutdown, so callers
+     *         reconnect instead of sending more requests here
+     */
+    public boolean isOpen() {
+        return open && !serverClosing && !socket.isClosed();
+    }
+
+    public int getOutstandingRequests() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,64 @@
+package iuh.fit.se.client.network;
+
+import iuh.fit.se.client.config.ServerAddress;
+
+/**
+ * One server from ServerConfig's list, with its current channel and health.
+ * ClientSocket sends requests only to available nodes.
+ */
+class ServerNode {
+    private final ServerAddress address;
+    private volatile MultiplexedChannel channel;
+    // Cleared by a failed ping or refused connection, set again by a successful one
+    private volatile boolean healthy;
+    // The channel whose change-event subscription the server has confirmed
+    private volatile MultiplexedChannel subscribedChannel;
+
+    ServerNode(ServerAddress address) {
+        this.address = address;
+    }
+
+    ServerAddress getAddress() {
+        return address;
+    }
+
+    MultiplexedChannel getChannel() {
+        return channel;
+    }
+
+    void setChannel(MultiplexedChannel channel) {
+        this.channel = channel;
+        this.healthy = true;
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    boolean isAvailable() {
+        MultiplexedChannel current = channel;
+        return healthy && current != null && current.isOpen();
+    }
+
+    /**
+     * @return outstanding requests (counting the next one) per unit of weight; lower is less busy
+     */
+    double getLoad() {
+        MultiplexedChannel current = channel;
+        int outstanding = current != null ? current.getOutstandingRequests() : 0;
+        return (outstanding + 1.0) / address.getWeight();
+    }
+
+    boolean isSubscribed() {
+        MultiplexedChannel current = channel;
+        return current != null && current == subscribedChannel;
+    }
+
+    void setSubscribedChannel(MultiplexedChannel subscribedChannel) {
+        this.subscribedChannel = subscribedChannel;
+    }
+}
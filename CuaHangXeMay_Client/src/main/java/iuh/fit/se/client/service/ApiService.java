@@ -4,21 +4,89 @@ import iuh.fit.se.client.network.ClientSocket;
 import iuh.fit.se.common.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class ApiService {
+    // Rows per page for the tables that load more on scroll
+    private static final int PAGE_SIZE = 100;
+
     private ClientSocket clientSocket;
 
     public ApiService() {
         this.clientSocket = ClientSocket.getInstance();
     }
 
+    /**
+     * Starts a batch: add requests, then execute() sends them in one round trip.
+     */
+    public BatchRequest batch() {
+        return new BatchRequest(clientSocket);
+    }
+
+    /**
+     * Receives pushed changes for a topic (Constants.TOPIC_*). The listener
+     * runs on the network thread.
+     */
+    public void subscribe(String topic, Consumer<ChangeEvent> listener) {
+        clientSocket.subscribe(topic, message -> listener.accept(ChangeEvent.from(message)));
+    }
+
+    public long getSubscriptionGeneration() {
+        return clientSocket.getSubscriptionGeneration();
+    }
+
+    /**
+     * @return true if a list loaded at this generation is still kept current by change events
+     */
+    public boolean isLive(long generation) {
+        return clientSocket.isLive(generation);
+    }
+
+    private Request pageRequest(String action, String cursor) {
+        Request request = new Request(action);
+        request.addData(Constants.PAGE_SIZE, PAGE_SIZE);
+        if (cursor != null) {
+            request.addData(Constants.CURSOR, cursor);
+        }
+        return request;
+    }
+
+    private Response stream(Request request, Consumer<List<?>> onRows) {
+        request.addData(Constants.STREAM, true);
+        Response response = clientSocket.sendStreaming(request, part -> onRows.accept((List<?>) part.getData()));
+        if (response.isSuccess() && response.getData() instanceof List) {
+            // Legacy connections cannot stream: the server sent every row in the final reply
+            onRows.accept((List<?>) response.getData());
+        }
+        return response;
+    }
+
     // Authentication
+    /**
+     * Keeps the session token for later requests; the data of a successful
+     * reply is the logged-in User.
+     */
     public Response login(String username, String password) {
         Request request = new Request(Constants.LOGIN);
         request.addData("username", username);
         request.addData("password", password);
-        return clientSocket.sendRequest(request);
+        Response response = clientSocket.sendRequest(request);
+        if (!response.isSuccess() || !(response.getData() instanceof Map)) {
+            return response;
+        }
+        Map<?, ?> data = (Map<?, ?>) response.getData();
+        clientSocket.setToken((String) data.get("token"));
+        return Response.success(response.getMessage(), data.get("user"));
+    }
+
+    public Response logout() {
+        // Every node may have adopted the token, so every node must forget it
+        Response response = clientSocket.broadcast(new Request(Constants.LOGOUT));
+        clientSocket.setToken(null);
+        clientSocket.clearSubscriptions();
+        return response;
     }
 
     // User Management
@@ -26,6 +94,13 @@ public class ApiService {
         return clientSocket.sendRequest(new Request(Constants.GET_ALL_USERS));
     }
 
+    /**
+     * One page of users, newest first; see streamProducts.
+     */
+    public Response streamUsers(String cursor, Consumer<List<?>> onRows) {
+        return stream(pageRequest(Constants.GET_ALL_USERS, cursor), onRows);
+    }
+
     public Response getUserById(int id) {
         Request request = new Request(Constants.GET_USER_BY_ID);
         request.addData("id", id);
@@ -55,6 +130,16 @@ public class ApiService {
         return clientSocket.sendRequest(new Request(Constants.GET_ALL_PRODUCTS));
     }
 
+    /**
+     * One page of products, newest first, handed to onRows a chunk at a time
+     * as the server reads it. onRows runs on the network thread.
+     *
+     * @param cursor the previous page's continuation token, or null for the first page
+     */
+    public Response streamProducts(String cursor, Consumer<List<?>> onRows) {
+        return stream(pageRequest(Constants.GET_ALL_PRODUCTS, cursor), onRows);
+    }
+
     public Response getProductById(int id) {
         Request request = new Request(Constants.GET_PRODUCT_BY_ID);
         request.addData("id", id);
@@ -107,6 +192,13 @@ public class ApiService {
         return clientSocket.sendRequest(new Request(Constants.GET_ALL_CUSTOMERS));
     }
 
+    /**
+     * One page of customers, newest first; see streamProducts.
+     */
+    public Response streamCustomers(String cursor, Consumer<List<?>> onRows) {
+        return stream(pageRequest(Constants.GET_ALL_CUSTOMERS, cursor), onRows);
+    }
+
     public Response getCustomerById(int id) {
         Request request = new Request(Constants.GET_CUSTOMER_BY_ID);
         request.addData("id", id);
@@ -142,6 +234,22 @@ public class ApiService {
         return clientSocket.sendRequest(new Request(Constants.GET_ALL_ORDERS));
     }
 
+    /**
+     * One page of orders, newest first; see streamProducts.
+     */
+    public Response streamOrders(String cursor, Consumer<List<?>> onRows) {
+        return stream(pageRequest(Constants.GET_ALL_ORDERS, cursor), onRows);
+    }
+
+    /**
+     * One page of orders, newest first, in a single reply.
+     *
+     * @param cursor the previous page's continuation token, or null for the first page
+     */
+    public Response getOrdersPage(String cursor) {
+        return clientSocket.sendRequest(pageRequest(Constants.GET_ALL_ORDERS, cursor));
+    }
+
     public Response getOrderById(int id) {
         Request request = new Request(Constants.GET_ORDER_BY_ID);
         request.addData("id", id);
@@ -0,0 +1,54 @@
+package iuh.fit.se.client.service;
+
+import iuh.fit.se.client.network.ClientSocket;
+import iuh.fit.se.common.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Several requests sent as one BATCH, e.g.
+ * <pre>
+ * List&lt;Response&gt; responses = apiService.batch()
+ *         .add(Constants.GET_ALL_PRODUCTS)
+ *         .add(Constants.GET_ALL_CUSTOMERS)
+ *         .execute();
+ * </pre>
+ * The server runs the reads in parallel, so this costs one round trip plus
+ * the slowest request. Responses come back in the order requests were added.
+ */
+public class BatchRequest {
+    private final ClientSocket clientSocket;
+    private final List<Request> requests = new ArrayList<>();
+
+    BatchRequest(ClientSocket clientSocket) {
+        this.clientSocket = clientSocket;
+    }
+
+    public BatchRequest add(String action) {
+        return add(new Request(action));
+    }
+
+    public BatchRequest add(Request request) {
+        requests.add(request);
+        return this;
+    }
+
+    /**
+     * @return one response per request; if the batch itself fails (server
+     *         busy, connection lost) every entry is that failure
+     */
+    @SuppressWarnings("unchecked")
+    public List<Response> execute() {
+        Request request = new Request(Constants.BATCH);
+        request.addData("requests", new ArrayList<>(requests));
+        Response response = clientSocket.sendRequest(request);
+
+        if (response.isSuccess() && response.getData() instanceof List
+                && ((List<?>) response.getData()).size() == requests.size()) {
+            return (List<Response>) response.getData();
+        }
+        return new ArrayList<>(Collections.nCopies(requests.size(), response));
+    }
+}
@@ -0,0 +1,47 @@
+package iuh.fit.se.client.service;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.Response;
+
+import java.util.Map;
+
+/**
+ * One change pushed by the server for a subscribed topic.
+ */
+public class ChangeEvent {
+    private final String topic;
+    private final String op;
+    private final int id;
+    private final Object entity;
+
+    private ChangeEvent(String topic, String op, int id, Object entity) {
+        this.topic = topic;
+        this.op = op;
+        this.id = id;
+        this.entity = entity;
+    }
+
+    static ChangeEvent from(Response message) {
+        Map<?, ?> data = (Map<?, ?>) message.getData();
+        Object id = data.get("id");
+        return new ChangeEvent((String) data.get("topic"), (String) data.get("op"),
+                id instanceof Number ? ((Number) id).intValue() : 0, data.get("entity"));
+    }
+
+    public String getTopic() { return topic; }
+    public String getOp() { return op; }
+    public int getId() { return id; }
+
+    /**
+     * @return the row after the change, or null if it has to be fetched
+     */
+    public Object getEntity() { return entity; }
+
+    public boolean isCreated() {
+        return Constants.EVENT_CREATED.equals(op);
+    }
+
+    public boolean isDeleted() {
+        return Constants.EVENT_DELETED.equals(op);
+    }
+}
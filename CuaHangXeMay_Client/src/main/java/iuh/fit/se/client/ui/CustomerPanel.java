@@ -3,6 +3,8 @@ package iuh.fit.se.client.ui;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import iuh.fit.se.client.service.ApiService;
+import iuh.fit.se.client.service.ChangeEvent;
+import iuh.fit.se.common.Constants;
 import iuh.fit.se.common.Customer;
 import iuh.fit.se.common.Response;
 import iuh.fit.se.common.User;
@@ -10,6 +12,7 @@ import iuh.fit.se.common.User;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
 
 public class CustomerPanel extends JPanel {
@@ -21,6 +24,11 @@ public class CustomerPanel extends JPanel {
     private DefaultTableModel tableModel;
     private JTextField txtSearch;
     private JButton btnAdd, btnEdit, btnDelete, btnRefresh, btnSearch;
+    // Subscription generation the table was loaded under; 0 = not kept current (e.g. search results)
+    private long loadedGeneration;
+    private PageLoader pages;
+    // Change events received while a page is loading, applied once it is in the table
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
 
     public CustomerPanel(User user) {
         this.currentUser = user;
@@ -28,6 +36,7 @@ public class CustomerPanel extends JPanel {
         this.gson = new Gson();
         initComponents();
         loadCustomers();
+        apiService.subscribe(Constants.TOPIC_CUSTOMERS, event -> SwingUtilities.invokeLater(() -> applyChange(event)));
     }
 
     private void initComponents() {
@@ -98,6 +107,8 @@ public class CustomerPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(customerTable);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(189, 195, 199)));
         add(scrollPane, BorderLayout.CENTER);
+        pages = new PageLoader(this, scrollPane, apiService::streamCustomers,
+                this::addCustomers, this::applyPendingChanges);
     }
 
     private JButton createButton(String text, Color bgColor) {
@@ -113,50 +124,82 @@ public class CustomerPanel extends JPanel {
     }
 
     public void refresh() {
-        loadCustomers();
+        // Change events keep the table current; reload only if some may have been missed
+        if (!apiService.isLive(loadedGeneration)) {
+            loadCustomers();
+        }
     }
 
-    private void loadCustomers() {
-        tableModel.setRowCount(0);
-
-        SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
-            @Override
-            protected Response doInBackground() throws Exception {
-                return apiService.getAllCustomers();
-            }
+    private void applyChange(ChangeEvent event) {
+        if (loadedGeneration == 0) {
+            return;
+        }
+        if (pages.isLoading()) {
+            pendingChanges.add(event);
+            return;
+        }
+        if (!event.isCreated() && TableRows.indexOf(tableModel, event.getId()) < 0) {
+            // Not on a page loaded so far
+            return;
+        }
+        if (event.isDeleted()) {
+            TableRows.remove(tableModel, event.getId());
+        } else if (event.getEntity() != null) {
+            Customer customer = gson.fromJson(gson.toJson(event.getEntity()), Customer.class);
+            TableRows.upsert(tableModel, customer.getId(), toRow(customer));
+        } else {
+            SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
+                @Override
+                protected Response doInBackground() throws Exception {
+                    return apiService.getCustomerById(event.getId());
+                }
 
-            @Override
-            protected void done() {
-                try {
-                    Response response = get();
-                    if (response.isSuccess()) {
-                        String json = gson.toJson(response.getData());
-                        List<Customer> customers = gson.fromJson(json, new TypeToken<List<Customer>>(){}.getType());
-
-                        for (Customer c : customers) {
-                            tableModel.addRow(new Object[]{
-                                    c.getId(),
-                                    c.getFullName(),
-                                    c.getEmail(),
-                                    c.getPhone(),
-                                    c.getAddress(),
-                                    c.getCity(),
-                                    c.getDistrict(),
-                                    c.getLoyaltyPoints(),
-                                    String.format("%,.0f đ", c.getTotalSpent())
-                            });
+                @Override
+                protected void done() {
+                    try {
+                        Response response = get();
+                        if (response.isSuccess() && loadedGeneration != 0) {
+                            Customer customer = gson.fromJson(gson.toJson(response.getData()), Customer.class);
+                            TableRows.upsert(tableModel, customer.getId(), toRow(customer));
                         }
-                    } else {
-                        JOptionPane.showMessageDialog(CustomerPanel.this,
-                                response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+                    } catch (Exception e) {
+                        System.err.println("Error applying customer change: " + e.getMessage());
                     }
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(CustomerPanel.this,
-                            "Lỗi: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
                 }
-            }
+            };
+            worker.execute();
+        }
+    }
+
+    private Object[] toRow(Customer c) {
+        return new Object[]{
+                c.getId(), c.getFullName(), c.getEmail(), c.getPhone(),
+                c.getAddress(), c.getCity(), c.getDistrict(),
+                c.getLoyaltyPoints(), String.format("%,.0f đ", c.getTotalSpent())
         };
-        worker.execute();
+    }
+
+    private void loadCustomers() {
+        tableModel.setRowCount(0);
+        pendingChanges.clear();
+        loadedGeneration = apiService.getSubscriptionGeneration();
+        // First page only; later pages load as the table is scrolled
+        pages.reload();
+    }
+
+    private void addCustomers(List<?> rows) {
+        List<Customer> customers = gson.fromJson(gson.toJson(rows), new TypeToken<List<Customer>>(){}.getType());
+        for (Customer c : customers) {
+            tableModel.addRow(toRow(c));
+        }
+    }
+
+    private void applyPendingChanges() {
+        List<ChangeEvent> changes = new ArrayList<>(pendingChanges);
+        pendingChanges.clear();
+        for (ChangeEvent change : changes) {
+            applyChange(change);
+        }
     }
 
     private void searchCustomers() {
@@ -167,6 +210,8 @@ public class CustomerPanel extends JPanel {
         }
 
         tableModel.setRowCount(0);
+        loadedGeneration = 0;
+        pages.stop();
         Response response = apiService.searchCustomers(keyword);
 
         if (response.isSuccess()) {
@@ -174,11 +219,7 @@ public class CustomerPanel extends JPanel {
             List<Customer> customers = gson.fromJson(json, new TypeToken<List<Customer>>(){}.getType());
 
             for (Customer c : customers) {
-                tableModel.addRow(new Object[]{
-                        c.getId(), c.getFullName(), c.getEmail(), c.getPhone(),
-                        c.getAddress(), c.getCity(), c.getDistrict(),
-                        c.getLoyaltyPoints(), String.format("%,.0f đ", c.getTotalSpent())
-                });
+                tableModel.addRow(toRow(c));
             }
         }
     }
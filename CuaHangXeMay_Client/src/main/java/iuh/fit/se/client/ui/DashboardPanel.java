@@ -1,8 +1,10 @@
 package iuh.fit.se.client.ui;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import iuh.fit.se.client.service.ApiService;
+import iuh.fit.se.common.Constants;
 import iuh.fit.se.common.Response;
 import iuh.fit.se.common.User;
 
@@ -37,7 +39,8 @@ public class DashboardPanel extends JPanel {
     public DashboardPanel(User user) {
         this.currentUser = user;
         this.apiService = new ApiService();
-        this.gson = new Gson();
+        // createdAt must read as yyyy-MM-dd... for the date filters below
+        this.gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss").create();
         this.currencyFormat = NumberFormat.getInstance(new Locale("vi", "VN"));
         this.dateFormat = new SimpleDateFormat("dd/MM/yyyy");
 
@@ -204,8 +207,14 @@ public class DashboardPanel extends JPanel {
             protected Map<String, Object> doInBackground() throws Exception {
                 Map<String, Object> stats = new HashMap<>();
 
+                // One round trip for both lists
+                List<Response> responses = apiService.batch()
+                        .add(Constants.GET_ALL_PRODUCTS)
+                        .add(Constants.GET_ALL_CUSTOMERS)
+                        .execute();
+
                 // Get total products
-                Response productResponse = apiService.getAllProducts();
+                Response productResponse = responses.get(0);
                 if (productResponse.isSuccess()) {
                     String json = gson.toJson(productResponse.getData());
                     List<?> products = gson.fromJson(json, List.class);
@@ -213,7 +222,7 @@ public class DashboardPanel extends JPanel {
                 }
 
                 // Get total customers
-                Response customerResponse = apiService.getAllCustomers();
+                Response customerResponse = responses.get(1);
                 if (customerResponse.isSuccess()) {
                     String json = gson.toJson(customerResponse.getData());
                     List<?> customers = gson.fromJson(json, List.class);
@@ -221,12 +230,9 @@ public class DashboardPanel extends JPanel {
                 }
 
                 // Get today's orders and revenue
-                Response orderResponse = apiService.getAllOrders();
-                if (orderResponse.isSuccess()) {
-                    String json = gson.toJson(orderResponse.getData());
-                    List<Map<String, Object>> orders = gson.fromJson(json, new TypeToken<List<Map<String, Object>>>(){}.getType());
-
-                    String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+                String today = new SimpleDateFormat("yyyy-MM-dd").format(new Date());
+                List<Map<String, Object>> orders = loadOrdersSince(today);
+                if (orders != null) {
                     int todayOrderCount = 0;
                     BigDecimal todayRevenue = BigDecimal.ZERO;
 
@@ -288,14 +294,11 @@ public class DashboardPanel extends JPanel {
         SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() throws Exception {
-                Response orderResponse = apiService.getAllOrders();
-                if (!orderResponse.isSuccess()) {
+                List<Map<String, Object>> orders = loadOrdersSince(getRangeStart(timeRange));
+                if (orders == null) {
                     return null;
                 }
 
-                String json = gson.toJson(orderResponse.getData());
-                List<Map<String, Object>> orders = gson.fromJson(json, new TypeToken<List<Map<String, Object>>>(){}.getType());
-
                 // Filter orders by time range
                 List<Map<String, Object>> filteredOrders = filterOrdersByTimeRange(orders, timeRange);
 
@@ -311,6 +314,60 @@ public class DashboardPanel extends JPanel {
         worker.execute();
     }
 
+    /**
+     * Orders created on or after the given day (yyyy-MM-dd), newest first.
+     * Order ids follow creation time, so paging stops at the first order
+     * older than that day instead of pulling the whole history.
+     *
+     * @return null if the orders could not be loaded
+     */
+    private List<Map<String, Object>> loadOrdersSince(String day) {
+        List<Map<String, Object>> orders = new ArrayList<>();
+        String cursor = null;
+        do {
+            Response response = apiService.getOrdersPage(cursor);
+            if (!response.isSuccess()) {
+                return null;
+            }
+            String json = gson.toJson(response.getData());
+            List<Map<String, Object>> page = gson.fromJson(json, new TypeToken<List<Map<String, Object>>>(){}.getType());
+            for (Map<String, Object> order : page) {
+                String createdAt = (String) order.get("createdAt");
+                if (createdAt != null && createdAt.compareTo(day) < 0) {
+                    return orders;
+                }
+                orders.add(order);
+            }
+            cursor = response.getContinuationToken();
+        } while (cursor != null);
+        return orders;
+    }
+
+    // First day (yyyy-MM-dd) that filterOrdersByTimeRange can include
+    private String getRangeStart(String timeRange) {
+        Calendar cal = Calendar.getInstance();
+        switch (timeRange) {
+            case "7 ngày gần nhất":
+                cal.add(Calendar.DAY_OF_MONTH, -7);
+                break;
+            case "Tháng này":
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                break;
+            case "Tháng trước":
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                cal.add(Calendar.MONTH, -1);
+                break;
+            case "Quý này":
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                cal.set(Calendar.MONTH, cal.get(Calendar.MONTH) / 3 * 3);
+                break;
+            default:
+                cal.set(Calendar.DAY_OF_YEAR, 1);
+                break;
+        }
+        return new SimpleDateFormat("yyyy-MM-dd").format(cal.getTime());
+    }
+
     private List<Map<String, Object>> filterOrdersByTimeRange(List<Map<String, Object>> orders, String timeRange) {
         List<Map<String, Object>> filtered = new ArrayList<>();
         Calendar cal = Calendar.getInstance();
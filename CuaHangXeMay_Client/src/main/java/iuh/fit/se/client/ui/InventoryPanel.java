@@ -3,6 +3,8 @@ package iuh.fit.se.client.ui;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import iuh.fit.se.client.service.ApiService;
+import iuh.fit.se.client.service.ChangeEvent;
+import iuh.fit.se.common.Constants;
 import iuh.fit.se.common.Response;
 import iuh.fit.se.common.User;
 
@@ -21,6 +23,8 @@ public class InventoryPanel extends JPanel {
     private JTable inventoryTable;
     private DefaultTableModel tableModel;
     private JButton btnRefresh, btnImport, btnExport, btnLowStock;
+    // Subscription generation the table was loaded under; 0 = not kept current
+    private long loadedGeneration;
 
     public InventoryPanel(User user) {
         this.currentUser = user;
@@ -28,6 +32,7 @@ public class InventoryPanel extends JPanel {
         this.gson = new Gson();
         initComponents();
         loadInventory();
+        apiService.subscribe(Constants.TOPIC_INVENTORY, event -> SwingUtilities.invokeLater(() -> applyChange(event)));
     }
 
     private void initComponents() {
@@ -123,11 +128,51 @@ public class InventoryPanel extends JPanel {
     }
 
     public void refresh() {
-        loadInventory();
+        // Change events keep the table current; reload only if some may have been missed
+        if (!apiService.isLive(loadedGeneration)) {
+            loadInventory();
+        }
+    }
+
+    private void applyChange(ChangeEvent event) {
+        if (loadedGeneration == 0) {
+            return;
+        }
+        if (event.getEntity() == null) {
+            // Rows added or removed with a product: the event only names the product
+            loadedGeneration = 0;
+            if (isShowing()) {
+                loadInventory();
+            }
+            return;
+        }
+        String json = gson.toJson(event.getEntity());
+        Map<String, Object> item = gson.fromJson(json, new TypeToken<Map<String, Object>>(){}.getType());
+        TableRows.upsert(tableModel, event.getId(), toRow(item, new SimpleDateFormat("dd/MM/yyyy HH:mm")));
+        updateStatistics();
+    }
+
+    private Object[] toRow(Map<String, Object> item, SimpleDateFormat sdf) {
+        int currentQty = ((Double) item.get("quantityCurrent")).intValue();
+        String status = currentQty < 5 ? "⚠️ Cần nhập" :
+                currentQty < 10 ? "⚡ Sắp hết" : "✅ Đủ hàng";
+
+        return new Object[]{
+                ((Double) item.get("id")).intValue(),
+                item.get("productName"),
+                item.get("brand"),
+                item.get("model"),
+                ((Double) item.get("quantityIn")).intValue(),
+                ((Double) item.get("quantityOut")).intValue(),
+                currentQty,
+                status,
+                sdf.format(new java.util.Date((String) item.get("lastUpdated")))
+        };
     }
 
     private void loadInventory() {
         tableModel.setRowCount(0);
+        loadedGeneration = apiService.getSubscriptionGeneration();
 
         SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
             @Override
@@ -145,32 +190,15 @@ public class InventoryPanel extends JPanel {
                                 new TypeToken<List<Map<String, Object>>>(){}.getType());
 
                         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-                        int totalStock = 0;
-                        int lowStockCount = 0;
 
+                        // Drop rows added by change events while the list was loading
+                        tableModel.setRowCount(0);
                         for (Map<String, Object> item : inventory) {
-                            int currentQty = ((Double) item.get("quantityCurrent")).intValue();
-                            totalStock += currentQty;
-                            if (currentQty < 10) lowStockCount++;
-
-                            String status = currentQty < 5 ? "⚠️ Cần nhập" :
-                                    currentQty < 10 ? "⚡ Sắp hết" : "✅ Đủ hàng";
-
-                            tableModel.addRow(new Object[]{
-                                    ((Double) item.get("id")).intValue(),
-                                    item.get("productName"),
-                                    item.get("brand"),
-                                    item.get("model"),
-                                    ((Double) item.get("quantityIn")).intValue(),
-                                    ((Double) item.get("quantityOut")).intValue(),
-                                    currentQty,
-                                    status,
-                                    sdf.format(new java.util.Date((String) item.get("lastUpdated")))
-                            });
+                            tableModel.addRow(toRow(item, sdf));
                         }
 
                         // Update statistics
-                        updateStatistics(inventory.size(), totalStock, lowStockCount);
+                        updateStatistics();
                     } else {
                         JOptionPane.showMessageDialog(InventoryPanel.this,
                                 response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
@@ -185,7 +213,16 @@ public class InventoryPanel extends JPanel {
         worker.execute();
     }
 
-    private void updateStatistics(int totalProducts, int totalStock, int lowStock) {
+    private void updateStatistics() {
+        int totalStock = 0;
+        int lowStock = 0;
+        for (int row = 0; row < tableModel.getRowCount(); row++) {
+            int currentQty = (int) tableModel.getValueAt(row, 6);
+            totalStock += currentQty;
+            if (currentQty < 10) lowStock++;
+        }
+        int totalProducts = tableModel.getRowCount();
+
         Component[] components = ((JPanel) getComponent(2)).getComponents();
         ((JLabel) components[0]).setText("Tổng sản phẩm: " + totalProducts);
         ((JLabel) components[1]).setText("Tổng tồn kho: " + totalStock);
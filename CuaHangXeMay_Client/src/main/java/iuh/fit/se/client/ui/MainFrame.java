@@ -1,5 +1,6 @@
 package iuh.fit.se.client.ui;
 
+import iuh.fit.se.client.service.ApiService;
 import iuh.fit.se.common.User;
 
 import javax.swing.*;
@@ -243,6 +244,7 @@ public class MainFrame extends JFrame {
                 JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
+            new ApiService().logout();
             dispose();
             new LoginFrame().setVisible(true);
         }
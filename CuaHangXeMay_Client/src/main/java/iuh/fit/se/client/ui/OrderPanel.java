@@ -3,6 +3,7 @@ package iuh.fit.se.client.ui;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import iuh.fit.se.client.service.ApiService;
+import iuh.fit.se.client.service.ChangeEvent;
 import iuh.fit.se.common.*;
 
 import javax.swing.*;
@@ -21,6 +22,11 @@ public class OrderPanel extends JPanel {
     private JTable orderTable;
     private DefaultTableModel tableModel;
     private JButton btnRefresh, btnViewDetails, btnUpdateStatus, btnCreateOrder;
+    // Subscription generation the table was loaded under; 0 = not kept current
+    private long loadedGeneration;
+    private PageLoader pages;
+    // Change events received while a page is loading, applied once it is in the table
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
 
     public OrderPanel(User user) {
         this.currentUser = user;
@@ -28,6 +34,7 @@ public class OrderPanel extends JPanel {
         this.gson = new Gson();
         initComponents();
         loadOrders();
+        apiService.subscribe(Constants.TOPIC_ORDERS, event -> SwingUtilities.invokeLater(() -> applyChange(event)));
     }
 
     private void initComponents() {
@@ -89,6 +96,8 @@ public class OrderPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(orderTable);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(189, 195, 199)));
         add(scrollPane, BorderLayout.CENTER);
+        pages = new PageLoader(this, scrollPane, apiService::streamOrders,
+                this::addOrders, this::applyPendingChanges);
     }
 
     private JButton createButton(String text, Color bgColor) {
@@ -104,53 +113,90 @@ public class OrderPanel extends JPanel {
     }
 
     public void refresh() {
-        loadOrders();
+        // Change events keep the table current; reload only if some may have been missed
+        if (!apiService.isLive(loadedGeneration)) {
+            loadOrders();
+        }
     }
 
-    private void loadOrders() {
-        tableModel.setRowCount(0);
-
-        SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
-            @Override
-            protected Response doInBackground() throws Exception {
-                return apiService.getAllOrders();
-            }
+    private void applyChange(ChangeEvent event) {
+        if (loadedGeneration == 0) {
+            return;
+        }
+        if (pages.isLoading()) {
+            pendingChanges.add(event);
+            return;
+        }
+        if (!event.isCreated() && TableRows.indexOf(tableModel, event.getId()) < 0) {
+            // Not on a page loaded so far
+            return;
+        }
+        if (event.isDeleted()) {
+            TableRows.remove(tableModel, event.getId());
+        } else if (event.getEntity() != null) {
+            Order order = gson.fromJson(gson.toJson(event.getEntity()), Order.class);
+            TableRows.upsert(tableModel, order.getId(), toRow(order));
+        } else {
+            SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
+                @Override
+                protected Response doInBackground() throws Exception {
+                    return apiService.getOrderById(event.getId());
+                }
 
-            @Override
-            protected void done() {
-                try {
-                    Response response = get();
-                    if (response.isSuccess()) {
-                        String json = gson.toJson(response.getData());
-                        List<Order> orders = gson.fromJson(json, new TypeToken<List<Order>>(){}.getType());
-                        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-
-                        for (Order o : orders) {
-                            tableModel.addRow(new Object[]{
-                                    o.getId(),
-                                    o.getOrderCode(),
-                                    o.getCustomerName() != null ? o.getCustomerName() : "Khách lẻ",
-                                    o.getUserName(),
-                                    String.format("%,.0f đ", o.getTotalAmount()),
-                                    String.format("%,.0f đ", o.getDiscountAmount()),
-                                    String.format("%,.0f đ", o.getFinalAmount()),
-                                    getStatusBadge(o.getStatus()),
-                                    o.getPaymentMethod(),
-                                    sdf.format(o.getCreatedAt())
-                            });
+                @Override
+                protected void done() {
+                    try {
+                        Response response = get();
+                        if (response.isSuccess() && loadedGeneration != 0) {
+                            Order order = gson.fromJson(gson.toJson(response.getData()), Order.class);
+                            TableRows.upsert(tableModel, order.getId(), toRow(order));
                         }
-                    } else {
-                        JOptionPane.showMessageDialog(OrderPanel.this,
-                                response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+                    } catch (Exception e) {
+                        System.err.println("Error applying order change: " + e.getMessage());
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(OrderPanel.this,
-                            "Lỗi: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
                 }
-            }
+            };
+            worker.execute();
+        }
+    }
+
+    private Object[] toRow(Order o) {
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+        return new Object[]{
+                o.getId(),
+                o.getOrderCode(),
+                o.getCustomerName() != null ? o.getCustomerName() : "Khách lẻ",
+                o.getUserName(),
+                String.format("%,.0f đ", o.getTotalAmount()),
+                String.format("%,.0f đ", o.getDiscountAmount()),
+                String.format("%,.0f đ", o.getFinalAmount()),
+                getStatusBadge(o.getStatus()),
+                o.getPaymentMethod(),
+                sdf.format(o.getCreatedAt())
         };
-        worker.execute();
+    }
+
+    private void loadOrders() {
+        tableModel.setRowCount(0);
+        pendingChanges.clear();
+        loadedGeneration = apiService.getSubscriptionGeneration();
+        // First page only; later pages load as the table is scrolled
+        pages.reload();
+    }
+
+    private void addOrders(List<?> rows) {
+        List<Order> orders = gson.fromJson(gson.toJson(rows), new TypeToken<List<Order>>(){}.getType());
+        for (Order o : orders) {
+            tableModel.addRow(toRow(o));
+        }
+    }
+
+    private void applyPendingChanges() {
+        List<ChangeEvent> changes = new ArrayList<>(pendingChanges);
+        pendingChanges.clear();
+        for (ChangeEvent change : changes) {
+            applyChange(change);
+        }
     }
 
     private String getStatusBadge(String status) {
@@ -178,8 +224,14 @@ public class OrderPanel extends JPanel {
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.insets = new Insets(5, 5, 5, 5);
 
+        // Customers and products in one round trip
+        List<Response> responses = apiService.batch()
+                .add(Constants.GET_ALL_CUSTOMERS)
+                .add(Constants.GET_ALL_PRODUCTS)
+                .execute();
+
         // Get customers
-        Response custResponse = apiService.getAllCustomers();
+        Response custResponse = responses.get(0);
         List<Customer> customers = new ArrayList<>();
         if (custResponse.isSuccess()) {
             String json = gson.toJson(custResponse.getData());
@@ -277,7 +329,7 @@ public class OrderPanel extends JPanel {
         productTable.setRowHeight(25);
 
         // Load products
-        Response prodResponse = apiService.getAllProducts();
+        Response prodResponse = responses.get(1);
         if (prodResponse.isSuccess()) {
             String json = gson.toJson(prodResponse.getData());
             List<Product> products = gson.fromJson(json, new TypeToken<List<Product>>(){}.getType());
@@ -0,0 +1,126 @@
+package iuh.fit.se.client.ui;
+
+import iuh.fit.se.common.Response;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Fills a table a page at a time: reload() fetches the first page, and the
+ * next one is fetched when the table is scrolled near its end (or does not
+ * fill the view yet) while the server still returns a continuation token.
+ * All methods run on the event dispatch thread.
+ */
+class PageLoader {
+    /**
+     * Fetches one page, handing its rows to onRows as they arrive (possibly in several chunks).
+     */
+    interface PageSource {
+        Response load(String cursor, Consumer<List<?>> onRows);
+    }
+
+    // Start the next page when less than this many pixels are left below the view
+    private static final int PREFETCH_MARGIN = 200;
+
+    private final Component owner;
+    private final JScrollBar scrollBar;
+    private final PageSource source;
+    private final Consumer<List<?>> onRows;
+    private final Runnable onPageLoaded;
+
+    private SwingWorker<Response, List<?>> worker;
+    private String nextCursor;
+    private boolean active;
+
+    /**
+     * @param onRows adds rows to the table, on the event dispatch thread
+     * @param onPageLoaded runs after each page has been added
+     */
+    PageLoader(Component owner, JScrollPane scrollPane, PageSource source,
+               Consumer<List<?>> onRows, Runnable onPageLoaded) {
+        this.owner = owner;
+        this.scrollBar = scrollPane.getVerticalScrollBar();
+        this.source = source;
+        this.onRows = onRows;
+        this.onPageLoaded = onPageLoaded;
+        scrollBar.addAdjustmentListener(e -> loadMoreIfNeeded());
+    }
+
+    /**
+     * Starts over from the first page; the caller clears the table first.
+     */
+    void reload() {
+        active = true;
+        nextCursor = null;
+        load(null);
+    }
+
+    /**
+     * Stops paging, e.g. while the table shows search results.
+     */
+    void stop() {
+        active = false;
+        worker = null;
+        nextCursor = null;
+    }
+
+    boolean isLoading() {
+        return worker != null;
+    }
+
+    private void loadMoreIfNeeded() {
+        if (!active || worker != null || nextCursor == null) {
+            return;
+        }
+        if (scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum() - PREFETCH_MARGIN) {
+            load(nextCursor);
+        }
+    }
+
+    private void load(String cursor) {
+        SwingWorker<Response, List<?>> page = new SwingWorker<Response, List<?>>() {
+            @Override
+            protected Response doInBackground() throws Exception {
+                return source.load(cursor, rows -> publish(rows));
+            }
+
+            @Override
+            protected void process(List<List<?>> chunks) {
+                // A reload or stop() since this page started makes its rows stale
+                if (worker != this) {
+                    return;
+                }
+                for (List<?> chunk : chunks) {
+                    onRows.accept(chunk);
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (worker != this) {
+                    return;
+                }
+                worker = null;
+                try {
+                    Response response = get();
+                    if (response.isSuccess()) {
+                        nextCursor = response.getContinuationToken();
+                        onPageLoaded.run();
+                        // After the table has been laid out: keep loading until the view is full
+                        SwingUtilities.invokeLater(PageLoader.this::loadMoreIfNeeded);
+                    } else {
+                        JOptionPane.showMessageDialog(owner,
+                                response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+                    }
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(owner,
+                            "Lỗi: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker = page;
+        page.execute();
+    }
+}
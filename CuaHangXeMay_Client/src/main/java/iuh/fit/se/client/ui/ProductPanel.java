@@ -3,7 +3,9 @@ package iuh.fit.se.client.ui;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import iuh.fit.se.client.service.ApiService;
+import iuh.fit.se.client.service.ChangeEvent;
 import iuh.fit.se.common.Category;
+import iuh.fit.se.common.Constants;
 import iuh.fit.se.common.Product;
 import iuh.fit.se.common.Response;
 import iuh.fit.se.common.User;
@@ -12,6 +14,7 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ProductPanel extends JPanel {
@@ -24,7 +27,12 @@ public class ProductPanel extends JPanel {
     private JTextField txtSearch;
     private JButton btnAdd, btnEdit, btnDelete, btnRefresh, btnSearch;
     private List<Category> categories;
-    private List<Product> currentProducts;
+    private List<Product> currentProducts = new ArrayList<>();
+    // Subscription generation the table was loaded under; 0 = not kept current (e.g. search results)
+    private long loadedGeneration;
+    private PageLoader pages;
+    // Change events received while a page is loading, applied once it is in the table
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
 
     public ProductPanel(User user) {
         this.currentUser = user;
@@ -33,6 +41,7 @@ public class ProductPanel extends JPanel {
         initComponents();
         loadCategories();
         loadProducts();
+        apiService.subscribe(Constants.TOPIC_PRODUCTS, event -> SwingUtilities.invokeLater(() -> applyChange(event)));
     }
 
     private void initComponents() {
@@ -111,6 +120,8 @@ public class ProductPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(productTable);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(189, 195, 199)));
         add(scrollPane, BorderLayout.CENTER);
+        pages = new PageLoader(this, scrollPane, apiService::streamProducts,
+                this::addProducts, this::applyPendingChanges);
     }
 
     private JButton createButton(String text, Color bgColor) {
@@ -136,7 +147,65 @@ public class ProductPanel extends JPanel {
     }
 
     public void refresh() {
-        loadProducts();
+        // Change events keep the table current; reload only if some may have been missed
+        if (!apiService.isLive(loadedGeneration)) {
+            loadProducts();
+        }
+    }
+
+    private void applyChange(ChangeEvent event) {
+        if (loadedGeneration == 0) {
+            return;
+        }
+        if (pages.isLoading()) {
+            pendingChanges.add(event);
+            return;
+        }
+        if (!event.isCreated() && TableRows.indexOf(tableModel, event.getId()) < 0) {
+            // Not on a page loaded so far
+            return;
+        }
+        if (event.isDeleted()) {
+            currentProducts.removeIf(p -> p.getId() == event.getId());
+            TableRows.remove(tableModel, event.getId());
+        } else if (event.getEntity() != null) {
+            showProduct(gson.fromJson(gson.toJson(event.getEntity()), Product.class));
+        } else {
+            // Stock changes only carry the ID
+            SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
+                @Override
+                protected Response doInBackground() throws Exception {
+                    return apiService.getProductById(event.getId());
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        Response response = get();
+                        if (response.isSuccess() && loadedGeneration != 0) {
+                            showProduct(gson.fromJson(gson.toJson(response.getData()), Product.class));
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Error applying product change: " + e.getMessage());
+                    }
+                }
+            };
+            worker.execute();
+        }
+    }
+
+    private void showProduct(Product product) {
+        currentProducts.removeIf(p -> p.getId() == product.getId());
+        currentProducts.add(product);
+        TableRows.upsert(tableModel, product.getId(), toRow(product));
+    }
+
+    private Object[] toRow(Product p) {
+        return new Object[]{
+                p.getId(), p.getName(), p.getBrand(), p.getModel(),
+                p.getColor(), String.format("%,.0f đ", p.getPrice()),
+                p.getQuantity(), p.getCategoryName(), p.getStatus()
+        };
     }
 
     private void loadCategories() {
@@ -149,45 +218,27 @@ public class ProductPanel extends JPanel {
 
     private void loadProducts() {
         tableModel.setRowCount(0);
+        currentProducts = new ArrayList<>();
+        pendingChanges.clear();
+        loadedGeneration = apiService.getSubscriptionGeneration();
+        // First page only; later pages load as the table is scrolled
+        pages.reload();
+    }
 
-        SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
-            @Override
-            protected Response doInBackground() throws Exception {
-                return apiService.getAllProducts();
-            }
+    private void addProducts(List<?> rows) {
+        List<Product> products = gson.fromJson(gson.toJson(rows), new TypeToken<List<Product>>(){}.getType());
+        for (Product p : products) {
+            currentProducts.add(p);
+            tableModel.addRow(toRow(p));
+        }
+    }
 
-            @Override
-            protected void done() {
-                try {
-                    Response response = get();
-                    if (response.isSuccess()) {
-                        String json = gson.toJson(response.getData());
-                        currentProducts = gson.fromJson(json, new TypeToken<List<Product>>(){}.getType());
-
-                        for (Product p : currentProducts) {
-                            tableModel.addRow(new Object[]{
-                                    p.getId(),
-                                    p.getName(),
-                                    p.getBrand(),
-                                    p.getModel(),
-                                    p.getColor(),
-                                    String.format("%,.0f đ", p.getPrice()),
-                                    p.getQuantity(),
-                                    p.getCategoryName(),
-                                    p.getStatus()
-                            });
-                        }
-                    } else {
-                        JOptionPane.showMessageDialog(ProductPanel.this,
-                                response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
-                    }
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(ProductPanel.this,
-                            "Lỗi: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
-                }
-            }
-        };
-        worker.execute();
+    private void applyPendingChanges() {
+        List<ChangeEvent> changes = new ArrayList<>(pendingChanges);
+        pendingChanges.clear();
+        for (ChangeEvent change : changes) {
+            applyChange(change);
+        }
     }
 
     private void searchProducts() {
@@ -198,6 +249,8 @@ public class ProductPanel extends JPanel {
         }
 
         tableModel.setRowCount(0);
+        loadedGeneration = 0;
+        pages.stop();
         Response response = apiService.searchProducts(keyword);
 
         if (response.isSuccess()) {
@@ -205,11 +258,7 @@ public class ProductPanel extends JPanel {
             currentProducts = gson.fromJson(json, new TypeToken<List<Product>>(){}.getType());
 
             for (Product p : currentProducts) {
-                tableModel.addRow(new Object[]{
-                        p.getId(), p.getName(), p.getBrand(), p.getModel(),
-                        p.getColor(), String.format("%,.0f đ", p.getPrice()),
-                        p.getQuantity(), p.getCategoryName(), p.getStatus()
-                });
+                tableModel.addRow(toRow(p));
             }
         }
     }
@@ -357,6 +406,9 @@ public class ProductPanel extends JPanel {
         JTextField txtColor = new JTextField(selectedProduct.getColor(), 25);
         JTextField txtPrice = new JTextField(selectedProduct.getPrice().toString(), 25);
         JTextField txtQuantity = new JTextField(String.valueOf(selectedProduct.getQuantity()), 25);
+        // Stock is changed through the inventory screen; the server ignores this field on update
+        txtQuantity.setEditable(false);
+        txtQuantity.setToolTipText("Thay đổi số lượng ở màn hình Tồn kho");
         JTextArea txtDescription = new JTextArea(selectedProduct.getDescription(), 4, 25);
         txtDescription.setLineWrap(true);
         txtDescription.setWrapStyleWord(true);
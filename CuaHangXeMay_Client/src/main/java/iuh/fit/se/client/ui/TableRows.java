@@ -0,0 +1,42 @@
+package iuh.fit.se.client.ui;
+
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Row lookups by the ID in column 0, for applying change events to a table.
+ */
+class TableRows {
+    private TableRows() {
+    }
+
+    static int indexOf(DefaultTableModel model, int id) {
+        for (int row = 0; row < model.getRowCount(); row++) {
+            Object value = model.getValueAt(row, 0);
+            if (value instanceof Number && ((Number) value).intValue() == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the row with this ID, or inserts it at the top (lists are newest first).
+     */
+    static void upsert(DefaultTableModel model, int id, Object[] values) {
+        int row = indexOf(model, id);
+        if (row < 0) {
+            model.insertRow(0, values);
+            return;
+        }
+        for (int column = 0; column < values.length; column++) {
+            model.setValueAt(values[column], row, column);
+        }
+    }
+
+    static void remove(DefaultTableModel model, int id) {
+        int row = indexOf(model, id);
+        if (row >= 0) {
+            model.removeRow(row);
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class UserPanel extends JPanel {
     private JTable userTable;
     private DefaultTableModel tableModel;
     private JButton btnAdd, btnEdit, btnDelete, btnRefresh;
+    private PageLoader pages;
 
     public UserPanel(User user) {
         this.currentUser = user;
@@ -87,6 +88,7 @@ public class UserPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(userTable);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(189, 195, 199)));
         add(scrollPane, BorderLayout.CENTER);
+        pages = new PageLoader(this, scrollPane, apiService::streamUsers, this::addUsers, () -> { });
     }
 
     private JButton createButton(String text, Color bgColor) {
@@ -107,44 +109,24 @@ public class UserPanel extends JPanel {
 
     private void loadUsers() {
         tableModel.setRowCount(0);
+        // First page only; later pages load as the table is scrolled
+        pages.reload();
+    }
 
-        SwingWorker<Response, Void> worker = new SwingWorker<Response, Void>() {
-            @Override
-            protected Response doInBackground() throws Exception {
-                return apiService.getAllUsers();
-            }
-
-            @Override
-            protected void done() {
-                try {
-                    Response response = get();
-                    if (response.isSuccess()) {
-                        String json = gson.toJson(response.getData());
-                        List<User> users = gson.fromJson(json, new TypeToken<List<User>>(){}.getType());
-
-                        for (User u : users) {
-                            tableModel.addRow(new Object[]{
-                                    u.getId(),
-                                    u.getUsername(),
-                                    u.getFullName(),
-                                    u.getEmail(),
-                                    u.getPhone(),
-                                    getRoleDisplay(u.getRole()),
-                                    getStatusDisplay(u.getStatus()),
-                                    u.getCreatedAt()
-                            });
-                        }
-                    } else {
-                        JOptionPane.showMessageDialog(UserPanel.this,
-                                response.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
-                    }
-                } catch (Exception e) {
-                    JOptionPane.showMessageDialog(UserPanel.this,
-                            "Lỗi: " + e.getMessage(), "Lỗi", JOptionPane.ERROR_MESSAGE);
-                }
-            }
-        };
-        worker.execute();
+    private void addUsers(List<?> rows) {
+        List<User> users = gson.fromJson(gson.toJson(rows), new TypeToken<List<User>>(){}.getType());
+        for (User u : users) {
+            tableModel.addRow(new Object[]{
+                    u.getId(),
+                    u.getUsername(),
+                    u.getFullName(),
+                    u.getEmail(),
+                    u.getPhone(),
+                    getRoleDisplay(u.getRole()),
+                    getStatusDisplay(u.getStatus()),
+                    u.getCreatedAt()
+            });
+        }
     }
 
     private String getRoleDisplay(String role) {
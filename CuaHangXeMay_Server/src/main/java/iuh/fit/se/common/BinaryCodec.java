@@ -0,0 +1,641 @@
+package iuh.fit.se.common;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Hand-written compact encoding for Request, Response and the domain types.
+ *
+ * Values are written as a one-byte tag followed by the value; integers use
+ * zig-zag varints, strings are UTF-8 with a varint length, and domain objects
+ * write their fields in a fixed order with no names or class descriptors.
+ * Anything else Serializable falls back to Java serialization inside the frame.
+ */
+public class BinaryCodec implements MessageCodec {
+    public static final byte ID = 2;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte TIMESTAMP = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+    private static final byte REQUEST = 10;
+    private static final byte RESPONSE = 11;
+    private static final byte PRODUCT = 12;
+    private static final byte CATEGORY = 13;
+    private static final byte CUSTOMER = 14;
+    private static final byte USER = 15;
+    private static final byte ORDER = 16;
+    private static final byte ORDER_ITEM = 17;
+    // A Response that carries a continuation token; plain RESPONSE keeps its old layout
+    private static final byte RESPONSE_PAGE = 18;
+    private static final byte SERIALIZED = 127;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object message) throws IOException {
+        Writer out = new Writer(256);
+        writeValue(out, message);
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] payload) throws IOException {
+        try {
+            return readValue(new Reader(payload));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated payload", e);
+        } catch (IllegalArgumentException | ClassCastException e) {
+            // A bad timestamp or number, or a value of the wrong type where the layout expects another
+            throw new IOException("Malformed payload", e);
+        }
+    }
+
+    // ---------------------------------------------------------------- encoding
+
+    private void writeValue(Writer out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeVarInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeDecimal((BigDecimal) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeTimestamp((Timestamp) value);
+        } else if (value instanceof Product) {
+            out.writeByte(PRODUCT);
+            writeProduct(out, (Product) value);
+        } else if (value instanceof Order) {
+            out.writeByte(ORDER);
+            writeOrder(out, (Order) value);
+        } else if (value instanceof OrderItem) {
+            out.writeByte(ORDER_ITEM);
+            writeOrderItem(out, (OrderItem) value);
+        } else if (value instanceof Customer) {
+            out.writeByte(CUSTOMER);
+            writeCustomer(out, (Customer) value);
+        } else if (value instanceof Category) {
+            out.writeByte(CATEGORY);
+            writeCategory(out, (Category) value);
+        } else if (value instanceof User) {
+            out.writeByte(USER);
+            writeUser(out, (User) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeVarInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Request) {
+            Request request = (Request) value;
+            out.writeByte(REQUEST);
+            out.writeString(request.getType());
+            out.writeString(request.getToken());
+            writeValue(out, request.getData());
+        } else if (value instanceof Response) {
+            Response response = (Response) value;
+            out.writeByte(response.getContinuationToken() != null ? RESPONSE_PAGE : RESPONSE);
+            out.writeString(response.getStatus());
+            out.writeString(response.getMessage());
+            if (response.getContinuationToken() != null) {
+                out.writeString(response.getContinuationToken());
+            }
+            writeValue(out, response.getData());
+        } else if (value instanceof Serializable) {
+            byte[] bytes = FrameIO.serialize(value);
+            out.writeByte(SERIALIZED);
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        } else {
+            throw new IOException("Cannot encode " + value.getClass().getName());
+        }
+    }
+
+    private void writeProduct(Writer out, Product p) {
+        out.writeVarInt(p.getId());
+        out.writeVarInt(p.getCategoryId());
+        out.writeString(p.getCategoryName());
+        out.writeString(p.getName());
+        out.writeString(p.getModel());
+        out.writeString(p.getBrand());
+        out.writeString(p.getColor());
+        out.writeDecimal(p.getPrice());
+        out.writeVarInt(p.getQuantity());
+        out.writeString(p.getDescription());
+        out.writeString(p.getImagePath());
+        out.writeString(p.getStatus());
+        out.writeTimestamp(p.getCreatedAt());
+        out.writeTimestamp(p.getUpdatedAt());
+    }
+
+    private void writeCategory(Writer out, Category c) {
+        out.writeVarInt(c.getId());
+        out.writeString(c.getName());
+        out.writeString(c.getDescription());
+        out.writeTimestamp(c.getCreatedAt());
+    }
+
+    private void writeCustomer(Writer out, Customer c) {
+        out.writeVarInt(c.getId());
+        out.writeString(c.getFullName());
+        out.writeString(c.getEmail());
+        out.writeString(c.getPhone());
+        out.writeString(c.getAddress());
+        out.writeString(c.getCity());
+        out.writeString(c.getDistrict());
+        out.writeVarInt(c.getLoyaltyPoints());
+        out.writeDecimal(c.getTotalSpent());
+        out.writeTimestamp(c.getCreatedAt());
+        out.writeTimestamp(c.getUpdatedAt());
+    }
+
+    private void writeUser(Writer out, User u) {
+        out.writeVarInt(u.getId());
+        out.writeString(u.getUsername());
+        out.writeString(u.getPassword());
+        out.writeString(u.getFullName());
+        out.writeString(u.getEmail());
+        out.writeString(u.getPhone());
+        out.writeString(u.getRole());
+        out.writeString(u.getStatus());
+        out.writeTimestamp(u.getCreatedAt());
+        out.writeTimestamp(u.getUpdatedAt());
+    }
+
+    private void writeOrder(Writer out, Order o) {
+        out.writeVarInt(o.getId());
+        out.writeString(o.getOrderCode());
+        out.writeVarInt(o.getCustomerId());
+        out.writeString(o.getCustomerName());
+        out.writeVarInt(o.getUserId());
+        out.writeString(o.getUserName());
+        out.writeDecimal(o.getTotalAmount());
+        out.writeDecimal(o.getDiscountAmount());
+        out.writeDecimal(o.getFinalAmount());
+        out.writeString(o.getStatus());
+        out.writeString(o.getPaymentMethod());
+        out.writeString(o.getNotes());
+        out.writeTimestamp(o.getCreatedAt());
+        out.writeTimestamp(o.getUpdatedAt());
+
+        List<OrderItem> items = o.getOrderItems();
+        out.writeVarInt(items == null ? -1 : items.size());
+        if (items != null) {
+            for (OrderItem item : items) {
+                writeOrderItem(out, item);
+            }
+        }
+    }
+
+    private void writeOrderItem(Writer out, OrderItem i) {
+        out.writeVarInt(i.getId());
+        out.writeVarInt(i.getOrderId());
+        out.writeVarInt(i.getProductId());
+        out.writeString(i.getProductName());
+        out.writeVarInt(i.getQuantity());
+        out.writeDecimal(i.getUnitPrice());
+        out.writeDecimal(i.getTotalPrice());
+    }
+
+    // ---------------------------------------------------------------- decoding
+
+    @SuppressWarnings("unchecked")
+    private Object readValue(Reader in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readString();
+            case INT:
+                return in.readVarInt();
+            case LONG:
+                return in.readVarLong();
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case BIG_DECIMAL:
+                return in.readDecimal();
+            case TIMESTAMP:
+                return in.readTimestamp();
+            case PRODUCT:
+                return readProduct(in);
+            case ORDER:
+                return readOrder(in);
+            case ORDER_ITEM:
+                return readOrderItem(in);
+            case CUSTOMER:
+                return readCustomer(in);
+            case CATEGORY:
+                return readCategory(in);
+            case USER:
+                return readUser(in);
+            case LIST: {
+                // Not pre-sized from the count: it comes from the peer
+                int size = in.readCount();
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = in.readCount();
+                Map<Object, Object> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            case REQUEST: {
+                Request request = new Request(in.readString());
+                request.setToken(in.readString());
+                Map<String, Object> data = (Map<String, Object>) readValue(in);
+                if (data != null) {
+                    request.setData(data);
+                }
+                return request;
+            }
+            case RESPONSE: {
+                String status = in.readString();
+                String message = in.readString();
+                return new Response(status, message, readValue(in));
+            }
+            case RESPONSE_PAGE: {
+                String status = in.readString();
+                String message = in.readString();
+                String token = in.readString();
+                Response response = new Response(status, message, readValue(in));
+                response.setContinuationToken(token);
+                return response;
+            }
+            case SERIALIZED: {
+                byte[] bytes = in.readBytes(in.readCount());
+                try {
+                    return FrameIO.deserialize(bytes);
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown class in payload", e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    private Product readProduct(Reader in) throws IOException {
+        Product p = new Product();
+        p.setId(in.readVarInt());
+        p.setCategoryId(in.readVarInt());
+        p.setCategoryName(in.readString());
+        p.setName(in.readString());
+        p.setModel(in.readString());
+        p.setBrand(in.readString());
+        p.setColor(in.readString());
+        p.setPrice(in.readDecimal());
+        p.setQuantity(in.readVarInt());
+        p.setDescription(in.readString());
+        p.setImagePath(in.readString());
+        p.setStatus(in.readString());
+        p.setCreatedAt(in.readTimestamp());
+        p.setUpdatedAt(in.readTimestamp());
+        return p;
+    }
+
+    private Category readCategory(Reader in) throws IOException {
+        Category c = new Category();
+        c.setId(in.readVarInt());
+        c.setName(in.readString());
+        c.setDescription(in.readString());
+        c.setCreatedAt(in.readTimestamp());
+        return c;
+    }
+
+    private Customer readCustomer(Reader in) throws IOException {
+        Customer c = new Customer();
+        c.setId(in.readVarInt());
+        c.setFullName(in.readString());
+        c.setEmail(in.readString());
+        c.setPhone(in.readString());
+        c.setAddress(in.readString());
+        c.setCity(in.readString());
+        c.setDistrict(in.readString());
+        c.setLoyaltyPoints(in.readVarInt());
+        c.setTotalSpent(in.readDecimal());
+        c.setCreatedAt(in.readTimestamp());
+        c.setUpdatedAt(in.readTimestamp());
+        return c;
+    }
+
+    private User readUser(Reader in) throws IOException {
+        User u = new User();
+        u.setId(in.readVarInt());
+        u.setUsername(in.readString());
+        u.setPassword(in.readString());
+        u.setFullName(in.readString());
+        u.setEmail(in.readString());
+        u.setPhone(in.readString());
+        u.setRole(in.readString());
+        u.setStatus(in.readString());
+        u.setCreatedAt(in.readTimestamp());
+        u.setUpdatedAt(in.readTimestamp());
+        return u;
+    }
+
+    private Order readOrder(Reader in) throws IOException {
+        Order o = new Order();
+        o.setId(in.readVarInt());
+        o.setOrderCode(in.readString());
+        o.setCustomerId(in.readVarInt());
+        o.setCustomerName(in.readString());
+        o.setUserId(in.readVarInt());
+        o.setUserName(in.readString());
+        o.setTotalAmount(in.readDecimal());
+        o.setDiscountAmount(in.readDecimal());
+        o.setFinalAmount(in.readDecimal());
+        o.setStatus(in.readString());
+        o.setPaymentMethod(in.readString());
+        o.setNotes(in.readString());
+        o.setCreatedAt(in.readTimestamp());
+        o.setUpdatedAt(in.readTimestamp());
+
+        // -1 = null
+        int itemCount = in.readVarInt();
+        if (itemCount != -1) {
+            List<OrderItem> items = new ArrayList<>();
+            in.checkLength(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                items.add(readOrderItem(in));
+            }
+            o.setOrderItems(items);
+        }
+        return o;
+    }
+
+    private OrderItem readOrderItem(Reader in) throws IOException {
+        OrderItem i = new OrderItem();
+        i.setId(in.readVarInt());
+        i.setOrderId(in.readVarInt());
+        i.setProductId(in.readVarInt());
+        i.setProductName(in.readString());
+        i.setQuantity(in.readVarInt());
+        i.setUnitPrice(in.readDecimal());
+        i.setTotalPrice(in.readDecimal());
+        return i;
+    }
+
+    // ---------------------------------------------------------------- buffers
+
+    private static class Writer {
+        private byte[] buf;
+        private int pos;
+
+        Writer(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeVarInt(int v) {
+            writeUnsignedVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long v) {
+            writeUnsignedVarLong((v << 1) ^ (v >> 63));
+        }
+
+        private void writeUnsignedVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        // Length + 1, so 0 can mean null
+        void writeString(String s) {
+            if (s == null) {
+                writeUnsignedVarLong(0);
+                return;
+            }
+            int length = s.length();
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(i) >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if (ascii) {
+                writeUnsignedVarLong(length + 1L);
+                ensure(length);
+                for (int i = 0; i < length; i++) {
+                    buf[pos++] = (byte) s.charAt(i);
+                }
+            } else {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeUnsignedVarLong(bytes.length + 1L);
+                writeBytes(bytes);
+            }
+        }
+
+        // Header: 0 = null, otherwise zigzag(scale) * 2 + (unscaled needs BigInteger ? 1 : 0) + 1
+        void writeDecimal(BigDecimal d) {
+            if (d == null) {
+                writeUnsignedVarLong(0);
+                return;
+            }
+            BigInteger unscaled = d.unscaledValue();
+            boolean big = unscaled.bitLength() > 62;
+            long zigzagScale = ((d.scale() << 1) ^ (d.scale() >> 31)) & 0xFFFFFFFFL;
+            writeUnsignedVarLong(zigzagScale * 2 + (big ? 1 : 0) + 1);
+            if (big) {
+                byte[] bytes = unscaled.toByteArray();
+                writeUnsignedVarLong(bytes.length);
+                writeBytes(bytes);
+            } else {
+                writeVarLong(unscaled.longValue());
+            }
+        }
+
+        // 0 = null, otherwise millis + 1 (zigzag), then the sub-second nanos
+        void writeTimestamp(Timestamp t) {
+            if (t == null) {
+                writeUnsignedVarLong(0);
+                return;
+            }
+            long millis = t.getTime();
+            writeUnsignedVarLong(((millis << 1) ^ (millis >> 63)) + 1);
+            writeUnsignedVarLong(t.getNanos());
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        /**
+         * @throws IOException if length is negative or more than is left, so a
+         *         hostile length cannot make the reader allocate for it
+         */
+        int checkLength(long length) throws IOException {
+            if (length < 0 || length > buf.length - pos) {
+                throw new IOException("Invalid length " + length + " at offset " + pos + " of " + buf.length);
+            }
+            return (int) length;
+        }
+
+        // A length or element count; each element takes at least one byte
+        int readCount() throws IOException {
+            return checkLength(readVarInt());
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            checkLength(length);
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        private long readUnsignedVarLong() {
+            long result = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return result;
+        }
+
+        int readVarInt() {
+            long v = readUnsignedVarLong();
+            return (int) ((v >>> 1) ^ -(v & 1));
+        }
+
+        long readVarLong() {
+            long v = readUnsignedVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() throws IOException {
+            long header = readUnsignedVarLong();
+            if (header == 0) {
+                return null;
+            }
+            int length = checkLength(header - 1);
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        BigDecimal readDecimal() throws IOException {
+            long header = readUnsignedVarLong();
+            if (header == 0) {
+                return null;
+            }
+            header -= 1;
+            boolean big = (header & 1) != 0;
+            long zigzagScale = header >>> 1;
+            int scale = (int) ((zigzagScale >>> 1) ^ -(zigzagScale & 1));
+            if (big) {
+                return new BigDecimal(new BigInteger(readBytes(checkLength(readUnsignedVarLong()))), scale);
+            }
+            return BigDecimal.valueOf(readVarLong(), scale);
+        }
+
+        Timestamp readTimestamp() {
+            long header = readUnsignedVarLong();
+            if (header == 0) {
+                return null;
+            }
+            long zigzag = header - 1;
+            Timestamp t = new Timestamp((zigzag >>> 1) ^ -(zigzag & 1));
+            t.setNanos((int) readUnsignedVarLong());
+            return t;
+        }
+    }
+}
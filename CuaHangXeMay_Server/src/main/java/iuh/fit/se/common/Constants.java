@@ -63,11 +63,43 @@ public class Constants {
     public static final String GET_TOP_SELLING_PRODUCTS = "GET_TOP_SELLING_PRODUCTS";
     public static final String GET_CUSTOMER_STATISTICS = "GET_CUSTOMER_STATISTICS";
 
+    // Change events pushed to subscribed clients
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+    public static final String TOPIC_PRODUCTS = "products";
+    public static final String TOPIC_INVENTORY = "inventory";
+    public static final String TOPIC_ORDERS = "orders";
+    public static final String TOPIC_CUSTOMERS = "customers";
+    public static final String EVENT_CREATED = "CREATED";
+    public static final String EVENT_UPDATED = "UPDATED";
+    public static final String EVENT_DELETED = "DELETED";
+
+    // Several requests in one round trip
+    public static final String BATCH = "BATCH";
+
+    // Request data flag: send a list's rows in CHUNK replies as they are read
+    public static final String STREAM = "stream";
+
+    // Request data for paged lists: rows per page, and the continuation token of the previous page
+    public static final String PAGE_SIZE = "pageSize";
+    public static final String CURSOR = "cursor";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // Administration
+    public static final String PING = "PING";
+    public static final String GET_SERVER_STATS = "GET_SERVER_STATS";
+    public static final String GET_SESSIONS = "GET_SESSIONS";
+
     // Response Status
     public static final String SUCCESS = "SUCCESS";
     public static final String ERROR = "ERROR";
     public static final String UNAUTHORIZED = "UNAUTHORIZED";
     public static final String NOT_FOUND = "NOT_FOUND";
+    public static final String BUSY = "BUSY";
+    public static final String RATE_LIMITED = "RATE_LIMITED";
+    public static final String SHUTTING_DOWN = "SHUTTING_DOWN";
+    public static final String EVENT = "EVENT";
+    public static final String CHUNK = "CHUNK";
 
     // User Roles
     public static final String ROLE_ADMIN = "ADMIN";
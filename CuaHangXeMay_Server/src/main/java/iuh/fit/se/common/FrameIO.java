@@ -0,0 +1,170 @@
+package iuh.fit.se.common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Length-prefixed framing used by the framed protocols.
+ *
+ * A connection starts with a handshake: the client sends
+ * [int MAGIC][byte version][byte codec][byte capabilities] and the server answers
+ * [int MAGIC][byte codec][byte capabilities] with the codec it accepted (0 = refused)
+ * and the subset of capabilities it will use.
+ * After that each frame is: [int payloadLength][byte flags][long correlationId][payload],
+ * where the payload is produced by the negotiated MessageCodec and, when
+ * FLAG_COMPRESSED is set, deflated by PayloadCompressor. The correlation
+ * id travels in the header so replies can be matched out of order.
+ *
+ * Legacy clients that open a plain ObjectOutputStream start with 0xACED
+ * instead of MAGIC, which lets the blocking server tell them apart.
+ */
+public class FrameIO {
+    public static final int MAGIC = 0x514C584D; // "QLXM"
+    public static final byte PROTOCOL_VERSION = 2;
+    public static final int CLIENT_HELLO_SIZE = 7;
+    public static final int SERVER_HELLO_SIZE = 6;
+
+    // Handshake capability bits
+    public static final byte CAP_DEFLATE = 0x01;
+
+    // Frame header flag bits
+    public static final byte FLAG_COMPRESSED = 0x01;
+
+    public static final int HEADER_SIZE = 13;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final MessageCodec SERIALIZED_CODEC = new SerializedCodec();
+    private static final MessageCodec BINARY_CODEC = new BinaryCodec();
+
+    public static class Frame {
+        private final byte flags;
+        private final long correlationId;
+        private final byte[] payload;
+
+        public Frame(byte flags, long correlationId, byte[] payload) {
+            this.flags = flags;
+            this.correlationId = correlationId;
+            this.payload = payload;
+        }
+
+        public byte getFlags() { return flags; }
+        public long getCorrelationId() { return correlationId; }
+        public byte[] getPayload() { return payload; }
+        public boolean isCompressed() { return (flags & FLAG_COMPRESSED) != 0; }
+    }
+
+    /**
+     * What the server accepted in the handshake.
+     */
+    public static class Handshake {
+        private final MessageCodec codec;
+        private final byte capabilities;
+
+        public Handshake(MessageCodec codec, byte capabilities) {
+            this.codec = codec;
+            this.capabilities = capabilities;
+        }
+
+        public MessageCodec getCodec() { return codec; }
+        public byte getCapabilities() { return capabilities; }
+        public boolean hasCapability(byte capability) { return (capabilities & capability) != 0; }
+    }
+
+    public static MessageCodec codecFor(byte id) {
+        switch (id) {
+            case SerializedCodec.ID:
+                return SERIALIZED_CODEC;
+            case BinaryCodec.ID:
+                return BINARY_CODEC;
+            default:
+                return null;
+        }
+    }
+
+    public static void writeClientHello(DataOutputStream out, byte codecId, byte capabilities) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(PROTOCOL_VERSION);
+        out.writeByte(codecId);
+        out.writeByte(capabilities);
+        out.flush();
+    }
+
+    /**
+     * @return the codec and capabilities chosen by the server
+     */
+    public static Handshake readServerHello(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Server does not speak the framed protocol");
+        }
+        MessageCodec codec = codecFor(in.readByte());
+        byte capabilities = in.readByte();
+        if (codec == null) {
+            throw new IOException("Server refused the requested protocol");
+        }
+        return new Handshake(codec, capabilities);
+    }
+
+    /**
+     * Server side: picks the codec to use for a client's proposal, falling
+     * back to Java serialization for unknown codecs or versions.
+     */
+    public static MessageCodec negotiate(byte version, byte codecId) {
+        MessageCodec codec = version == PROTOCOL_VERSION ? codecFor(codecId) : null;
+        return codec != null ? codec : SERIALIZED_CODEC;
+    }
+
+    public static void writeServerHello(DataOutputStream out, MessageCodec codec, byte capabilities) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(codec.getId());
+        out.writeByte(capabilities);
+        out.flush();
+    }
+
+    public static byte[] serialize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return in.readObject();
+        }
+    }
+
+    public static void writeFrame(DataOutputStream out, byte flags, long correlationId, byte[] payload) throws IOException {
+        out.writeInt(payload.length);
+        out.writeByte(flags);
+        out.writeLong(correlationId);
+        out.write(payload);
+        out.flush();
+    }
+
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte flags = in.readByte();
+        long correlationId = in.readLong();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(flags, correlationId, payload);
+    }
+
+    public static ByteBuffer toBuffer(byte flags, long correlationId, byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.put(flags);
+        buffer.putLong(correlationId);
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+}
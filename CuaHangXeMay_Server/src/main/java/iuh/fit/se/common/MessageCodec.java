@@ -0,0 +1,15 @@
+package iuh.fit.se.common;
+
+import java.io.IOException;
+
+/**
+ * Turns a Request/Response into a frame payload and back. Implementations
+ * are stateless and shared by all connections.
+ */
+public interface MessageCodec {
+    byte getId();
+
+    byte[] encode(Object message) throws IOException;
+
+    Object decode(byte[] payload) throws IOException;
+}
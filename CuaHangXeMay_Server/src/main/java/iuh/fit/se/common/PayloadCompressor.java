@@ -0,0 +1,117 @@
+package iuh.fit.se.common;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-connection Deflate compression for frame payloads. The Deflater,
+ * Inflater and their work buffers are reused for every frame on the
+ * connection; each direction has its own lock because several workers may
+ * encode replies for the same connection at once.
+ *
+ * A compressed payload is [int originalLength][deflate data] and is marked
+ * with FrameIO.FLAG_COMPRESSED in the frame header.
+ */
+public class PayloadCompressor {
+    public static final int DEFAULT_THRESHOLD = 8 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final int threshold;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+    private final ReentrantLock deflateLock = new ReentrantLock();
+    private final ReentrantLock inflateLock = new ReentrantLock();
+    private byte[] deflateBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private boolean closed;
+
+    public PayloadCompressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean shouldCompress(int length) {
+        return length >= threshold;
+    }
+
+    public byte[] compress(byte[] payload) throws IOException {
+        deflateLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            deflater.reset();
+            deflater.setInput(payload);
+            deflater.finish();
+
+            int length = 4;
+            while (!deflater.finished()) {
+                if (length == deflateBuffer.length) {
+                    deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+                }
+                length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length);
+            }
+
+            int original = payload.length;
+            deflateBuffer[0] = (byte) (original >>> 24);
+            deflateBuffer[1] = (byte) (original >>> 16);
+            deflateBuffer[2] = (byte) (original >>> 8);
+            deflateBuffer[3] = (byte) original;
+            return Arrays.copyOf(deflateBuffer, length);
+        } finally {
+            deflateLock.unlock();
+        }
+    }
+
+    public byte[] decompress(byte[] payload) throws IOException {
+        if (payload.length < 4) {
+            throw new IOException("Truncated compressed payload");
+        }
+        int original = ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16)
+                | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+        FrameIO.checkLength(original);
+
+        inflateLock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            inflater.reset();
+            inflater.setInput(payload, 4, payload.length - 4);
+            byte[] result = new byte[original];
+            int length = 0;
+            while (length < original) {
+                int n = inflater.inflate(result, length, original - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != original) {
+                throw new IOException("Compressed payload is shorter than declared");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed payload", e);
+        } finally {
+            inflateLock.unlock();
+        }
+    }
+
+    public void close() {
+        deflateLock.lock();
+        inflateLock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                deflater.end();
+                inflater.end();
+            }
+        } finally {
+            inflateLock.unlock();
+            deflateLock.unlock();
+        }
+    }
+}
@@ -9,6 +9,8 @@ public class Request implements Serializable {
     private String type;
     private Map<String, Object> data;
     private String token;
+    // Matches the reply to this request when several are in flight on one socket
+    private long correlationId;
 
     public Request() {
         this.data = new HashMap<>();
@@ -30,6 +32,9 @@ public class Request implements Serializable {
     public String getToken() { return token; }
     public void setToken(String token) { this.token = token; }
 
+    public long getCorrelationId() { return correlationId; }
+    public void setCorrelationId(long correlationId) { this.correlationId = correlationId; }
+
     public String getAction() {
         return this.type;
     }
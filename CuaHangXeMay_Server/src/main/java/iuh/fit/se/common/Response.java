@@ -8,6 +8,9 @@ public class Response implements Serializable {
     private String status;
     private String message;
     private Object data;
+    private long correlationId;
+    // Set on a page of a paged list when more rows follow; send it back as Constants.CURSOR
+    private String continuationToken;
 
     public Response() {
     }
@@ -43,6 +46,18 @@ public class Response implements Serializable {
         return new Response(Constants.NOT_FOUND, message);
     }
 
+    public static Response busy(String message) {
+        return new Response(Constants.BUSY, message);
+    }
+
+    public static Response rateLimited(String message) {
+        return new Response(Constants.RATE_LIMITED, message);
+    }
+
+    public static Response shuttingDown(String message) {
+        return new Response(Constants.SHUTTING_DOWN, message);
+    }
+
     public String getStatus() {
         return status;
     }
@@ -67,6 +82,22 @@ public class Response implements Serializable {
         this.data = data;
     }
 
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public void setCorrelationId(long correlationId) {
+        this.correlationId = correlationId;
+    }
+
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
     public boolean isSuccess() {
         return Constants.SUCCESS.equals(status);
     }
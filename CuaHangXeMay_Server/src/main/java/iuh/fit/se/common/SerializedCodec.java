@@ -0,0 +1,29 @@
+package iuh.fit.se.common;
+
+import java.io.IOException;
+
+/**
+ * Java object serialization, one standalone stream per frame.
+ */
+public class SerializedCodec implements MessageCodec {
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object message) throws IOException {
+        return FrameIO.serialize(message);
+    }
+
+    @Override
+    public Object decode(byte[] payload) throws IOException {
+        try {
+            return FrameIO.deserialize(payload);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in payload", e);
+        }
+    }
+}
@@ -1,14 +1,30 @@
 package iuh.fit.se.server;
 
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.config.ServerSettings;
 import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.http.HttpGateway;
+import iuh.fit.se.server.metrics.CompressionStats;
+import iuh.fit.se.server.network.NetworkServer;
+import iuh.fit.se.server.network.NioSocketServer;
 import iuh.fit.se.server.network.SocketServer;
 import org.apache.log4j.Logger;
 
+import java.io.IOException;
+
 public class ServerMain {
     private static final Logger logger = Logger.getLogger(ServerMain.class);
 
     public static void main(String[] args) {
-        logger.info("Starting Motorcycle Shop Server...");
+        // Server mode can be given as first argument: blocking | nio | virtual
+        if (args.length > 0) {
+            ServerSettings.setMode(args[0]);
+        }
+        // and the port as second, to run several nodes on one machine
+        if (args.length > 1) {
+            ServerSettings.setPort(Integer.parseInt(args[1]));
+        }
+        logger.info("Starting Motorcycle Shop Server (mode: " + ServerSettings.getMode() + ")...");
 
         try {
             // Test database connection
@@ -22,14 +38,33 @@ public class ServerMain {
                 return;
             }
 
+            // Build the shared services and action table once, before accepting clients
+            ActionRegistry.getInstance();
+
+            // HTTP/JSON catalog for web clients, next to the socket server
+            HttpGateway gateway = new HttpGateway();
+            if (ServerSettings.getHttpPort() > 0) {
+                try {
+                    gateway.start();
+                } catch (IOException e) {
+                    // e.g. the port is taken by another node on this machine; the socket server still runs
+                    logger.error("HTTP gateway not started on port " + ServerSettings.getHttpPort(), e);
+                    System.err.println("HTTP/JSON catalog is not available: " + e.getMessage());
+                }
+            }
+
             // Start socket server
-            SocketServer server = new SocketServer();
+            NetworkServer server = createServer(ServerSettings.getMode());
 
             // Add shutdown hook
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                logger.info("Shutting down server...");
+                logger.info("Shutting down server (drain timeout "
+                        + ServerSettings.getDrainTimeoutSeconds() + "s)...");
+                // Returns once in-flight requests have finished, so no transaction is cut off
+                gateway.stop();
                 server.stop();
                 dbManager.closeConnection();
+                logger.info(CompressionStats.summary());
                 logger.info("Server shut down complete");
             }));
 
@@ -42,4 +77,30 @@ public class ServerMain {
             e.printStackTrace();
         }
     }
+
+    public static NetworkServer createServer(String mode) {
+        switch (mode) {
+            case ServerSettings.MODE_NIO:
+                return new NioSocketServer();
+            case ServerSettings.MODE_VIRTUAL:
+                return createVirtualThreadServer();
+            case ServerSettings.MODE_BLOCKING:
+                return new SocketServer();
+            default:
+                logger.warn("Unknown server mode '" + mode + "', using " + ServerSettings.MODE_BLOCKING);
+                return new SocketServer();
+        }
+    }
+
+    private static NetworkServer createVirtualThreadServer() {
+        // Compiled only with the java21 profile, so it is looked up by name
+        try {
+            Class<?> type = Class.forName("iuh.fit.se.server.network.VirtualThreadSocketServer");
+            return (NetworkServer) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.error("Virtual-thread mode needs a Java 21 runtime and a build with -Pjava21; using "
+                    + ServerSettings.MODE_BLOCKING, e);
+            return new SocketServer();
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package iuh.fit.se.server.action;
+
+/**
+ * Who may call an action. Checked against the request's session token
+ * before the handler runs.
+ */
+public enum Access {
+    /** No session needed (login). */
+    PUBLIC,
+    /** Any logged-in user. */
+    USER,
+    /** Users with the ADMIN role. */
+    ADMIN
+}
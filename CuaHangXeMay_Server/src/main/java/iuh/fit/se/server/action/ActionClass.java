@@ -0,0 +1,27 @@
+package iuh.fit.se.server.action;
+
+/**
+ * Scheduling class of an action. Each class runs on its own bounded set of
+ * workers, so a burst of reports cannot hold up a cashier's order.
+ */
+public enum ActionClass {
+    /** Point-of-sale writes: orders, stock movements, edits. */
+    TRANSACTIONAL_WRITE("write"),
+    /** Short lookups behind a screen the user is waiting on. */
+    INTERACTIVE_READ("read"),
+    /** Whole-table listings and reports. */
+    BULK_READ("bulk");
+
+    private final String key;
+
+    ActionClass(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return short name used in thread names and settings (server.&lt;key&gt;Threads)
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,13 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+
+/**
+ * Handles one request action. Handlers are shared by all connections and
+ * must not keep per-request state.
+ */
+@FunctionalInterface
+public interface ActionHandler {
+    Response handle(Request request, RequestContext context);
+}
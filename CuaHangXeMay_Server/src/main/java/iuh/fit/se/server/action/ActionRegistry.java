@@ -0,0 +1,368 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.limit.RateLimiter;
+import iuh.fit.se.server.service.*;
+import iuh.fit.se.server.session.Session;
+import iuh.fit.se.server.session.SessionStore;
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * All request actions, built once at startup and shared by every connection.
+ * Services add their actions through registerActions(); each action gets an
+ * int opcode in registration order and its own call/error/time counters.
+ * The tables are not modified after the registry is published.
+ * Unless registered as PUBLIC, an action needs a live session token; see Access.
+ * Read actions run against the read replica when there is one; see
+ * DatabaseManager.route().
+ */
+public class ActionRegistry {
+    private static final Logger logger = Logger.getLogger(ActionRegistry.class);
+
+    private static volatile ActionRegistry instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<String, Action> actionsByName = new HashMap<>();
+    private final List<Action> actionsByOpcode = new ArrayList<>();
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    public static class Action {
+        private final String name;
+        private final int opcode;
+        private final ActionClass actionClass;
+        private final Access access;
+        private final ActionHandler handler;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        // Set for reads whose identical concurrent requests share one execution
+        private boolean coalescing;
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder reusedPayloads = new LongAdder();
+
+        private Action(String name, int opcode, ActionClass actionClass, Access access, ActionHandler handler) {
+            this.name = name;
+            this.opcode = opcode;
+            this.actionClass = actionClass;
+            this.access = access;
+            this.handler = handler;
+        }
+
+        public String getName() { return name; }
+        public int getOpcode() { return opcode; }
+        public ActionClass getActionClass() { return actionClass; }
+        public Access getAccess() { return access; }
+        public long getCalls() { return calls.sum(); }
+        public long getErrors() { return errors.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public boolean isCoalescing() { return coalescing; }
+        /** Requests answered by joining an identical one in flight. */
+        public long getCoalesced() { return coalesced.sum(); }
+        /** Replies sent without encoding them again. */
+        public long getReusedPayloads() { return reusedPayloads.sum(); }
+
+        Response invoke(Request request, RequestContext context) {
+            return invoke(request, context, true);
+        }
+
+        private Response invoke(Request request, RequestContext context, boolean authorize) {
+            long start = System.nanoTime();
+            Response response;
+            DatabaseManager db = DatabaseManager.getInstance();
+            Boolean route = db.route(actionClass != ActionClass.TRANSACTIONAL_WRITE, context.getLastWriteAt());
+            try {
+                Response denied = authorize ? authorize(request, context) : null;
+                response = denied != null ? denied : handler.handle(request, context);
+                if (actionClass == ActionClass.TRANSACTIONAL_WRITE && response.isSuccess()) {
+                    context.markWrite();
+                }
+            } catch (IllegalArgumentException e) {
+                // Bad request data, e.g. a forged continuation token
+                logger.warn("Rejected " + name + ": " + e.getMessage());
+                response = Response.error(e.getMessage());
+            } catch (RuntimeException e) {
+                logger.error("Error processing request: " + name, e);
+                response = Response.error("Server error: " + e.getMessage());
+            } finally {
+                db.restoreRoute(route);
+            }
+            record(start, response);
+            return response;
+        }
+
+        private void record(long start, Response response) {
+            calls.increment();
+            totalNanos.add(System.nanoTime() - start);
+            if (!response.isSuccess()) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * @return null if the request may run, else the refusal
+         */
+        private Response authorize(Request request, RequestContext context) {
+            Response denied = checkAccess(request, context);
+            return denied != null ? denied : checkRate(request, context, actionClass);
+        }
+
+        /**
+         * @return null if the request's session may call this action, else the refusal
+         */
+        private Response checkAccess(Request request, RequestContext context) {
+            if (access == Access.PUBLIC) {
+                return null;
+            }
+            Session session = SessionStore.getInstance().resolve(request.getToken());
+            if (session == null) {
+                return Response.unauthorized("Phiên đăng nhập không hợp lệ hoặc đã hết hạn, vui lòng đăng nhập lại");
+            }
+            if (access == Access.ADMIN && !session.isAdmin()) {
+                return Response.unauthorized("Bạn không có quyền thực hiện thao tác này");
+            }
+            context.setUsername(session.getUsername());
+            return null;
+        }
+
+        /**
+         * Counts the request against its client's bucket for this action's class.
+         * Runs after checkAccess, so a token reaching it is a live session.
+         */
+        private Response checkRate(Request request, RequestContext context, ActionClass rateClass) {
+            String key;
+            String label;
+            if (access == Access.PUBLIC) {
+                key = "address:" + context.getRemoteAddress();
+                label = context.getRemoteAddress();
+            } else {
+                key = "session:" + request.getToken();
+                label = context.getUsername() + "@" + context.getRemoteAddress();
+            }
+            if (RateLimiter.getInstance().tryAcquire(key, label, rateClass)) {
+                return null;
+            }
+            return Response.rateLimited("Quá nhiều yêu cầu, vui lòng thử lại sau giây lát");
+        }
+    }
+
+    private ActionRegistry() {
+    }
+
+    public static ActionRegistry getInstance() {
+        ActionRegistry current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = createDefault();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    private static ActionRegistry createDefault() {
+        ActionRegistry registry = new ActionRegistry();
+        new UserService().registerActions(registry);
+        new ProductService().registerActions(registry);
+        new CustomerService().registerActions(registry);
+        new OrderService().registerActions(registry);
+        new InventoryService().registerActions(registry);
+        new AdminService(registry).registerActions(registry);
+        new BatchService(registry).registerActions(registry);
+        new SubscriptionService().registerActions(registry);
+        logger.info("Registered " + registry.size() + " actions");
+        return registry;
+    }
+
+    public void register(String name, ActionClass actionClass, ActionHandler handler) {
+        register(name, actionClass, Access.USER, handler);
+    }
+
+    public void register(String name, ActionClass actionClass, Access access, ActionHandler handler) {
+        if (actionsByName.containsKey(name)) {
+            throw new IllegalStateException("Action already registered: " + name);
+        }
+        Action action = new Action(name.intern(), actionsByOpcode.size(), actionClass, access, handler);
+        actionsByName.put(action.name, action);
+        actionsByOpcode.add(action);
+    }
+
+    /**
+     * Lets identical concurrent requests for these (read-only) actions share
+     * one execution; see startCall().
+     */
+    public void coalesce(String... names) {
+        for (String name : names) {
+            Action action = actionsByName.get(name);
+            if (action == null) {
+                throw new IllegalStateException("Action not registered: " + name);
+            }
+            action.coalescing = true;
+        }
+    }
+
+    /**
+     * Called before a request is scheduled. For an action registered with
+     * coalesce(), checks the caller's access and rate limit, then either makes
+     * it the leader of a new call or joins it to the identical call already
+     * queued or running. Joined requests take no worker.
+     *
+     * @return null if the request is not coalesced and is dispatched as usual;
+     *         otherwise a call to run with dispatch(Call, ...) if it is the
+     *         leader, or whose response to wait for if not
+     */
+    public SingleFlight.Call startCall(Request request, RequestContext context) {
+        String name = request.getAction();
+        Action action = name != null ? actionsByName.get(name) : null;
+        // A stream sends its parts to the leader's connection only
+        if (action == null || !action.coalescing || request.getData() == null
+                || Boolean.TRUE.equals(request.getData(Constants.STREAM))) {
+            return null;
+        }
+        // A leader's replica read may not show this caller's own recent write
+        if (DatabaseManager.getInstance().mayMissOwnWrite(context.getLastWriteAt())) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Response denied = action.authorize(request, context);
+        if (denied != null) {
+            action.record(start, denied);
+            return SingleFlight.answered(denied);
+        }
+        SingleFlight.Call call = singleFlight.join(name + new TreeMap<>(request.getData()));
+        if (!call.isLeader()) {
+            action.coalesced.increment();
+        }
+        return call;
+    }
+
+    /**
+     * Runs the leader of a call from startCall() (already authorized there)
+     * and completes the requests that joined it.
+     */
+    public Response dispatch(SingleFlight.Call call, Request request, RequestContext context) {
+        Action action = actionsByName.get(request.getAction());
+        boolean completed = false;
+        try {
+            Response response = singleFlight.complete(call, action.invoke(request, context, false), action.reusedPayloads);
+            completed = true;
+            return response;
+        } finally {
+            if (!completed) {
+                // The leader threw (even an Error): free the key and answer the requests that joined it
+                singleFlight.complete(call, Response.error("Server error"), null);
+            }
+        }
+    }
+
+    /**
+     * Answers a leader that will not run, e.g. rejected as busy, and the requests that joined it.
+     */
+    public void abandon(SingleFlight.Call call, Response response) {
+        singleFlight.complete(call, response, null);
+    }
+
+    /**
+     * Checks access and rate limit for a request that is answered without
+     * running its handler, e.g. an HTTP revalidation that found the data
+     * unchanged. Counted as a call of the action, but against the
+     * interactive-read rate limit, since no query runs.
+     *
+     * @return null if the caller may have the answer, else the refusal
+     */
+    public Response authorize(Request request, RequestContext context) {
+        String name = request.getAction();
+        Action action = name != null ? actionsByName.get(name) : null;
+        if (action == null) {
+            return Response.error("Unknown action: " + name);
+        }
+        long start = System.nanoTime();
+        Response denied = action.checkAccess(request, context);
+        if (denied == null) {
+            denied = action.checkRate(request, context, ActionClass.INTERACTIVE_READ);
+        }
+        action.record(start, denied != null ? denied : Response.success(null));
+        return denied;
+    }
+
+    public Response dispatch(Request request, RequestContext context) {
+        String name = request.getAction();
+        Action action = name != null ? actionsByName.get(name) : null;
+        if (action == null) {
+            logger.warn("Unknown action: " + name);
+            return Response.error("Unknown action: " + name);
+        }
+        return action.invoke(request, context);
+    }
+
+    public Response dispatch(int opcode, Request request, RequestContext context) {
+        if (opcode < 0 || opcode >= actionsByOpcode.size()) {
+            return Response.error("Unknown opcode: " + opcode);
+        }
+        return actionsByOpcode.get(opcode).invoke(request, context);
+    }
+
+    /**
+     * @return the scheduling class of an action; unknown actions are cheap
+     *         to reject and count as interactive reads
+     */
+    public ActionClass classOf(String name) {
+        Action action = name != null ? actionsByName.get(name) : null;
+        return action != null ? action.actionClass : ActionClass.INTERACTIVE_READ;
+    }
+
+    /**
+     * Like classOf(String), but a BATCH takes the class of its heaviest part:
+     * bulk if it contains a bulk read, else write if it contains a write.
+     * Bulk reads stay capped even when sent inside a batch.
+     */
+    public ActionClass classOf(Request request) {
+        if (!Constants.BATCH.equals(request.getAction())) {
+            return classOf(request.getAction());
+        }
+        ActionClass result = ActionClass.INTERACTIVE_READ;
+        Object requests = request.getData("requests");
+        if (requests instanceof List) {
+            for (Object item : (List<?>) requests) {
+                if (!(item instanceof Request)) {
+                    continue;
+                }
+                ActionClass itemClass = classOf(((Request) item).getAction());
+                if (itemClass == ActionClass.BULK_READ) {
+                    return itemClass;
+                }
+                if (itemClass == ActionClass.TRANSACTIONAL_WRITE) {
+                    result = itemClass;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the opcode for an action name, or -1 if it is not registered
+     */
+    public int opcodeOf(String name) {
+        Action action = actionsByName.get(name);
+        return action != null ? action.opcode : -1;
+    }
+
+    public List<Action> getActions() {
+        return Collections.unmodifiableList(actionsByOpcode);
+    }
+
+    public int size() {
+        return actionsByOpcode.size();
+    }
+}
@@ -0,0 +1,91 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Per-connection information passed to every handler.
+ */
+public class RequestContext {
+    private final String remoteAddress;
+    // Set by a successful LOGIN on this connection
+    private volatile String username;
+    // Set by the network layer once it knows the client can take unsolicited messages
+    private volatile Consumer<Response> pusher;
+    // Writes one part of a multi-part reply (action, part); blocks while the connection is backed up
+    private volatile BiConsumer<String, Response> partSender;
+    // When a write action last succeeded on this connection, so its reads can see it
+    private volatile long lastWriteAt;
+
+    public RequestContext(String remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public long getLastWriteAt() {
+        return lastWriteAt;
+    }
+
+    public void markWrite() {
+        this.lastWriteAt = System.currentTimeMillis();
+    }
+
+    public void setPusher(Consumer<Response> pusher) {
+        this.pusher = pusher;
+    }
+
+    public boolean canPush() {
+        return pusher != null;
+    }
+
+    /**
+     * Sends a message the client did not ask for, with correlation id 0.
+     *
+     * @return false if this connection cannot receive pushed messages
+     */
+    public boolean push(Response message) {
+        Consumer<Response> current = pusher;
+        if (current == null) {
+            return false;
+        }
+        message.setCorrelationId(0);
+        current.accept(message);
+        return true;
+    }
+
+    public void setPartSender(BiConsumer<String, Response> partSender) {
+        this.partSender = partSender;
+    }
+
+    public boolean canStream() {
+        return partSender != null;
+    }
+
+    /**
+     * Sends part of the reply to a request ahead of its final response.
+     *
+     * @throws java.io.UncheckedIOException if the connection failed
+     */
+    public void sendPart(Request request, Response part) {
+        BiConsumer<String, Response> current = partSender;
+        if (current == null) {
+            throw new IllegalStateException("Connection cannot receive multi-part replies");
+        }
+        part.setCorrelationId(request.getCorrelationId());
+        current.accept(request.getAction(), part);
+    }
+}
@@ -0,0 +1,147 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.database.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Collects the rows of a list action. If the client asked for a stream
+ * (Constants.STREAM on a framed connection), rows leave in CHUNK replies as
+ * the cursor advances and only one chunk is held at a time; the final reply
+ * then carries the row count. Otherwise the rows are returned in one reply
+ * as before.
+ *
+ * Lists are also paged when the request gives Constants.PAGE_SIZE: pages
+ * are read newest first by keyset (id < last id of the previous page), so
+ * deep pages cost the same as the first, and the reply's continuation token
+ * marks where the next page starts.
+ */
+public class ResultStream<T> {
+    private final Request request;
+    private final RequestContext context;
+    private final boolean streaming;
+    private final int chunkSize;
+    private List<T> rows;
+    private int count;
+
+    // 0 = not paged
+    private final int pageSize;
+    // Rows older than this id; 0 = start from the newest
+    private final int beforeId;
+    private int lastId;
+    private boolean more;
+
+    public ResultStream(Request request, RequestContext context) {
+        this.request = request;
+        this.context = context;
+        // Sub-requests of a BATCH have no correlation id of their own to stream under
+        this.streaming = Boolean.TRUE.equals(request.getData(Constants.STREAM))
+                && request.getCorrelationId() != 0 && context.canStream();
+        this.chunkSize = ServerSettings.getStreamChunkRows();
+        this.rows = streaming ? new ArrayList<>(chunkSize) : new ArrayList<>();
+
+        Object size = request.getData(Constants.PAGE_SIZE);
+        this.pageSize = size instanceof Integer
+                ? Math.max(1, Math.min((Integer) size, Constants.MAX_PAGE_SIZE)) : 0;
+        this.beforeId = decodeCursor(request.getAction(), (String) request.getData(Constants.CURSOR));
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Completes a list query with the keyset condition, newest-first order
+     * and page limit, and binds them. When streaming, the query fetches a
+     * chunk of rows at a time instead of reading the whole result into the
+     * driver first.
+     *
+     * @param sql the query up to (not including) WHERE and ORDER BY
+     * @param idColumn the key column, as written in the query (e.g. "o.id")
+     */
+    public Query query(String sql, String idColumn) {
+        StringBuilder query = new StringBuilder(sql);
+        List<Object> params = new ArrayList<>(2);
+        if (beforeId > 0) {
+            query.append(" WHERE ").append(idColumn).append(" < ?");
+            params.add(beforeId);
+        }
+        query.append(" ORDER BY ").append(idColumn).append(" DESC");
+        if (pageSize > 0) {
+            // One extra row tells whether another page follows; a parameter, so every page size is one SQL text
+            query.append(" LIMIT ?");
+            params.add(pageSize + 1);
+        }
+        return Query.sql(query.toString())
+                .params(params.toArray())
+                .fetchSize(streaming ? chunkSize : 0);
+    }
+
+    public void add(int id, T row) {
+        if (pageSize > 0 && count == pageSize) {
+            more = true;
+            return;
+        }
+        lastId = id;
+        rows.add(row);
+        count++;
+        if (streaming && rows.size() >= chunkSize) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (rows.isEmpty()) {
+            return;
+        }
+        // Blocks while the connection is still sending earlier chunks
+        context.sendPart(request, new Response(Constants.CHUNK, null, rows));
+        rows = new ArrayList<>(chunkSize);
+    }
+
+    public Response finish(String message) {
+        Response response;
+        if (streaming) {
+            flush();
+            response = Response.success(message, count);
+        } else {
+            response = Response.success(message, rows);
+        }
+        if (more) {
+            response.setContinuationToken(encodeCursor(request.getAction(), lastId));
+        }
+        return response;
+    }
+
+    // Opaque to clients; names the action so a token cannot be replayed against another list
+    private static String encodeCursor(String action, int lastId) {
+        String value = action + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String action, String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf(':');
+            if (separator > 0 && value.substring(0, separator).equals(action)) {
+                int id = Integer.parseInt(value.substring(separator + 1));
+                if (id > 0) {
+                    return id;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("Continuation token không hợp lệ");
+    }
+}
@@ -0,0 +1,61 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Response;
+
+import java.io.ObjectStreamException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One caller's copy of a reply shared by a coalesced call. The copies share
+ * their encoded forms, so a reply sent to many connections with the same
+ * codec is serialized (and compressed) once.
+ */
+public class SharedResponse extends Response {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<Integer, Object> encoded;
+    private final transient LongAdder reused;
+
+    SharedResponse(Response response, LongAdder reused) {
+        this(response, new ConcurrentHashMap<>(), reused);
+    }
+
+    private SharedResponse(Response response, Map<Integer, Object> encoded, LongAdder reused) {
+        super(response.getStatus(), response.getMessage(), response.getData());
+        setContinuationToken(response.getContinuationToken());
+        this.encoded = encoded;
+        this.reused = reused;
+    }
+
+    SharedResponse copy() {
+        return new SharedResponse(this, encoded, reused);
+    }
+
+    /**
+     * @param key identifies the encoding, e.g. the codec and whether the connection compresses
+     * @return the form stored by an earlier putEncoded(), or null if this is the first
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getEncoded(int key) {
+        T form = (T) encoded.get(key);
+        if (form != null && reused != null) {
+            reused.increment();
+        }
+        return form;
+    }
+
+    public void putEncoded(int key, Object form) {
+        // Two connections may both encode the first time; either result will do
+        encoded.putIfAbsent(key, form);
+    }
+
+    // Java serialization writes a plain Response, which is all clients know about
+    private Object writeReplace() throws ObjectStreamException {
+        Response response = new Response(getStatus(), getMessage(), getData());
+        response.setCorrelationId(getCorrelationId());
+        response.setContinuationToken(getContinuationToken());
+        return response;
+    }
+}
@@ -0,0 +1,77 @@
+package iuh.fit.se.server.action;
+
+import iuh.fit.se.common.Response;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Identical reads (same action, same parameters) that arrive while one is
+ * queued or running share its execution: the first becomes the leader and
+ * the others wait for its reply instead of running the same query again.
+ * Only in-flight calls are shared; a request arriving after the reply has
+ * been sent runs again. A request that joins sees the data as of when the
+ * leader ran, at most one query time before it arrived.
+ */
+public class SingleFlight {
+    private final Map<String, Call> inFlight = new ConcurrentHashMap<>();
+
+    public static class Call {
+        private final String key;
+        private final boolean leader;
+        private final CompletableFuture<SharedResponse> result;
+
+        private Call(String key, boolean leader, CompletableFuture<SharedResponse> result) {
+            this.key = key;
+            this.leader = leader;
+            this.result = result;
+        }
+
+        /**
+         * @return true if this request must be scheduled and run; false if
+         *         its reply comes from getResponse()
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Completes with this request's own copy of the reply, on the thread
+         * that finished the leader (or at once if it already has).
+         */
+        public CompletableFuture<Response> getResponse() {
+            return result.thenApply(SharedResponse::copy);
+        }
+    }
+
+    Call join(String key) {
+        Call leader = new Call(key, true, new CompletableFuture<>());
+        Call existing = inFlight.putIfAbsent(key, leader);
+        if (existing == null) {
+            return leader;
+        }
+        return new Call(key, false, existing.result);
+    }
+
+    /**
+     * A call that is answered without running, e.g. a refusal.
+     */
+    static Call answered(Response response) {
+        return new Call(null, false, CompletableFuture.completedFuture(new SharedResponse(response, null)));
+    }
+
+    /**
+     * Hands the leader's reply to the requests that joined it.
+     *
+     * @return the leader's own copy
+     */
+    Response complete(Call call, Response response, LongAdder reused) {
+        SharedResponse shared = new SharedResponse(response, reused);
+        // Removed first: a request arriving from now on runs again rather than getting this reply
+        inFlight.remove(call.key, call);
+        call.result.complete(shared);
+        return shared.copy();
+    }
+}
@@ -0,0 +1,368 @@
+package iuh.fit.se.server.config;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.PayloadCompressor;
+import iuh.fit.se.server.action.ActionClass;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Startup settings for the server. Values come from system properties
+ * (e.g. -Dserver.mode=nio) and fall back to the defaults below.
+ */
+public class ServerSettings {
+    public static final String MODE_BLOCKING = "blocking";
+    public static final String MODE_NIO = "nio";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private static String mode = System.getProperty("server.mode", MODE_BLOCKING);
+    private static int port = Integer.getInteger("server.port", Constants.SERVER_PORT);
+
+    // HTTP/JSON catalog endpoint for clients that cannot use the socket protocol, e.g. 8080;
+    // 0 (the default) turns it off, so several nodes on one machine need only distinct socket ports
+    private static int httpPort = Integer.getInteger("server.httpPort", 0);
+    // An HTTP reply's ETag is trusted without re-running the query for this long,
+    // unless a change to its data was published on this node first
+    private static int httpRevalidateSeconds = Integer.getInteger("server.httpRevalidateSeconds", 10);
+
+    // Selector threads doing framing (NIO mode)
+    private static int ioThreads = Integer.getInteger("server.ioThreads", 2);
+
+    // Workers and queue length per action class, e.g. -Dserver.bulkThreads=2 -Dserver.bulkQueue=20.
+    // A request whose class queue is full is answered with BUSY.
+    private static final Map<ActionClass, Integer> classThreads = new EnumMap<>(ActionClass.class);
+    private static final Map<ActionClass, Integer> classQueues = new EnumMap<>(ActionClass.class);
+
+    static {
+        int cores = Runtime.getRuntime().availableProcessors();
+        classThreads.put(ActionClass.TRANSACTIONAL_WRITE, Integer.getInteger("server.writeThreads", 4));
+        classQueues.put(ActionClass.TRANSACTIONAL_WRITE, Integer.getInteger("server.writeQueue", 200));
+        classThreads.put(ActionClass.INTERACTIVE_READ, Integer.getInteger("server.readThreads", cores * 2));
+        classQueues.put(ActionClass.INTERACTIVE_READ, Integer.getInteger("server.readQueue", 500));
+        classThreads.put(ActionClass.BULK_READ, Integer.getInteger("server.bulkThreads", 2));
+        classQueues.put(ActionClass.BULK_READ, Integer.getInteger("server.bulkQueue", 20));
+    }
+
+    // Token buckets per client and action class: requests per second and burst size,
+    // e.g. -Dserver.bulkRate=5 -Dserver.bulkBurst=10. A rate of 0 turns the limit off.
+    // A request over the limit is answered with RATE_LIMITED.
+    private static final Map<ActionClass, Integer> classRates = new EnumMap<>(ActionClass.class);
+    private static final Map<ActionClass, Integer> classBursts = new EnumMap<>(ActionClass.class);
+
+    static {
+        classRates.put(ActionClass.TRANSACTIONAL_WRITE, Integer.getInteger("server.writeRate", 10));
+        classBursts.put(ActionClass.TRANSACTIONAL_WRITE, Integer.getInteger("server.writeBurst", 20));
+        classRates.put(ActionClass.INTERACTIVE_READ, Integer.getInteger("server.readRate", 30));
+        classBursts.put(ActionClass.INTERACTIVE_READ, Integer.getInteger("server.readBurst", 60));
+        classRates.put(ActionClass.BULK_READ, Integer.getInteger("server.bulkRate", 5));
+        classBursts.put(ActionClass.BULK_READ, Integer.getInteger("server.bulkBurst", 10));
+    }
+
+    // Database connections: pool size, how long a request waits for a free one, when a
+    // connection is replaced, and how long one may be held before it is logged as leaked (0 = never)
+    private static int dbPoolSize = Integer.getInteger("server.dbPoolSize", 10);
+    private static int dbBorrowTimeoutMillis = Integer.getInteger("server.dbBorrowTimeoutMillis", 5000);
+    private static int dbMaxLifetimeMinutes = Integer.getInteger("server.dbMaxLifetimeMinutes", 30);
+    private static int dbLeakThresholdSeconds = Integer.getInteger("server.dbLeakThresholdSeconds", 60);
+    // Prepared statements kept per connection (0 = none), and whether the driver prepares them
+    // on the database server instead of substituting parameters on the client
+    private static int dbStatementCacheSize = Integer.getInteger("server.dbStatementCacheSize", 64);
+    private static boolean dbServerPrepare = Boolean.getBoolean("server.dbServerPrepare");
+    // Read replica for read-only actions (unset = all queries on the primary), and the
+    // replication lag beyond which reads go back to the primary
+    private static String dbReplicaUrl = System.getProperty("server.dbReplicaUrl");
+    private static int dbReplicaMaxLagSeconds = Integer.getInteger("server.dbReplicaMaxLagSeconds", 5);
+    // Queries taking at least this long are logged (0 = never)
+    private static int slowQueryMillis = Integer.getInteger("server.slowQueryMillis", 1000);
+
+    // Order/invoice numbers a server takes from code_sequences at a time
+    private static int codeBlockSize = requirePositive("server.codeBlockSize", Integer.getInteger("server.codeBlockSize", 50));
+
+    // Threads running the reads inside BATCH requests in parallel
+    private static int batchThreads = Integer.getInteger("server.batchThreads",
+            Runtime.getRuntime().availableProcessors() * 2);
+    // Batch reads waiting for those threads; beyond this a batch runs its reads itself
+    private static int batchQueueCapacity = Integer.getInteger("server.batchQueueCapacity", 100);
+
+    // Connections with no traffic for this long are closed; 0 keeps them open
+    private static int idleTimeoutSeconds = Integer.getInteger("server.idleTimeoutSeconds", 300);
+
+    // Rows per CHUNK reply (and JDBC fetch size) when a client streams a list
+    private static int streamChunkRows = Integer.getInteger("server.streamChunkRows", 200);
+
+    // Logged-in sessions expire after this long without a request
+    private static int sessionTimeoutMinutes = Integer.getInteger("server.sessionTimeoutMinutes", 30);
+    // Shared by all nodes of a deployment so a token issued by one is accepted by the others;
+    // unset means a random secret per process and tokens valid on this node only
+    private static String sessionSecret = System.getProperty("server.sessionSecret");
+    // A token is accepted for at most this long after login, however recently it was used
+    private static int sessionMaxAgeHours = Integer.getInteger("server.sessionMaxAgeHours", 12);
+    // How often a node records session use in session_tokens and takes up logouts,
+    // expiries and user changes made on other nodes
+    private static int sessionSyncSeconds = Integer.getInteger("server.sessionSyncSeconds", 30);
+
+    // On shutdown, how long requests already received may take to finish
+    private static int drainTimeoutSeconds = Integer.getInteger("server.drainTimeoutSeconds", 30);
+
+    // Deflate for framed clients that ask for it; payloads below the threshold go uncompressed
+    private static boolean compressionEnabled = Boolean.parseBoolean(
+            System.getProperty("server.compression", "true"));
+    private static int compressionThreshold = Integer.getInteger("server.compressionThreshold",
+            PayloadCompressor.DEFAULT_THRESHOLD);
+
+    public static String getMode() {
+        return mode;
+    }
+
+    public static void setMode(String mode) {
+        ServerSettings.mode = mode;
+    }
+
+    public static int getPort() {
+        return port;
+    }
+
+    public static void setPort(int port) {
+        ServerSettings.port = port;
+    }
+
+    public static int getHttpPort() {
+        return httpPort;
+    }
+
+    public static void setHttpPort(int httpPort) {
+        ServerSettings.httpPort = httpPort;
+    }
+
+    public static long getHttpRevalidateMillis() {
+        return httpRevalidateSeconds * 1000L;
+    }
+
+    public static void setHttpRevalidateSeconds(int httpRevalidateSeconds) {
+        ServerSettings.httpRevalidateSeconds = httpRevalidateSeconds;
+    }
+
+    public static int getIoThreads() {
+        return ioThreads;
+    }
+
+    public static void setIoThreads(int ioThreads) {
+        ServerSettings.ioThreads = ioThreads;
+    }
+
+    public static int getThreads(ActionClass actionClass) {
+        return classThreads.get(actionClass);
+    }
+
+    public static void setThreads(ActionClass actionClass, int threads) {
+        classThreads.put(actionClass, threads);
+    }
+
+    public static int getQueueCapacity(ActionClass actionClass) {
+        return classQueues.get(actionClass);
+    }
+
+    public static void setQueueCapacity(ActionClass actionClass, int capacity) {
+        classQueues.put(actionClass, capacity);
+    }
+
+    public static int getRateLimit(ActionClass actionClass) {
+        return classRates.get(actionClass);
+    }
+
+    public static void setRateLimit(ActionClass actionClass, int perSecond) {
+        classRates.put(actionClass, perSecond);
+    }
+
+    public static int getRateBurst(ActionClass actionClass) {
+        return classBursts.get(actionClass);
+    }
+
+    public static void setRateBurst(ActionClass actionClass, int burst) {
+        classBursts.put(actionClass, burst);
+    }
+
+    public static int getDbPoolSize() {
+        return dbPoolSize;
+    }
+
+    public static void setDbPoolSize(int dbPoolSize) {
+        ServerSettings.dbPoolSize = dbPoolSize;
+    }
+
+    public static long getDbBorrowTimeoutMillis() {
+        return dbBorrowTimeoutMillis;
+    }
+
+    public static void setDbBorrowTimeoutMillis(int dbBorrowTimeoutMillis) {
+        ServerSettings.dbBorrowTimeoutMillis = dbBorrowTimeoutMillis;
+    }
+
+    public static long getDbMaxLifetimeMillis() {
+        return dbMaxLifetimeMinutes * 60_000L;
+    }
+
+    public static void setDbMaxLifetimeMinutes(int dbMaxLifetimeMinutes) {
+        ServerSettings.dbMaxLifetimeMinutes = dbMaxLifetimeMinutes;
+    }
+
+    public static long getDbLeakThresholdMillis() {
+        return dbLeakThresholdSeconds * 1000L;
+    }
+
+    public static void setDbLeakThresholdSeconds(int dbLeakThresholdSeconds) {
+        ServerSettings.dbLeakThresholdSeconds = dbLeakThresholdSeconds;
+    }
+
+    public static int getDbStatementCacheSize() {
+        return dbStatementCacheSize;
+    }
+
+    public static void setDbStatementCacheSize(int dbStatementCacheSize) {
+        ServerSettings.dbStatementCacheSize = dbStatementCacheSize;
+    }
+
+    public static boolean isDbServerPrepare() {
+        return dbServerPrepare;
+    }
+
+    public static void setDbServerPrepare(boolean dbServerPrepare) {
+        ServerSettings.dbServerPrepare = dbServerPrepare;
+    }
+
+    public static String getDbReplicaUrl() {
+        return dbReplicaUrl;
+    }
+
+    public static void setDbReplicaUrl(String dbReplicaUrl) {
+        ServerSettings.dbReplicaUrl = dbReplicaUrl;
+    }
+
+    public static long getDbReplicaMaxLagMillis() {
+        return dbReplicaMaxLagSeconds * 1000L;
+    }
+
+    public static void setDbReplicaMaxLagSeconds(int dbReplicaMaxLagSeconds) {
+        ServerSettings.dbReplicaMaxLagSeconds = dbReplicaMaxLagSeconds;
+    }
+
+    public static int getSlowQueryMillis() {
+        return slowQueryMillis;
+    }
+
+    public static void setSlowQueryMillis(int slowQueryMillis) {
+        ServerSettings.slowQueryMillis = slowQueryMillis;
+    }
+
+    public static int getCodeBlockSize() {
+        return codeBlockSize;
+    }
+
+    public static void setCodeBlockSize(int codeBlockSize) {
+        ServerSettings.codeBlockSize = requirePositive("server.codeBlockSize", codeBlockSize);
+    }
+
+    private static int requirePositive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be at least 1, was " + value);
+        }
+        return value;
+    }
+
+    public static int getBatchThreads() {
+        return batchThreads;
+    }
+
+    public static void setBatchThreads(int batchThreads) {
+        ServerSettings.batchThreads = batchThreads;
+    }
+
+    public static int getBatchQueueCapacity() {
+        return batchQueueCapacity;
+    }
+
+    public static void setBatchQueueCapacity(int batchQueueCapacity) {
+        ServerSettings.batchQueueCapacity = batchQueueCapacity;
+    }
+
+    public static int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public static long getIdleTimeoutMillis() {
+        return idleTimeoutSeconds * 1000L;
+    }
+
+    public static void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        ServerSettings.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    public static int getStreamChunkRows() {
+        return streamChunkRows;
+    }
+
+    public static void setStreamChunkRows(int streamChunkRows) {
+        ServerSettings.streamChunkRows = streamChunkRows;
+    }
+
+    public static int getSessionTimeoutMinutes() {
+        return sessionTimeoutMinutes;
+    }
+
+    public static long getSessionTimeoutMillis() {
+        return sessionTimeoutMinutes * 60_000L;
+    }
+
+    public static void setSessionTimeoutMinutes(int sessionTimeoutMinutes) {
+        ServerSettings.sessionTimeoutMinutes = sessionTimeoutMinutes;
+    }
+
+    public static String getSessionSecret() {
+        return sessionSecret;
+    }
+
+    public static void setSessionSecret(String sessionSecret) {
+        ServerSettings.sessionSecret = sessionSecret;
+    }
+
+    public static long getSessionMaxAgeMillis() {
+        return sessionMaxAgeHours * 3_600_000L;
+    }
+
+    public static void setSessionMaxAgeHours(int sessionMaxAgeHours) {
+        ServerSettings.sessionMaxAgeHours = sessionMaxAgeHours;
+    }
+
+    public static int getSessionSyncSeconds() {
+        return sessionSyncSeconds;
+    }
+
+    public static void setSessionSyncSeconds(int sessionSyncSeconds) {
+        ServerSettings.sessionSyncSeconds = sessionSyncSeconds;
+    }
+
+    public static int getDrainTimeoutSeconds() {
+        return drainTimeoutSeconds;
+    }
+
+    public static void setDrainTimeoutSeconds(int drainTimeoutSeconds) {
+        ServerSettings.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    public static boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public static void setCompressionEnabled(boolean compressionEnabled) {
+        ServerSettings.compressionEnabled = compressionEnabled;
+    }
+
+    public static int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public static void setCompressionThreshold(int compressionThreshold) {
+        ServerSettings.compressionThreshold = compressionThreshold;
+    }
+}
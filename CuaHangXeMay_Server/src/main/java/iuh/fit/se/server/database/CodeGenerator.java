@@ -0,0 +1,152 @@
+package iuh.fit.se.server.database;
+
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Business codes such as order and invoice numbers: prefix, day, and a
+ * sequence that restarts every day, e.g. ORD20261018-00042. Codes sort by
+ * day, and within a day by when their block was taken.
+ * <p>
+ * Each server takes a block of server.codeBlockSize numbers at a time from
+ * the code_sequences table and hands them out with an atomic increment, so
+ * the database is visited once per block and two server nodes never get the
+ * same number. Numbers left in a block when the server stops, or taken by
+ * a caller that then fails, are skipped.
+ * <p>
+ * next() may wait for a connection to take a new block, so call it before
+ * borrowing one for a transaction: with the pool busy, the two would wait
+ * for each other until the borrow timeout.
+ */
+public class CodeGenerator {
+    private static final Logger logger = Logger.getLogger(CodeGenerator.class);
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final Map<String, CodeGenerator> generators = new ConcurrentHashMap<>();
+    // Blocks are taken on this thread, so never inside the caller's transaction (see ConnectionPool)
+    private static final ExecutorService allocator = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "code-allocator");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile boolean tableChecked;
+
+    private final String prefix;
+    private final AtomicReference<Block> current = new AtomicReference<>();
+    private final ReentrantLock refillLock = new ReentrantLock();
+
+    private static final class Block {
+        final long epochDay;
+        final String day;
+        final AtomicLong next;
+        final long end;
+
+        Block(LocalDate date, long first, long end) {
+            this.epochDay = date.toEpochDay();
+            this.day = date.format(DAY);
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+    }
+
+    private CodeGenerator(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the generator for codes starting with prefix, e.g. "ORD" or "INV"
+     */
+    public static CodeGenerator forPrefix(String prefix) {
+        return generators.computeIfAbsent(prefix, CodeGenerator::new);
+    }
+
+    /**
+     * @throws SQLException if a new block was needed and could not be taken
+     */
+    public String next() throws SQLException {
+        LocalDate today = LocalDate.now();
+        while (true) {
+            Block block = current.get();
+            if (block != null && block.epochDay == today.toEpochDay()) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    return String.format("%s%s-%05d", prefix, block.day, value);
+                }
+            }
+            refill(block, today);
+        }
+    }
+
+    private void refill(Block seen, LocalDate today) throws SQLException {
+        refillLock.lock();
+        try {
+            // Another thread may have refilled while this one waited
+            if (current.get() != seen) {
+                return;
+            }
+            current.set(allocator.submit(() -> allocate(today)).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while taking a block of " + prefix + " codes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+        } finally {
+            refillLock.unlock();
+        }
+    }
+
+    private Block allocate(LocalDate today) throws SQLException {
+        String name = prefix + today.format(DAY);
+        int size = ServerSettings.getCodeBlockSize();
+        // One single-row upsert, so nodes taking blocks at once queue on the row instead of deadlocking;
+        // LAST_INSERT_ID(expr) hands the new value back to this session
+        String sql = "INSERT INTO code_sequences (name, next_value) VALUES (?, LAST_INSERT_ID(1 + ?)) " +
+                "ON DUPLICATE KEY UPDATE next_value = LAST_INSERT_ID(next_value + ?)";
+        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
+            ensureTable(connection);
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, name);
+                stmt.setInt(2, size);
+                stmt.setInt(3, size);
+                stmt.executeUpdate();
+            }
+            long end;
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT LAST_INSERT_ID()")) {
+                rs.next();
+                end = rs.getLong(1);
+            }
+            logger.debug("Took " + name + " block " + (end - size) + "-" + (end - 1));
+            return new Block(today, end - size, end);
+        }
+    }
+
+    // Databases created before code_sequences was added to init.sql
+    private static void ensureTable(Connection connection) throws SQLException {
+        if (tableChecked) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS code_sequences (" +
+                    "name VARCHAR(50) PRIMARY KEY, next_value BIGINT NOT NULL) ENGINE=InnoDB");
+        }
+        tableChecked = true;
+    }
+}
@@ -0,0 +1,391 @@
+package iuh.fit.se.server.database;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded set of database connections. getConnection() borrows one and
+ * close() on it gives it back, so callers use try-with-resources per unit
+ * of work. A thread that already holds a connection gets the same one
+ * again, so helpers called inside a transaction take part in it; it goes
+ * back to the pool when the outermost holder closes it.
+ * <p>
+ * Returned connections are rolled back if still in a transaction and set to
+ * auto-commit. A connection idle for a while is checked with isValid()
+ * before it is handed out, and replaced once older than the max lifetime.
+ * A connection held longer than the leak threshold is logged with the
+ * stack of the code that borrowed it.
+ * <p>
+ * Each connection also keeps its prepared statements (see StatementCache),
+ * so a hot query is parsed and prepared once per connection rather than
+ * once per request.
+ */
+public class ConnectionPool {
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class);
+    // Used more recently than this: handed out without a validation round trip
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_SECONDS = 10;
+    // Distinct SQL texts counted in the statement statistics
+    private static final int MAX_TRACKED_STATEMENTS = 500;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    // One permit per connection that may be borrowed
+    private final Semaphore permits;
+    // Most recently returned first, so a light load keeps reusing warm connections
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lease> current = new ThreadLocal<>();
+    private final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "db-pool-housekeeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder retired = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final Map<String, StatementStats> statementStats = new ConcurrentHashMap<>();
+
+    private static class PooledConnection {
+        final Connection physical;
+        // null when statement caching is off
+        final StatementCache statements;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastUsed = createdAt;
+
+        PooledConnection(Connection physical, StatementCache statements) {
+            this.physical = physical;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * prepareStatement() calls for one SQL text, and how many were served from a cache.
+     */
+    public static class StatementStats {
+        private final String sql;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() { return sql; }
+        public long getRequests() { return requests.sum(); }
+        public long getHits() { return hits.sum(); }
+        /** Statements actually prepared by the driver. */
+        public long getPrepares() { return requests.sum() - hits.sum(); }
+
+        public double getHitRatio() {
+            long count = requests.sum();
+            return count == 0 ? 0.0 : (double) hits.sum() / count;
+        }
+    }
+
+    /**
+     * One borrowing of a connection; the caller sees it through a proxy whose
+     * close() returns it.
+     */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pooled;
+        final Thread owner = Thread.currentThread();
+        final long borrowedAt = System.currentTimeMillis();
+        // Where it was borrowed, for the leak warning
+        final Exception origin;
+        final Connection proxy;
+        int depth = 1;
+        volatile boolean returned;
+        volatile boolean reported;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.origin = leakThresholdMillis > 0 ? new Exception("Connection borrowed here") : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(this);
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has been returned to the pool");
+            }
+            if (pooled.statements != null && "prepareStatement".equals(method.getName())) {
+                if (args.length == 1) {
+                    return pooled.statements.prepare((String) args[0], -1);
+                }
+                if (args.length == 2 && args[1] instanceof Integer) {
+                    return pooled.statements.prepare((String) args[0], (Integer) args[1]);
+                }
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    public ConnectionPool(String url, String user, String password, int maxSize,
+                          long borrowTimeoutMillis, long maxLifetimeMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(this.maxSize, true);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_SECONDS, HOUSEKEEPING_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @throws SQLTransientConnectionException if none became free within the borrow timeout
+     */
+    public Connection getConnection() throws SQLException {
+        Lease lease = current.get();
+        if (lease != null && !lease.returned) {
+            lease.depth++;
+            return lease.proxy;
+        }
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("Cơ sở dữ liệu đang bận, vui lòng thử lại sau");
+        }
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            lease = new Lease(pooled);
+            leased.add(lease);
+            current.set(lease);
+            borrows.increment();
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            long now = System.currentTimeMillis();
+            if (now - pooled.createdAt > maxLifetimeMillis) {
+                retire(pooled);
+            } else if (now - pooled.lastUsed > VALIDATION_BYPASS_MILLIS && !isValid(pooled)) {
+                logger.info("Discarding broken database connection");
+                retire(pooled);
+            } else {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        created.increment();
+        return new PooledConnection(physical,
+                statementCacheSize > 0 ? new StatementCache(physical, statementCacheSize, this) : null);
+    }
+
+    void recordPrepare(String sql, boolean hit) {
+        StatementStats stats = statementStats.get(sql);
+        if (stats == null) {
+            if (statementStats.size() >= MAX_TRACKED_STATEMENTS) {
+                return;
+            }
+            stats = statementStats.computeIfAbsent(sql, StatementStats::new);
+        }
+        stats.requests.increment();
+        if (hit) {
+            stats.hits.increment();
+        }
+    }
+
+    private void release(Lease lease) {
+        if (lease.returned) {
+            return;
+        }
+        if (--lease.depth > 0) {
+            return;
+        }
+        lease.returned = true;
+        if (lease.owner == Thread.currentThread()) {
+            current.remove();
+        }
+        leased.remove(lease);
+
+        PooledConnection pooled = lease.pooled;
+        if (pooled.statements != null) {
+            pooled.statements.checkInAll();
+        }
+        boolean reusable = !closed && System.currentTimeMillis() - pooled.createdAt <= maxLifetimeMillis;
+        try {
+            if (pooled.physical.isClosed()) {
+                reusable = false;
+            } else if (!pooled.physical.getAutoCommit()) {
+                // A transaction left open by an error path must not leak into the next borrower
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not reset database connection: " + e.getMessage());
+            reusable = false;
+        }
+        if (reusable) {
+            pooled.lastUsed = System.currentTimeMillis();
+            idle.addFirst(pooled);
+        } else {
+            retire(pooled);
+        }
+        permits.release();
+    }
+
+    private void retire(PooledConnection pooled) {
+        retired.increment();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            logger.debug("Error closing database connection", e);
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : idle) {
+            if (now - pooled.createdAt > maxLifetimeMillis && idle.remove(pooled)) {
+                retire(pooled);
+            }
+        }
+        if (leakThresholdMillis <= 0) {
+            return;
+        }
+        for (Lease lease : leased) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                leaks.increment();
+                logger.warn("Database connection held for " + (now - lease.borrowedAt) / 1000
+                        + "s by " + lease.owner.getName() + ", possible leak", lease.origin);
+            }
+        }
+    }
+
+    /**
+     * Closes idle connections now and borrowed ones as they are returned.
+     */
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            retire(pooled);
+        }
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getActive() { return leased.size(); }
+    public int getIdle() { return idle.size(); }
+    public long getBorrows() { return borrows.sum(); }
+    public long getTimeouts() { return timeouts.sum(); }
+    public long getCreated() { return created.sum(); }
+    public long getRetired() { return retired.sum(); }
+    public long getLeaks() { return leaks.sum(); }
+
+    /**
+     * @return per-SQL prepare statistics, most requested first
+     */
+    public List<StatementStats> getStatementStats() {
+        List<StatementStats> result = new ArrayList<>(statementStats.values());
+        result.sort(Comparator.comparingLong(StatementStats::getRequests).reversed());
+        return result;
+    }
+
+    public double getAverageWaitMillis() {
+        long count = borrows.sum() + timeouts.sum();
+        return count == 0 ? 0.0 : waitNanos.sum() / 1e6 / count;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+}
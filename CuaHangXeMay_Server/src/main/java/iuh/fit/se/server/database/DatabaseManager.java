@@ -1,24 +1,61 @@
 package iuh.fit.se.server.database;
 
+import iuh.fit.se.server.config.ServerSettings;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.log4j.Logger;
 
+/**
+ * Hands out pooled connections; see ConnectionPool. Services borrow one per
+ * unit of work with try-with-resources, so requests on different workers
+ * use different connections and run in parallel.
+ * <p>
+ * With server.dbReplicaUrl set there is a second pool on a read replica.
+ * The action registry marks each read-only action with route(); while it
+ * runs, getConnection() on that thread borrows from the replica, unless the
+ * replica is down, lags more than server.dbReplicaMaxLagSeconds, or may not
+ * yet have the caller's own last write.
+ */
 public class DatabaseManager {
     private static final Logger logger = Logger.getLogger(DatabaseManager.class);
 
     private static final String DB_URL = "jdbc:mariadb://localhost:3306/motorcycle_shop";
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = "123456";
+    private static final long LAG_CHECK_MILLIS = 1000;
 
-    private static DatabaseManager instance;
-    private Connection connection;
+    private static volatile DatabaseManager instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final ConnectionPool pool;
+    // null when no replica is configured
+    private final ConnectionPool replicaPool;
+    private final ScheduledExecutorService lagMonitor;
+    // Set by route() for the action running on this thread
+    private final ThreadLocal<Boolean> replicaReads = new ThreadLocal<>();
+
+    // Replication lag seen by the last check, or -1 if the replica could not be checked
+    private volatile long replicaLagMillis = -1;
+    private volatile long lagCheckedAt;
+
+    private final LongAdder replicaRoutes = new LongAdder();
+    private final LongAdder primaryRoutes = new LongAdder();
+    private final LongAdder lagFallbacks = new LongAdder();
+    private final LongAdder ownWriteFallbacks = new LongAdder();
 
     private DatabaseManager() {
         try {
             Class.forName("org.mariadb.jdbc.Driver");
-            this.connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            this.pool = createPool(DB_URL);
+            // Opens the first connection now, so a wrong URL or password fails at startup
+            pool.getConnection().close();
             logger.info("Database connection established successfully");
         } catch (ClassNotFoundException e) {
             logger.error("MariaDB JDBC Driver not found", e);
@@ -27,42 +64,179 @@ public class DatabaseManager {
             logger.error("Failed to connect to database", e);
             throw new RuntimeException("Failed to connect to database", e);
         }
+
+        String replicaUrl = ServerSettings.getDbReplicaUrl();
+        if (replicaUrl == null || replicaUrl.isEmpty()) {
+            this.replicaPool = null;
+            this.lagMonitor = null;
+            return;
+        }
+        // A replica that is down only sends reads back to the primary; it does not stop the server
+        this.replicaPool = createPool(replicaUrl);
+        this.lagMonitor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "db-replica-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkReplicaLag();
+        lagMonitor.scheduleWithFixedDelay(this::checkReplicaLag, LAG_CHECK_MILLIS, LAG_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        logger.info("Read replica: " + replicaUrl);
     }
 
-    public static synchronized DatabaseManager getInstance() {
-        if (instance == null) {
-            instance = new DatabaseManager();
+    private static ConnectionPool createPool(String url) {
+        if (ServerSettings.isDbServerPrepare()) {
+            url += (url.contains("?") ? "&" : "?") + "useServerPrepStmts=true";
         }
-        return instance;
+        return new ConnectionPool(url, DB_USER, DB_PASSWORD, ServerSettings.getDbPoolSize(),
+                ServerSettings.getDbBorrowTimeoutMillis(), ServerSettings.getDbMaxLifetimeMillis(),
+                ServerSettings.getDbLeakThresholdMillis(), ServerSettings.getDbStatementCacheSize());
     }
 
-    public Connection getConnection() {
+    public static DatabaseManager getInstance() {
+        DatabaseManager current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
         try {
-            if (connection == null || connection.isClosed()) {
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                logger.info("Database connection re-established");
+            if (instance == null) {
+                instance = new DatabaseManager();
             }
-        } catch (SQLException e) {
-            logger.error("Failed to get database connection", e);
-            throw new RuntimeException("Failed to get database connection", e);
+            return instance;
+        } finally {
+            instanceLock.unlock();
         }
-        return connection;
     }
 
-    public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                logger.info("Database connection closed");
+    /**
+     * Borrows a connection; close() returns it to the pool. Inside a
+     * read-only action routed to the replica, the connection is a replica one.
+     */
+    public Connection getConnection() throws SQLException {
+        if (replicaPool != null && Boolean.TRUE.equals(replicaReads.get())) {
+            return replicaPool.getConnection();
+        }
+        return pool.getConnection();
+    }
+
+    /**
+     * Chooses the database for the action about to run on this thread.
+     *
+     * @param readOnly     whether the action only reads
+     * @param lastWriteAt  when the caller last wrote (System.currentTimeMillis()), or 0
+     * @return the previous routing, to pass to restoreRoute() when the action ends
+     */
+    public Boolean route(boolean readOnly, long lastWriteAt) {
+        Boolean previous = replicaReads.get();
+        boolean replica = readOnly && replicaPool != null && useReplica(lastWriteAt);
+        replicaReads.set(replica);
+        if (readOnly) {
+            (replica ? replicaRoutes : primaryRoutes).increment();
+        }
+        return previous;
+    }
+
+    public void restoreRoute(Boolean previous) {
+        if (previous == null) {
+            replicaReads.remove();
+        } else {
+            replicaReads.set(previous);
+        }
+    }
+
+    /**
+     * @return whether the replica may not yet have a write made at lastWriteAt
+     */
+    public boolean mayMissOwnWrite(long lastWriteAt) {
+        return replicaPool != null && mayMissWrite(lastWriteAt);
+    }
+
+    private boolean useReplica(long lastWriteAt) {
+        if (!isReplicaUsable()) {
+            lagFallbacks.increment();
+            return false;
+        }
+        if (mayMissWrite(lastWriteAt)) {
+            ownWriteFallbacks.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isReplicaUsable() {
+        long lag = replicaLagMillis;
+        // A check that has not run for a while means the monitor is stuck on a dead replica
+        return lag >= 0 && lag <= ServerSettings.getDbReplicaMaxLagMillis()
+                && System.currentTimeMillis() - lagCheckedAt <= 3 * LAG_CHECK_MILLIS;
+    }
+
+    /**
+     * The lag is known to the second and is up to a check old, so a write
+     * counts as replicated only after the lag plus that much margin.
+     */
+    private boolean mayMissWrite(long lastWriteAt) {
+        return lastWriteAt > 0
+                && System.currentTimeMillis() - lastWriteAt <= replicaLagMillis + 1000 + LAG_CHECK_MILLIS;
+    }
+
+    private void checkReplicaLag() {
+        try (Connection connection = replicaPool.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+            long lag;
+            if (!rs.next()) {
+                // Not replicating from anything, e.g. a copy used for testing
+                lag = 0;
+            } else {
+                long seconds = rs.getLong("Seconds_Behind_Master");
+                // NULL while replication is stopped or broken
+                lag = rs.wasNull() ? -1 : seconds * 1000;
             }
+            if (lag < 0 && replicaLagMillis >= 0) {
+                logger.warn("Replica is not replicating; reads go to the primary");
+            }
+            replicaLagMillis = lag;
         } catch (SQLException e) {
-            logger.error("Failed to close database connection", e);
+            if (replicaLagMillis >= 0) {
+                logger.warn("Replica unavailable; reads go to the primary: " + e.getMessage());
+            }
+            replicaLagMillis = -1;
         }
+        lagCheckedAt = System.currentTimeMillis();
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the replica pool, or null if no replica is configured
+     */
+    public ConnectionPool getReplicaPool() {
+        return replicaPool;
+    }
+
+    public long getReplicaLagMillis() { return replicaLagMillis; }
+    /** Read-only actions sent to the replica. */
+    public long getReplicaRoutes() { return replicaRoutes.sum(); }
+    /** Read-only actions run on the primary, including the fallbacks below. */
+    public long getPrimaryRoutes() { return primaryRoutes.sum(); }
+    public long getLagFallbacks() { return lagFallbacks.sum(); }
+    public long getOwnWriteFallbacks() { return ownWriteFallbacks.sum(); }
+
+    public void closeConnection() {
+        if (replicaPool != null) {
+            lagMonitor.shutdownNow();
+            replicaPool.close();
+        }
+        pool.close();
+        logger.info("Database connections closed");
     }
 
     public boolean testConnection() {
-        try {
-            return connection != null && !connection.isClosed();
+        try (Connection connection = pool.getConnection()) {
+            return connection.isValid(2);
         } catch (SQLException e) {
             logger.error("Error testing database connection", e);
             return false;
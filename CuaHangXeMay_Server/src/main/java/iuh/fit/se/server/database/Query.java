@@ -0,0 +1,231 @@
+package iuh.fit.se.server.database;
+
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One SQL statement with its parameters, run on a connection borrowed from
+ * DatabaseManager for the call (inside a transaction, the thread's own; see
+ * ConnectionPool). Statement and result set are always closed, rows are
+ * mapped with a RowMapper, and every execution is timed per SQL text.
+ * <pre>
+ *   Product product = Query.sql("SELECT * FROM products WHERE id = ?").params(id).first(PRODUCT);
+ * </pre>
+ */
+public final class Query {
+    private static final Logger logger = Logger.getLogger(Query.class);
+    // Distinct SQL texts timed
+    private static final int MAX_TRACKED = 500;
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    private final String sql;
+    private Object[] params = new Object[0];
+    private int fetchSize;
+
+    /**
+     * Handles one mapped row of forEach().
+     */
+    public interface RowHandler<T> {
+        void handle(T row) throws SQLException;
+    }
+
+    /**
+     * Executions of one SQL text.
+     */
+    public static class Timing {
+        private final String sql;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder rows = new LongAdder();
+
+        Timing(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() { return sql; }
+        public long getExecutions() { return executions.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+        /** Rows read, or rows changed for updates. */
+        public long getRows() { return rows.sum(); }
+    }
+
+    private Query(String sql) {
+        this.sql = sql;
+    }
+
+    public static Query sql(String sql) {
+        return new Query(sql);
+    }
+
+    /**
+     * Values for the ? placeholders, in order; null is SQL NULL.
+     */
+    public Query params(Object... params) {
+        this.params = params;
+        return this;
+    }
+
+    /**
+     * Rows fetched at a time. Above 0 the driver streams the result instead
+     * of reading all of it first; use with forEach() for large results.
+     */
+    public Query fetchSize(int rows) {
+        this.fetchSize = rows;
+        return this;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public <T> List<T> list(RowMapper<T> mapper) throws SQLException {
+        List<T> result = new ArrayList<>();
+        forEach(mapper, result::add);
+        return result;
+    }
+
+    /**
+     * @return the first row, or null if there is none
+     */
+    public <T> T first(RowMapper<T> mapper) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = prepare(connection, -1);
+             ResultSet rs = stmt.executeQuery()) {
+            T row = rs.next() ? mapper.map(rs, mapper.columns(sql, rs)) : null;
+            record(start, row != null ? 1 : 0);
+            return row;
+        }
+    }
+
+    /**
+     * Maps and hands over rows one at a time, as they are read.
+     *
+     * @return the number of rows
+     */
+    public <T> int forEach(RowMapper<T> mapper, RowHandler<T> handler) throws SQLException {
+        long start = System.nanoTime();
+        int count = 0;
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = prepare(connection, -1);
+             ResultSet rs = stmt.executeQuery()) {
+            int[] columns = null;
+            while (rs.next()) {
+                if (columns == null) {
+                    columns = mapper.columns(sql, rs);
+                }
+                handler.handle(mapper.map(rs, columns));
+                count++;
+            }
+        }
+        record(start, count);
+        return count;
+    }
+
+    /**
+     * @return the first column of the first row as an int, or defaultValue if there is no row
+     */
+    public int intValue(int defaultValue) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = prepare(connection, -1);
+             ResultSet rs = stmt.executeQuery()) {
+            int value = rs.next() ? rs.getInt(1) : defaultValue;
+            record(start, 1);
+            return value;
+        }
+    }
+
+    /**
+     * Runs an INSERT, UPDATE or DELETE.
+     *
+     * @return the number of rows changed (matched, for UPDATE)
+     */
+    public int update() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = prepare(connection, -1)) {
+            int affected = stmt.executeUpdate();
+            record(start, affected);
+            return affected;
+        }
+    }
+
+    /**
+     * Runs an INSERT into a table with an auto-increment key.
+     *
+     * @return the generated key, or 0 if no row was inserted
+     */
+    public int insert() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseManager.getInstance().getConnection();
+             PreparedStatement stmt = prepare(connection, Statement.RETURN_GENERATED_KEYS)) {
+            int affected = stmt.executeUpdate();
+            int key = 0;
+            if (affected > 0) {
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        key = rs.getInt(1);
+                    }
+                }
+            }
+            record(start, affected);
+            return key;
+        }
+    }
+
+    private PreparedStatement prepare(Connection connection, int autoGeneratedKeys) throws SQLException {
+        PreparedStatement stmt = autoGeneratedKeys < 0
+                ? connection.prepareStatement(sql)
+                : connection.prepareStatement(sql, autoGeneratedKeys);
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+        if (fetchSize > 0) {
+            stmt.setFetchSize(fetchSize);
+        }
+        return stmt;
+    }
+
+    private void record(long start, long rows) {
+        long nanos = System.nanoTime() - start;
+        Timing timing = timings.get(sql);
+        if (timing == null && timings.size() < MAX_TRACKED) {
+            timing = timings.computeIfAbsent(sql, Timing::new);
+        }
+        if (timing != null) {
+            timing.executions.increment();
+            timing.totalNanos.add(nanos);
+            timing.maxNanos.accumulateAndGet(nanos, Math::max);
+            timing.rows.add(rows);
+        }
+        long slowMillis = ServerSettings.getSlowQueryMillis();
+        if (slowMillis > 0 && nanos >= slowMillis * 1_000_000) {
+            logger.warn("Slow query (" + nanos / 1_000_000 + " ms, " + rows + " rows): " + sql);
+        }
+    }
+
+    /**
+     * @return execution times per SQL text, most total time first
+     */
+    public static List<Timing> getTimings() {
+        List<Timing> result = new ArrayList<>(timings.values());
+        result.sort(Comparator.comparingLong(Timing::getTotalNanos).reversed());
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package iuh.fit.se.server.database;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Turns rows into objects through a fixed list of (column label, setter)
+ * pairs, declared once per type:
+ * <pre>
+ *   RowMapper.of(Category::new)
+ *           .intColumn("id", Category::setId)
+ *           .stringColumn("name", Category::setName);
+ * </pre>
+ * The labels are looked up in the result's metadata the first time the
+ * mapper sees a query (see Query), and rows of that query are then read by
+ * column index. A label the query does not return is skipped, so one mapper
+ * serves "SELECT p.*" with or without joined columns. Declare the columns
+ * before the mapper is shared; it is not changed afterwards.
+ */
+public final class RowMapper<T> {
+    // Queries whose columns are remembered; SQL built per call (page sizes) can make many
+    private static final int MAX_SHAPES = 256;
+
+    private final Supplier<T> factory;
+    private final List<String> labels = new ArrayList<>();
+    private final List<Setter<T>> setters = new ArrayList<>();
+    // Column index of each label (0 = not returned), per SQL text
+    private final Map<String, int[]> columnsBySql = new ConcurrentHashMap<>();
+
+    private interface Setter<T> {
+        void set(T target, ResultSet rs, int column) throws SQLException;
+    }
+
+    private RowMapper(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    public static <T> RowMapper<T> of(Supplier<T> factory) {
+        return new RowMapper<>(factory);
+    }
+
+    public RowMapper<T> intColumn(String label, ObjIntConsumer<T> setter) {
+        return column(label, (target, rs, column) -> setter.accept(target, rs.getInt(column)));
+    }
+
+    public RowMapper<T> longColumn(String label, ObjLongConsumer<T> setter) {
+        return column(label, (target, rs, column) -> setter.accept(target, rs.getLong(column)));
+    }
+
+    public RowMapper<T> stringColumn(String label, BiConsumer<T, String> setter) {
+        return column(label, (target, rs, column) -> setter.accept(target, rs.getString(column)));
+    }
+
+    public RowMapper<T> decimalColumn(String label, BiConsumer<T, BigDecimal> setter) {
+        return column(label, (target, rs, column) -> setter.accept(target, rs.getBigDecimal(column)));
+    }
+
+    public RowMapper<T> timestampColumn(String label, BiConsumer<T, Timestamp> setter) {
+        return column(label, (target, rs, column) -> setter.accept(target, rs.getTimestamp(column)));
+    }
+
+    private RowMapper<T> column(String label, Setter<T> setter) {
+        labels.add(label);
+        setters.add(setter);
+        return this;
+    }
+
+    /**
+     * @return the column index of every declared label in the result of sql
+     */
+    int[] columns(String sql, ResultSet rs) throws SQLException {
+        int[] columns = columnsBySql.get(sql);
+        if (columns != null) {
+            return columns;
+        }
+        ResultSetMetaData meta = rs.getMetaData();
+        columns = new int[labels.size()];
+        for (int i = 0; i < columns.length; i++) {
+            // Like ResultSet.getXxx(label): the first column with that label
+            for (int column = meta.getColumnCount(); column >= 1; column--) {
+                if (labels.get(i).equalsIgnoreCase(meta.getColumnLabel(column))) {
+                    columns[i] = column;
+                }
+            }
+        }
+        if (columnsBySql.size() < MAX_SHAPES) {
+            columnsBySql.put(sql, columns);
+        }
+        return columns;
+    }
+
+    T map(ResultSet rs, int[] columns) throws SQLException {
+        T target = factory.get();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] > 0) {
+                setters.get(i).set(target, rs, columns[i]);
+            }
+        }
+        return target;
+    }
+}
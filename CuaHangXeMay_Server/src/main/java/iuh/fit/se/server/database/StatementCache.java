@@ -0,0 +1,160 @@
+package iuh.fit.se.server.database;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Prepared statements of one pooled connection, by SQL text, least recently
+ * used evicted first. close() on a statement handed out from here resets it
+ * and keeps it for the next prepareStatement() of the same SQL. Only used
+ * by the thread holding the connection, so it is not synchronized.
+ */
+class StatementCache {
+    private static final Logger logger = Logger.getLogger(StatementCache.class);
+
+    private final Connection physical;
+    private final int capacity;
+    private final ConnectionPool pool;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private class Entry implements InvocationHandler {
+        final String sql;
+        final PreparedStatement statement;
+        final PreparedStatement proxy;
+        boolean inUse;
+        boolean evicted;
+
+        Entry(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    checkIn(this);
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            if (!inUse) {
+                throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    StatementCache(Connection physical, int capacity, ConnectionPool pool) {
+        this.physical = physical;
+        this.capacity = capacity;
+        this.pool = pool;
+    }
+
+    /**
+     * @param autoGeneratedKeys a Statement constant, or -1 for prepareStatement(sql)
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? sql + "\u0000keys" : sql;
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse) {
+            entry.inUse = true;
+            pool.recordPrepare(sql, true);
+            return entry.proxy;
+        }
+        pool.recordPrepare(sql, false);
+        PreparedStatement statement = autoGeneratedKeys < 0
+                ? physical.prepareStatement(sql)
+                : physical.prepareStatement(sql, autoGeneratedKeys);
+        if (entry != null) {
+            // The same SQL is still open further up this thread's stack: a one-off statement
+            return statement;
+        }
+        entry = new Entry(key, statement);
+        entry.inUse = true;
+        entries.put(key, entry);
+        evict();
+        return entry.proxy;
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                closeQuietly(eldest.statement);
+            }
+        }
+    }
+
+    private void checkIn(Entry entry) {
+        if (!entry.inUse) {
+            return;
+        }
+        entry.inUse = false;
+        if (entry.evicted) {
+            closeQuietly(entry.statement);
+            return;
+        }
+        try {
+            // Leave nothing from this use behind for the next one
+            ResultSet rs = entry.statement.getResultSet();
+            if (rs != null) {
+                rs.close();
+            }
+            entry.statement.clearParameters();
+            entry.statement.setFetchSize(0);
+        } catch (SQLException e) {
+            logger.debug("Dropping statement that could not be reset", e);
+            entries.remove(entry.sql);
+            closeQuietly(entry.statement);
+        }
+    }
+
+    /**
+     * Called when the connection goes back to the pool; statements the
+     * borrower did not close are reset for the next one.
+     */
+    void checkInAll() {
+        for (Entry entry : entries.values().toArray(new Entry[0])) {
+            checkIn(entry);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.debug("Error closing statement", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package iuh.fit.se.server.event;
+
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.RequestContext;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pushes change events to connections subscribed to a topic (products,
+ * inventory, orders, customers). Services publish after their transaction
+ * commits; one dispatcher thread does the sending so a slow client never
+ * holds up a write.
+ *
+ * An event is a Response with status EVENT and correlation id 0; its data
+ * holds "topic", "op" (CREATED/UPDATED/DELETED), "id" and, when the service
+ * has it at hand, the changed row as "entity".
+ */
+public class ChangeNotifier {
+    private static final Logger logger = Logger.getLogger(ChangeNotifier.class);
+
+    private static volatile ChangeNotifier instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<String, Set<RequestContext>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "change-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Bumped by every publish, so readers can tell cheaply whether a topic's data may have changed
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder pushed = new LongAdder();
+
+    private ChangeNotifier() {
+    }
+
+    public static ChangeNotifier getInstance() {
+        ChangeNotifier current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = new ChangeNotifier();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    public static boolean isTopic(String topic) {
+        return Constants.TOPIC_PRODUCTS.equals(topic)
+                || Constants.TOPIC_INVENTORY.equals(topic)
+                || Constants.TOPIC_ORDERS.equals(topic)
+                || Constants.TOPIC_CUSTOMERS.equals(topic);
+    }
+
+    public void subscribe(RequestContext context, Collection<String> topics) {
+        for (String topic : topics) {
+            subscribers.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet()).add(context);
+        }
+    }
+
+    public void unsubscribe(RequestContext context, Collection<String> topics) {
+        for (String topic : topics) {
+            Set<RequestContext> contexts = subscribers.get(topic);
+            if (contexts != null) {
+                contexts.remove(context);
+            }
+        }
+    }
+
+    /**
+     * Called when a connection closes.
+     */
+    public void unsubscribeAll(RequestContext context) {
+        for (Set<RequestContext> contexts : subscribers.values()) {
+            contexts.remove(context);
+        }
+    }
+
+    /**
+     * @param entity the row after the change, or null if subscribers should
+     *               fetch it themselves (and always for DELETED)
+     */
+    public void publish(String topic, String op, int id, Object entity) {
+        published.increment();
+        versions.computeIfAbsent(topic, t -> new AtomicLong()).incrementAndGet();
+        Set<RequestContext> contexts = subscribers.get(topic);
+        if (contexts == null || contexts.isEmpty()) {
+            return;
+        }
+        dispatcher.execute(() -> {
+            for (RequestContext context : contexts) {
+                Map<String, Object> event = new HashMap<>();
+                event.put("topic", topic);
+                event.put("op", op);
+                event.put("id", id);
+                event.put("entity", entity);
+                try {
+                    if (context.push(new Response(Constants.EVENT, topic, event))) {
+                        pushed.increment();
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Could not push " + topic + " event: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of changes published on this node for the topic
+     */
+    public long getVersion(String topic) {
+        AtomicLong version = versions.get(topic);
+        return version != null ? version.get() : 0;
+    }
+
+    public int getSubscriberCount(String topic) {
+        Set<RequestContext> contexts = subscribers.get(topic);
+        return contexts != null ? contexts.size() : 0;
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getPushed() {
+        return pushed.sum();
+    }
+}
@@ -0,0 +1,520 @@
+package iuh.fit.se.server.http;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import iuh.fit.se.common.Constants;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.SingleFlight;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.network.PooledRequestScheduler;
+import iuh.fit.se.server.network.RequestScheduler;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only catalog over HTTP/JSON, for the web storefront and price
+ * displays. Requests go through the same ActionRegistry as socket clients
+ * (access, rate limits, coalescing) and run on their own per-class worker
+ * pools; the HttpServer dispatcher thread only parses the URL.
+ * <p>
+ * A session token from POST /api/login is sent as "Authorization: Bearer".
+ * GET replies carry an ETag naming the URL and the version of the data
+ * behind it (see ChangeNotifier.getVersion), so the JSON is written to the
+ * client as it is produced, in a chunked body, and never held whole. When a
+ * poll's If-None-Match matches the last ETag of the same URL and no change
+ * has been published on this node since, the reply is 304 without running
+ * the query. Changes made on other nodes are picked up after
+ * server.httpRevalidateSeconds: the query then runs again and the reply
+ * gets a new ETag, even if its data turns out unchanged. ETags are
+ * therefore per node.
+ */
+public class HttpGateway {
+    private static final Logger logger = Logger.getLogger(HttpGateway.class);
+    private static final String PREFIX = "/api/";
+    private static final String[] PRODUCT_TOPICS = {Constants.TOPIC_PRODUCTS};
+    private static final String[] STOCK_TOPICS = {Constants.TOPIC_PRODUCTS, Constants.TOPIC_INVENTORY};
+    private static final String[] NO_TOPICS = {};
+    // Distinct URLs remembered; searches could otherwise grow the table without bound
+    private static final int MAX_VALIDATORS = 10_000;
+
+    private final ActionRegistry registry = ActionRegistry.getInstance();
+    private final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss").create();
+    // Last ETag sent per URL (action and parameters, not the caller)
+    private final Map<String, Validator> validators = new ConcurrentHashMap<>();
+    private final long revalidateMillis = ServerSettings.getHttpRevalidateMillis();
+    // Makes this node's ETags differ from other nodes' and from before a restart
+    private final String etagPrefix = Long.toHexString(new SecureRandom().nextLong());
+    private final AtomicLong etagSerial = new AtomicLong();
+    private HttpServer server;
+    private RequestScheduler scheduler;
+    // Writes the replies of requests that joined another's call, each on its own
+    // thread, so a slow client does not hold the worker that finished the call
+    private ExecutorService joinedReplies;
+
+    private static class Validator {
+        final String etag;
+        final long version;
+        final long checkedAt;
+
+        Validator(String etag, long version, long checkedAt) {
+            this.etag = etag;
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    /**
+     * A GET endpoint: the action it calls and the topics whose changes
+     * invalidate its ETags.
+     */
+    private static class Route {
+        final String action;
+        final String[] topics;
+        final boolean paged;
+
+        Route(String action, String[] topics, boolean paged) {
+            this.action = action;
+            this.topics = topics;
+            this.paged = paged;
+        }
+    }
+
+    public void start() throws IOException {
+        int port = ServerSettings.getHttpPort();
+        // Default executor: handlers run on the dispatcher thread and only hand work to the scheduler
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        scheduler = new PooledRequestScheduler();
+        joinedReplies = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "http-joined-reply");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext(PREFIX, this::handle);
+        server.start();
+        logger.info("HTTP gateway started on port " + port);
+        System.out.println("HTTP/JSON catalog is available on port " + port);
+    }
+
+    /**
+     * Stops accepting requests and waits (up to the drain timeout) for the
+     * ones already running.
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(ServerSettings.getDrainTimeoutSeconds(), TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scheduler.shutdownNow();
+        }
+        joinedReplies.shutdown();
+        server.stop(0);
+        logger.info("HTTP gateway stopped");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && ("login".equals(path) || "logout".equals(path))) {
+                Request request = new Request("login".equals(path) ? Constants.LOGIN : Constants.LOGOUT);
+                request.setToken(bearerToken(exchange));
+                submit(exchange, request, () -> {
+                    if (Constants.LOGIN.equals(request.getAction()) && !readCredentials(exchange, request)) {
+                        sendStatus(exchange, 400, Response.error("Dữ liệu đăng nhập không hợp lệ"));
+                        return;
+                    }
+                    send(exchange, registry.dispatch(request, contextOf(exchange)), null);
+                });
+                return;
+            }
+            if (!"GET".equals(method)) {
+                sendStatus(exchange, 405, Response.error("Chỉ hỗ trợ GET (và POST /api/login, /api/logout)"));
+                return;
+            }
+            Request request = new Request();
+            Route route = route(path, request);
+            if (route == null) {
+                sendStatus(exchange, 404, Response.notFound("Không tìm thấy: " + exchange.getRequestURI().getPath()));
+                return;
+            }
+            request.setType(route.action);
+            readQuery(exchange.getRequestURI(), route, request);
+            get(exchange, route, request);
+        } catch (IllegalArgumentException e) {
+            sendStatus(exchange, 400, Response.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * Fills the path id into the request data.
+     *
+     * @return null if no endpoint matches
+     */
+    private Route route(String path, Request request) {
+        String[] parts = path.split("/");
+        switch (parts[0]) {
+            case "products":
+                if (parts.length == 1) {
+                    return new Route(Constants.GET_ALL_PRODUCTS, PRODUCT_TOPICS, true);
+                }
+                if (parts.length == 2 && "search".equals(parts[1])) {
+                    return new Route(Constants.SEARCH_PRODUCTS, PRODUCT_TOPICS, false);
+                }
+                if (parts.length == 2) {
+                    request.addData("id", parseId(parts[1]));
+                    return new Route(Constants.GET_PRODUCT_BY_ID, PRODUCT_TOPICS, false);
+                }
+                return null;
+            case "categories":
+                if (parts.length == 1) {
+                    // Categories publish no events; their ETags expire by age only
+                    return new Route(Constants.GET_ALL_CATEGORIES, NO_TOPICS, false);
+                }
+                if (parts.length == 3 && "products".equals(parts[2])) {
+                    request.addData("categoryId", parseId(parts[1]));
+                    return new Route(Constants.GET_PRODUCTS_BY_CATEGORY, PRODUCT_TOPICS, false);
+                }
+                return null;
+            case "inventory":
+                if (parts.length == 1) {
+                    return new Route(Constants.GET_ALL_INVENTORY, STOCK_TOPICS, true);
+                }
+                if (parts.length == 2 && "low-stock".equals(parts[1])) {
+                    return new Route(Constants.GET_LOW_STOCK_PRODUCTS, STOCK_TOPICS, false);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Mã không hợp lệ: " + text);
+        }
+    }
+
+    /**
+     * Query parameters: q (search keyword), pageSize and cursor. Lists are
+     * always paged over HTTP, at most Constants.MAX_PAGE_SIZE rows per reply.
+     */
+    private void readQuery(URI uri, Route route, Request request) {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                params.put(name, value);
+            }
+        }
+        if (Constants.SEARCH_PRODUCTS.equals(route.action)) {
+            String keyword = params.get("q");
+            if (keyword == null || keyword.isEmpty()) {
+                throw new IllegalArgumentException("Thiếu từ khóa tìm kiếm (q)");
+            }
+            request.addData("keyword", keyword);
+        }
+        if (route.paged) {
+            String size = params.get(Constants.PAGE_SIZE);
+            request.addData(Constants.PAGE_SIZE, size != null ? parseId(size) : Constants.MAX_PAGE_SIZE);
+            if (params.containsKey(Constants.CURSOR)) {
+                request.addData(Constants.CURSOR, params.get(Constants.CURSOR));
+            }
+        }
+    }
+
+    private void get(HttpExchange exchange, Route route, Request request) throws IOException {
+        request.setToken(bearerToken(exchange));
+        RequestContext context = contextOf(exchange);
+        String key = route.action + new TreeMap<>(request.getData());
+        long version = versionOf(route);
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        Validator validator = validators.get(key);
+        if (ifNoneMatch != null && validator != null && validator.etag.equals(ifNoneMatch)
+                && validator.version == version
+                && System.currentTimeMillis() - validator.checkedAt < revalidateMillis) {
+            Response denied = registry.authorize(request, context);
+            if (denied != null) {
+                send(exchange, denied, null);
+            } else {
+                sendNotModified(exchange, validator.etag);
+            }
+            return;
+        }
+
+        SingleFlight.Call call = registry.startCall(request, context);
+        if (call != null && !call.isLeader()) {
+            // Identical request already running: its answer is ours too
+            call.getResponse().whenComplete((response, error) -> {
+                Response answer = error != null ? Response.error("Server error: " + error.getMessage()) : response;
+                Runnable task = () -> {
+                    try {
+                        reply(exchange, key, version, ifNoneMatch, answer);
+                    } catch (RuntimeException e) {
+                        logger.info("HTTP request failed: " + e.getMessage());
+                        exchange.close();
+                    }
+                };
+                try {
+                    joinedReplies.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down: written from here instead
+                    task.run();
+                }
+            });
+            return;
+        }
+        submit(exchange, request, () -> {
+            Response response = call != null
+                    ? registry.dispatch(call, request, context)
+                    : registry.dispatch(request, context);
+            reply(exchange, key, version, ifNoneMatch, response);
+        }, call);
+    }
+
+    private void reply(HttpExchange exchange, String key, long version, String ifNoneMatch, Response response) {
+        try {
+            if (!response.isSuccess()) {
+                send(exchange, response, null);
+                return;
+            }
+            long now = System.currentTimeMillis();
+            Validator validator = validators.get(key);
+            String etag;
+            if (validator != null && validator.version == version && now - validator.checkedAt < revalidateMillis) {
+                // Concurrent replies for the same data share one tag
+                etag = validator.etag;
+            } else {
+                etag = etagOf(key, version);
+                if (validators.size() >= MAX_VALIDATORS) {
+                    validators.clear();
+                }
+                // Version read before the query ran: a change during it makes the ETag stale at once
+                validators.put(key, new Validator(etag, version, now));
+            }
+            if (etag.equals(ifNoneMatch)) {
+                sendNotModified(exchange, etag);
+            } else {
+                sendBody(exchange, 200, response, etag);
+            }
+        } catch (IOException e) {
+            logger.info("HTTP reply failed: " + e.getMessage());
+            exchange.close();
+        }
+    }
+
+    private void submit(HttpExchange exchange, Request request, HttpTask task) throws IOException {
+        submit(exchange, request, task, null);
+    }
+
+    private void submit(HttpExchange exchange, Request request, HttpTask task, SingleFlight.Call call)
+            throws IOException {
+        ActionClass actionClass = registry.classOf(request);
+        boolean accepted = scheduler.submit(actionClass, () -> {
+            try {
+                task.run();
+            } catch (IOException | RuntimeException e) {
+                logger.info("HTTP request failed: " + e.getMessage());
+                exchange.close();
+            } catch (Error e) {
+                exchange.close();
+                throw e;
+            }
+        });
+        if (!accepted) {
+            Response busy = Response.busy("Server đang bận, vui lòng thử lại sau");
+            if (call != null) {
+                registry.abandon(call, busy);
+            }
+            send(exchange, busy, null);
+        }
+    }
+
+    private interface HttpTask {
+        void run() throws IOException;
+    }
+
+    private long versionOf(Route route) {
+        long version = 0;
+        for (String topic : route.topics) {
+            version += ChangeNotifier.getInstance().getVersion(topic);
+        }
+        return version;
+    }
+
+    /**
+     * Reads {"username": ..., "password": ...} from the body.
+     *
+     * @return false if the body is not such an object
+     */
+    private boolean readCredentials(HttpExchange exchange, Request request) throws IOException {
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            Map<?, ?> body = gson.fromJson(reader, Map.class);
+            if (body == null || !(body.get("username") instanceof String) || !(body.get("password") instanceof String)) {
+                return false;
+            }
+            request.addData("username", body.get("username"));
+            request.addData("password", body.get("password"));
+            return true;
+        } catch (JsonParseException e) {
+            return false;
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return authorization.substring(7).trim();
+        }
+        return null;
+    }
+
+    private static RequestContext contextOf(HttpExchange exchange) {
+        // Same form as the socket servers, so rate limits by address match across protocols
+        return new RequestContext(String.valueOf(exchange.getRemoteAddress().getAddress()));
+    }
+
+    /**
+     * Writes {status, message, data[, cursor]} with JsonWriter, one list
+     * element at a time, so no intermediate JSON tree, string or body is built.
+     */
+    private void writeJson(Response response, OutputStream out) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        writer.beginObject();
+        writer.name("status").value(response.getStatus());
+        writer.name("message").value(response.getMessage());
+        writer.name("data");
+        Object data = response.getData();
+        if (data instanceof Collection) {
+            writer.beginArray();
+            for (Object item : (Collection<?>) data) {
+                writeValue(writer, item);
+            }
+            writer.endArray();
+        } else {
+            writeValue(writer, data);
+        }
+        if (response.getContinuationToken() != null) {
+            writer.name(Constants.CURSOR).value(response.getContinuationToken());
+        }
+        writer.endObject();
+        writer.close();
+    }
+
+    private void writeValue(JsonWriter writer, Object value) {
+        if (value == null) {
+            gson.toJson(null, Object.class, writer);
+        } else {
+            gson.toJson(value, value.getClass(), writer);
+        }
+    }
+
+    /**
+     * @return a new tag for the reply to key at version; the serial tells apart
+     *         replies after a revalidation, whose data may have changed on another node
+     */
+    private String etagOf(String key, long version) {
+        try {
+            String name = key + "|" + version + "|" + etagPrefix + "|" + etagSerial.incrementAndGet();
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(name.getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void send(HttpExchange exchange, Response response, String etag) throws IOException {
+        sendBody(exchange, statusOf(response), response, etag);
+    }
+
+    private void sendStatus(HttpExchange exchange, int status, Response response) throws IOException {
+        sendBody(exchange, status, response, null);
+    }
+
+    private static int statusOf(Response response) {
+        switch (response.getStatus()) {
+            case Constants.SUCCESS:
+                return 200;
+            case Constants.UNAUTHORIZED:
+                return 401;
+            case Constants.NOT_FOUND:
+                return 404;
+            case Constants.RATE_LIMITED:
+                return 429;
+            case Constants.BUSY:
+            case Constants.SHUTTING_DOWN:
+                return 503;
+            default:
+                return 500;
+        }
+    }
+
+    private void sendBody(HttpExchange exchange, int status, Response response, String etag) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) {
+            headers.set("ETag", etag);
+            // Clients may keep the body but must revalidate before using it
+            headers.set("Cache-Control", "private, no-cache");
+        }
+        // Length 0: chunked, as the body is written while it is produced
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            writeJson(response, out);
+        }
+    }
+
+    private static void sendNotModified(HttpExchange exchange, String etag) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "private, no-cache");
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+}
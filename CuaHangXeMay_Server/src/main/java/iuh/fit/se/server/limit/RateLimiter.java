@@ -0,0 +1,133 @@
+package iuh.fit.se.server.limit;
+
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token buckets per client and action class, checked before an action's
+ * handler runs, so one terminal hammering refresh cannot take the database
+ * from the others. A client is its session token, or its address for
+ * actions that need no session (login). Limits come from ServerSettings.
+ */
+public class RateLimiter {
+    private static final Logger logger = Logger.getLogger(RateLimiter.class);
+
+    private static volatile RateLimiter instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final Map<ActionClass, LongAdder> rejected = new EnumMap<>(ActionClass.class);
+    // A full bucket acts like a new one, so clients whose buckets have all refilled are dropped
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "rate-limit-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * One client's buckets; the label names it in metrics without exposing its token.
+     */
+    public static class Client {
+        private final String label;
+        private final Map<ActionClass, TokenBucket> buckets = new EnumMap<>(ActionClass.class);
+
+        private Client(String label, long now) {
+            this.label = label;
+            for (ActionClass actionClass : ActionClass.values()) {
+                int rate = ServerSettings.getRateLimit(actionClass);
+                if (rate > 0) {
+                    buckets.put(actionClass, new TokenBucket(rate, ServerSettings.getRateBurst(actionClass), now));
+                }
+            }
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return tokens left in the bucket, or -1 if the class is not limited
+         */
+        public double getTokens(ActionClass actionClass) {
+            TokenBucket bucket = buckets.get(actionClass);
+            return bucket != null ? bucket.getTokens(System.nanoTime()) : -1;
+        }
+
+        private boolean isIdle(long now) {
+            for (TokenBucket bucket : buckets.values()) {
+                if (!bucket.isFull(now)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private RateLimiter() {
+        for (ActionClass actionClass : ActionClass.values()) {
+            rejected.put(actionClass, new LongAdder());
+        }
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static RateLimiter getInstance() {
+        RateLimiter current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = new RateLimiter();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a token for one request.
+     *
+     * @param key   identifies the client's buckets
+     * @param label shown for the client in metrics
+     * @return false if the client is over its limit for the class
+     */
+    public boolean tryAcquire(String key, String label, ActionClass actionClass) {
+        if (ServerSettings.getRateLimit(actionClass) <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Client client = clients.computeIfAbsent(key, k -> new Client(label, now));
+        TokenBucket bucket = client.buckets.get(actionClass);
+        if (bucket == null || bucket.tryAcquire(now)) {
+            return true;
+        }
+        rejected.get(actionClass).increment();
+        return false;
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        clients.values().removeIf(client -> client.isIdle(now));
+        logger.debug("Rate limiter tracking " + clients.size() + " clients");
+    }
+
+    public long getRejected(ActionClass actionClass) {
+        return rejected.get(actionClass).sum();
+    }
+
+    public Iterable<Client> getClients() {
+        return clients.values();
+    }
+}
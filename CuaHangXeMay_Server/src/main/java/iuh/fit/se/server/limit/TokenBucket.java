@@ -0,0 +1,58 @@
+package iuh.fit.se.server.limit;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds up to burst tokens and refills at ratePerSecond; each request takes
+ * one. Refilling is computed on access, so an idle bucket costs nothing.
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    // ReentrantLock instead of synchronized: does not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(int ratePerSecond, int burst, long now) {
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = ratePerSecond / 1e9;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    boolean tryAcquire(long now) {
+        lock.lock();
+        try {
+            refill(now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getTokens(long now) {
+        lock.lock();
+        try {
+            refill(now);
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isFull(long now) {
+        return getTokens(now) >= capacity;
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package iuh.fit.se.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-action totals for framed responses: bytes before and after
+ * compression and the CPU time spent compressing.
+ */
+public class CompressionStats {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final Map<String, ActionStats> stats = new ConcurrentHashMap<>();
+
+    public static class ActionStats {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder compressedResponses = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder wireBytes = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+
+        public long getResponses() { return responses.sum(); }
+        public long getCompressedResponses() { return compressedResponses.sum(); }
+        public long getRawBytes() { return rawBytes.sum(); }
+        public long getWireBytes() { return wireBytes.sum(); }
+        public long getCpuNanos() { return cpuNanos.sum(); }
+
+        /**
+         * @return wire bytes / raw bytes, 1.0 when nothing was compressed
+         */
+        public double getRatio() {
+            long raw = getRawBytes();
+            return raw == 0 ? 1.0 : (double) getWireBytes() / raw;
+        }
+    }
+
+    public static void record(String action, int rawBytes, int wireBytes, boolean compressed, long cpuNanos) {
+        ActionStats s = stats.computeIfAbsent(action != null ? action : "UNKNOWN", k -> new ActionStats());
+        s.responses.increment();
+        s.rawBytes.add(rawBytes);
+        s.wireBytes.add(wireBytes);
+        if (compressed) {
+            s.compressedResponses.increment();
+        }
+        s.cpuNanos.add(cpuNanos);
+    }
+
+    public static Map<String, ActionStats> getStats() {
+        return new TreeMap<>(stats);
+    }
+
+    /**
+     * CPU time of the calling thread, or wall time where the JVM cannot
+     * measure it (e.g. virtual threads).
+     */
+    public static long cpuTimeNanos() {
+        long cpu = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+        return cpu >= 0 ? cpu : System.nanoTime();
+    }
+
+    public static String summary() {
+        StringBuilder sb = new StringBuilder("Compression by action:");
+        for (Map.Entry<String, ActionStats> entry : getStats().entrySet()) {
+            ActionStats s = entry.getValue();
+            sb.append(String.format("%n  %-24s %6d responses, %6d compressed, %10d -> %10d bytes (%.0f%%), %.1f ms CPU",
+                    entry.getKey(), s.getResponses(), s.getCompressedResponses(), s.getRawBytes(),
+                    s.getWireBytes(), s.getRatio() * 100, s.getCpuNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+}
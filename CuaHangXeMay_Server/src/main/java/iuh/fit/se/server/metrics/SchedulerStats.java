@@ -0,0 +1,68 @@
+package iuh.fit.se.server.metrics;
+
+import iuh.fit.se.server.action.ActionClass;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per action class: requests accepted, rejected with BUSY, waiting,
+ * running, and total time spent waiting for a worker.
+ */
+public class SchedulerStats {
+    private static final Map<ActionClass, ClassStats> stats = new EnumMap<>(ActionClass.class);
+
+    static {
+        for (ActionClass actionClass : ActionClass.values()) {
+            stats.put(actionClass, new ClassStats());
+        }
+    }
+
+    public static class ClassStats {
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder started = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+
+        public long getAccepted() { return accepted.sum(); }
+        public long getRejected() { return rejected.sum(); }
+        public long getQueued() { return Math.max(0, accepted.sum() - started.sum()); }
+        public long getRunning() { return Math.max(0, started.sum() - completed.sum()); }
+
+        public double getAverageQueueMillis() {
+            long count = started.sum();
+            return count == 0 ? 0.0 : queueNanos.sum() / 1e6 / count;
+        }
+    }
+
+    public static ClassStats get(ActionClass actionClass) {
+        return stats.get(actionClass);
+    }
+
+    /**
+     * Wraps a task before it is queued so its wait time and completion are recorded.
+     */
+    public static Runnable track(ActionClass actionClass, Runnable task) {
+        ClassStats s = stats.get(actionClass);
+        long queuedAt = System.nanoTime();
+        return () -> {
+            s.started.increment();
+            s.queueNanos.add(System.nanoTime() - queuedAt);
+            try {
+                task.run();
+            } finally {
+                s.completed.increment();
+            }
+        };
+    }
+
+    public static void accepted(ActionClass actionClass) {
+        stats.get(actionClass).accepted.increment();
+    }
+
+    public static void rejected(ActionClass actionClass) {
+        stats.get(actionClass).rejected.increment();
+    }
+}
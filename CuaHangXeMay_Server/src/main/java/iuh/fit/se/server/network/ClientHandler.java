@@ -1,12 +1,19 @@
 package iuh.fit.se.server.network;
 
 import iuh.fit.se.common.*;
-import iuh.fit.se.server.service.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.SingleFlight;
 import org.apache.log4j.Logger;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientHandler implements Runnable {
     private static final Logger logger = Logger.getLogger(ClientHandler.class);
@@ -15,48 +22,107 @@ public class ClientHandler implements Runnable {
     private SocketServer server;
     private ObjectInputStream in;
     private ObjectOutputStream out;
+
+    // Set when the client opened with the framed handshake; null = legacy object stream
+    private ConnectionCodec codec;
+    private DataInputStream frameIn;
+    private DataOutputStream frameOut;
     private volatile boolean isConnected;
 
-    private UserService userService;
-    private ProductService productService;
-    private CustomerService customerService;
-    private OrderService orderService;
-    private InventoryService inventoryService;
+    // ReentrantLock instead of synchronized: does not pin virtual threads
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Runs the services; this thread only reads requests and writes replies
+    private final RequestScheduler scheduler;
+    // Writes the replies of requests that joined another's call, so a slow
+    // socket does not hold the worker that finished the call
+    private final Executor replyExecutor;
+
+    private final ActionRegistry registry;
+    private final RequestContext context;
+    private final ConnectionInfo info;
 
-    public ClientHandler(Socket socket, SocketServer server) {
+    public ClientHandler(Socket socket, SocketServer server, RequestScheduler scheduler, Executor replyExecutor) {
         this.socket = socket;
         this.server = server;
+        this.scheduler = scheduler;
+        this.replyExecutor = replyExecutor;
         this.isConnected = true;
 
-        // Initialize services
-        this.userService = new UserService();
-        this.productService = new ProductService();
-        this.customerService = new CustomerService();
-        this.orderService = new OrderService();
-        this.inventoryService = new InventoryService();
+        // Services are shared; nothing is created per connection
+        this.registry = ActionRegistry.getInstance();
+        this.context = new RequestContext(String.valueOf(socket.getInetAddress()));
+        this.info = new ConnectionInfo(context, this::disconnect);
+    }
 
-        try {
-            // Set socket options
-            socket.setKeepAlive(true);
-            socket.setSoTimeout(300000); // 5 minutes timeout
+    public ConnectionInfo getConnectionInfo() {
+        return info;
+    }
 
-            out = new ObjectOutputStream(socket.getOutputStream());
+    private void openStreams() throws IOException {
+        // Set socket options; idle connections are closed by ConnectionRegistry
+        socket.setKeepAlive(true);
+
+        // Done on the handler's own thread: both protocols block until the
+        // client sends its first bytes, which must not stall the accept loop.
+        // Peek at them to tell a framed client (MAGIC) from a legacy one (0xACED stream header).
+        BufferedInputStream input = new BufferedInputStream(new CountingInputStream(socket.getInputStream()));
+        OutputStream output = new CountingOutputStream(socket.getOutputStream());
+        input.mark(4);
+        int magic = new DataInputStream(input).readInt();
+        input.reset();
+
+        if (magic == FrameIO.MAGIC) {
+            frameIn = new DataInputStream(input);
+            frameOut = new DataOutputStream(new BufferedOutputStream(output));
+            frameIn.readInt();
+            byte version = frameIn.readByte();
+            byte codecId = frameIn.readByte();
+            byte capabilities = frameIn.readByte();
+            codec = ConnectionCodec.negotiate(version, codecId, capabilities);
+            FrameIO.writeServerHello(frameOut, codec.getCodec(), codec.getCapabilities());
+            info.setProtocol("framed, codec " + codec.getCodec().getId()
+                    + (codec.getCapabilities() != 0 ? ", deflate" : ""));
+            // Legacy clients take every object as the reply to their last request, so only framed ones get pushes
+            context.setPusher(this::push);
+            context.setPartSender(this::sendPart);
+        } else {
+            out = new ObjectOutputStream(output);
             out.flush();
-            in = new ObjectInputStream(socket.getInputStream());
+            in = new ObjectInputStream(input);
+            info.setProtocol("legacy");
+        }
 
-            logger.info("Client handler initialized for: " + socket.getInetAddress());
-        } catch (IOException e) {
-            logger.error("Error creating streams", e);
-            disconnect();
+        logger.info("Client handler initialized for: " + socket.getInetAddress()
+                + (codec != null ? " (framed, codec " + codec.getCodec().getId()
+                        + ", capabilities " + codec.getCapabilities() + ")" : " (legacy)"));
+    }
+
+    private Request readRequest() throws IOException, ClassNotFoundException {
+        if (codec == null) {
+            return (Request) in.readObject();
         }
+        return codec.decodeRequest(FrameIO.readFrame(frameIn));
     }
 
     @Override
     public void run() {
+        try {
+            openStreams();
+        } catch (IOException e) {
+            logger.error("Error creating streams", e);
+            disconnect();
+            return;
+        }
+
         try {
             while (isConnected && !socket.isClosed()) {
+                // Set once read, so a failure can be answered under the request's correlation id
+                Request decoded = null;
+                boolean started = false;
                 try {
-                    Request request = (Request) in.readObject();
+                    Request request = readRequest();
+                    decoded = request;
 
                     if (request == null) {
                         logger.warn("Received null request");
@@ -64,13 +130,39 @@ public class ClientHandler implements Runnable {
                     }
 
                     logger.info("Received request: " + request.getAction() + " from " + socket.getInetAddress());
+                    if (ConnectionRegistry.getInstance().isDraining()) {
+                        // Not counted as in flight: the drain only waits for accepted requests
+                        sendShuttingDown(request);
+                        continue;
+                    }
+                    info.requestStarted();
+                    started = true;
 
-                    Response response = processRequest(request);
+                    SingleFlight.Call call = registry.startCall(request, context);
+                    if (call != null && !call.isLeader()) {
+                        // Answered by an identical request already in flight
+                        if (request.getCorrelationId() != 0) {
+                            replyWhenDone(call, request);
+                        } else {
+                            sendReply(request, call.getResponse().get());
+                        }
+                        continue;
+                    }
 
-                    synchronized (out) {
-                        out.reset(); // Clear object cache
-                        out.writeObject(response);
-                        out.flush();
+                    ActionClass actionClass = registry.classOf(request);
+                    if (request.getCorrelationId() != 0) {
+                        // Multiplexing client: reply whenever done, possibly out of order
+                        if (!scheduler.submit(actionClass, () -> handleRequest(call, request))) {
+                            reject(call, request, Response.busy("Server đang bận, vui lòng thử lại sau"));
+                        }
+                    } else {
+                        // Legacy client expects replies in order: wait for this one before reading on
+                        FutureTask<Void> task = new FutureTask<>(() -> handleRequest(call, request), null);
+                        if (scheduler.submit(actionClass, task)) {
+                            task.get();
+                        } else {
+                            reject(call, request, Response.busy("Server đang bận, vui lòng thử lại sau"));
+                        }
                     }
 
                 } catch (EOFException e) {
@@ -81,14 +173,24 @@ public class ClientHandler implements Runnable {
                         logger.warn("Socket exception: " + e.getMessage());
                     }
                     break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 } catch (Exception e) {
-                    logger.error("Error processing request", e);
+                    if (decoded == null) {
+                        // No correlation id to answer under, and the stream may be out of step
+                        logger.error("Could not read request from " + socket.getInetAddress() + ", closing connection", e);
+                        break;
+                    }
+                    logger.error("Error processing request " + decoded.getAction(), e);
+                    Response response = Response.error("Server error: " + e.getMessage());
+                    if (started) {
+                        sendReply(decoded, response);
+                        continue;
+                    }
+                    response.setCorrelationId(decoded.getCorrelationId());
                     try {
-                        synchronized (out) {
-                            out.reset();
-                            out.writeObject(Response.error("Server error: " + e.getMessage()));
-                            out.flush();
-                        }
+                        sendResponse(decoded.getAction(), response);
                     } catch (IOException ex) {
                         logger.error("Error sending error response", ex);
                         break;
@@ -100,90 +202,102 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private Response processRequest(Request request) {
-        String action = request.getAction();
+    /**
+     * Replies to a request that joined another's call once that call is done,
+     * from replyExecutor; the request always ends, also if the call failed.
+     */
+    private void replyWhenDone(SingleFlight.Call call, Request request) {
+        call.getResponse().whenComplete((response, error) -> {
+            Response reply = error != null ? Response.error("Server error: " + error.getMessage()) : response;
+            try {
+                replyExecutor.execute(() -> sendReply(request, reply));
+            } catch (RejectedExecutionException e) {
+                // Shutting down: written from here instead
+                sendReply(request, reply);
+            }
+        });
+    }
 
+    private void handleRequest(SingleFlight.Call call, Request request) {
+        Response response = null;
         try {
-            switch (action) {
-                // Authentication
-                case Constants.LOGIN:
-                    return userService.login(request);
-
-                // User Management
-                case Constants.GET_ALL_USERS:
-                    return userService.getAllUsers();
-                case Constants.GET_USER_BY_ID:
-                    return userService.getUserById(request);
-                case Constants.CREATE_USER:
-                    return userService.createUser(request);
-                case Constants.UPDATE_USER:
-                    return userService.updateUser(request);
-                case Constants.DELETE_USER:
-                    return userService.deleteUser(request);
-
-                // Product Management
-                case Constants.GET_ALL_PRODUCTS:
-                    return productService.getAllProducts();
-                case Constants.GET_PRODUCT_BY_ID:
-                    return productService.getProductById(request);
-                case Constants.CREATE_PRODUCT:
-                    return productService.createProduct(request);
-                case Constants.UPDATE_PRODUCT:
-                    return productService.updateProduct(request);
-                case Constants.DELETE_PRODUCT:
-                    return productService.deleteProduct(request);
-                case Constants.SEARCH_PRODUCTS:
-                    return productService.searchProducts(request);
-                case Constants.GET_PRODUCTS_BY_CATEGORY:
-                    return productService.getProductsByCategory(request);
-
-                // Category Management
-                case Constants.GET_ALL_CATEGORIES:
-                    return productService.getAllCategories();
-                case Constants.CREATE_CATEGORY:
-                    return productService.createCategory(request);
-
-                // Customer Management
-                case Constants.GET_ALL_CUSTOMERS:
-                    return customerService.getAllCustomers();
-                case Constants.GET_CUSTOMER_BY_ID:
-                    return customerService.getCustomerById(request);
-                case Constants.CREATE_CUSTOMER:
-                    return customerService.createCustomer(request);
-                case Constants.UPDATE_CUSTOMER:
-                    return customerService.updateCustomer(request);
-                case Constants.DELETE_CUSTOMER:
-                    return customerService.deleteCustomer(request);
-                case Constants.SEARCH_CUSTOMERS:
-                    return customerService.searchCustomers(request);
-
-                // Order Management
-                case Constants.GET_ALL_ORDERS:
-                    return orderService.getAllOrders();
-                case Constants.GET_ORDER_BY_ID:
-                    return orderService.getOrderById(request);
-                case Constants.CREATE_ORDER:
-                    return orderService.createOrder(request);
-                case Constants.UPDATE_ORDER_STATUS:
-                    return orderService.updateOrderStatus(request);
-                case Constants.GET_ORDER_ITEMS:
-                    return orderService.getOrderItems(request);
-
-                // Inventory Management
-                case Constants.GET_ALL_INVENTORY:
-                    return inventoryService.getAllInventory();
-                case Constants.UPDATE_INVENTORY:
-                    return inventoryService.updateInventory(request);
-                case Constants.GET_LOW_STOCK_PRODUCTS:
-                    return inventoryService.getLowStockProducts();
-
-                default:
-                    logger.warn("Unknown action: " + action);
-                    return Response.error("Unknown action: " + action);
+            response = call != null
+                    ? registry.dispatch(call, request, context)
+                    : registry.dispatch(request, context);
+        } finally {
+            // Also when the handler threw an Error: the client is answered and the request ends
+            sendReply(request, response != null ? response : Response.error("Server error"));
+        }
+    }
+
+    /**
+     * Sends the reply and ends the request. Replies shared from another
+     * request's call are sent from the thread that finished that call.
+     */
+    private void sendReply(Request request, Response response) {
+        response.setCorrelationId(request.getCorrelationId());
+        try {
+            sendResponse(request.getAction(), response);
+        } catch (IOException e) {
+            if (isConnected) {
+                logger.warn("Error sending response: " + e.getMessage());
             }
-        } catch (Exception e) {
-            logger.error("Error processing request: " + action, e);
-            return Response.error("Server error: " + e.getMessage());
+            disconnect();
+        } finally {
+            info.requestFinished();
+        }
+    }
+
+    private void reject(SingleFlight.Call call, Request request, Response response) throws IOException {
+        if (call != null) {
+            registry.abandon(call, response);
+        }
+        logger.warn("Rejected " + request.getAction() + " from " + socket.getInetAddress() + ": " + response.getStatus());
+        response.setCorrelationId(request.getCorrelationId());
+        try {
+            sendResponse(request.getAction(), response);
+        } finally {
+            info.requestFinished();
+        }
+    }
+
+    private void sendShuttingDown(Request request) throws IOException {
+        Response response = Response.shuttingDown("Server đang tắt, vui lòng kết nối lại sau");
+        response.setCorrelationId(request.getCorrelationId());
+        sendResponse(request.getAction(), response);
+    }
+
+    private void push(Response message) {
+        try {
+            sendResponse(null, message);
+        } catch (IOException e) {
+            logger.debug("Push failed: " + e.getMessage());
+        }
+    }
+
+    private void sendPart(String action, Response part) {
+        // The socket write blocks while the client is behind, which bounds what a stream holds
+        try {
+            sendResponse(action, part);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void sendResponse(String action, Response response) throws IOException {
+        // Encode and compress before taking the lock so concurrent replies only queue for the socket write
+        FrameIO.Frame frame = codec != null ? codec.encodeResponse(action, response) : null;
+        writeLock.lock();
+        try {
+            if (frame != null) {
+                FrameIO.writeFrame(frameOut, frame.getFlags(), frame.getCorrelationId(), frame.getPayload());
+                return;
+            }
+            out.reset(); // Clear object cache
+            out.writeObject(response);
+            out.flush();
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -204,6 +318,12 @@ public class ClientHandler implements Runnable {
                     out.close();
                 } catch (Exception e) {}
             }
+            if (frameOut != null) {
+                try { frameOut.close(); } catch (Exception e) {}
+            }
+            if (codec != null) {
+                codec.close();
+            }
             if (socket != null && !socket.isClosed()) {
                 try { socket.close(); } catch (Exception e) {}
             }
@@ -219,4 +339,47 @@ public class ClientHandler implements Runnable {
     public boolean isConnected() {
         return isConnected && socket != null && !socket.isClosed();
     }
+
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                info.bytesRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                info.bytesRead(n);
+            }
+            return n;
+        }
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            info.bytesWritten(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream would write byte by byte
+            out.write(b, off, len);
+            info.bytesWritten(len);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.common.FrameIO;
+import iuh.fit.se.common.MessageCodec;
+import iuh.fit.se.common.PayloadCompressor;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.SharedResponse;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.metrics.CompressionStats;
+
+import java.io.IOException;
+
+/**
+ * What one framed connection agreed on in the handshake: the message codec
+ * and, if the client offered it, a compressor for large replies.
+ */
+class ConnectionCodec {
+    private final MessageCodec codec;
+    private final PayloadCompressor compressor;
+
+    private ConnectionCodec(MessageCodec codec, PayloadCompressor compressor) {
+        this.codec = codec;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Server side of the handshake, from the client's hello fields.
+     */
+    static ConnectionCodec negotiate(byte version, byte codecId, byte capabilities) {
+        MessageCodec codec = FrameIO.negotiate(version, codecId);
+        boolean deflate = version == FrameIO.PROTOCOL_VERSION
+                && (capabilities & FrameIO.CAP_DEFLATE) != 0
+                && ServerSettings.isCompressionEnabled();
+        return new ConnectionCodec(codec,
+                deflate ? new PayloadCompressor(ServerSettings.getCompressionThreshold()) : null);
+    }
+
+    MessageCodec getCodec() {
+        return codec;
+    }
+
+    byte getCapabilities() {
+        return compressor != null ? FrameIO.CAP_DEFLATE : 0;
+    }
+
+    Request decodeRequest(FrameIO.Frame frame) throws IOException {
+        byte[] payload = frame.getPayload();
+        if (frame.isCompressed()) {
+            if (compressor == null) {
+                throw new IOException("Compressed frame on a connection without compression");
+            }
+            payload = compressor.decompress(payload);
+        }
+        Request request = (Request) codec.decode(payload);
+        request.setCorrelationId(frame.getCorrelationId());
+        return request;
+    }
+
+    FrameIO.Frame encodeResponse(String action, Response response) throws IOException {
+        if (!(response instanceof SharedResponse)) {
+            return encode(action, response).frame;
+        }
+        // A reply shared by several requests is encoded once per codec and compression setting
+        SharedResponse shared = (SharedResponse) response;
+        int key = codec.getId() << 1 | (compressor != null ? 1 : 0);
+        EncodedReply reply = shared.getEncoded(key);
+        if (reply == null) {
+            reply = encode(action, response);
+            shared.putEncoded(key, reply);
+            return reply.frame;
+        }
+        FrameIO.Frame frame = reply.frame;
+        CompressionStats.record(action, reply.rawLength, frame.getPayload().length, frame.isCompressed(), 0);
+        return new FrameIO.Frame(frame.getFlags(), response.getCorrelationId(), frame.getPayload());
+    }
+
+    private EncodedReply encode(String action, Response response) throws IOException {
+        byte[] payload = codec.encode(response);
+        int rawLength = payload.length;
+        byte flags = 0;
+        long cpu = 0;
+
+        if (compressor != null && compressor.shouldCompress(rawLength)) {
+            long start = CompressionStats.cpuTimeNanos();
+            byte[] compressed = compressor.compress(payload);
+            cpu = CompressionStats.cpuTimeNanos() - start;
+            // Already-compact payloads can grow; send those as they are
+            if (compressed.length < rawLength) {
+                payload = compressed;
+                flags = FrameIO.FLAG_COMPRESSED;
+            }
+        }
+
+        CompressionStats.record(action, rawLength, payload.length, flags != 0, cpu);
+        return new EncodedReply(new FrameIO.Frame(flags, response.getCorrelationId(), payload), rawLength);
+    }
+
+    private static class EncodedReply {
+        private final FrameIO.Frame frame;
+        private final int rawLength;
+
+        EncodedReply(FrameIO.Frame frame, int rawLength) {
+            this.frame = frame;
+            this.rawLength = rawLength;
+        }
+    }
+
+    void close() {
+        if (compressor != null) {
+            compressor.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.RequestContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live state of one client connection, updated by its I/O thread and read
+ * by the idle reaper and GET_SESSIONS without locking.
+ */
+public class ConnectionInfo {
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private final long id = nextId.incrementAndGet();
+    private final RequestContext context;
+    private final long connectedAt = System.currentTimeMillis();
+    private final Runnable closer;
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long lastActivityNanos = System.nanoTime();
+    private volatile String protocol = "-";
+
+    /**
+     * @param closer closes the connection; may be called from any thread
+     */
+    ConnectionInfo(RequestContext context, Runnable closer) {
+        this.context = context;
+        this.closer = closer;
+    }
+
+    public long getId() { return id; }
+    public RequestContext getContext() { return context; }
+    public String getRemoteAddress() { return context.getRemoteAddress(); }
+    public String getUsername() { return context.getUsername(); }
+    public long getConnectedAt() { return connectedAt; }
+    public String getProtocol() { return protocol; }
+    public long getBytesIn() { return bytesIn.sum(); }
+    public long getBytesOut() { return bytesOut.sum(); }
+    public long getRequests() { return requests.sum(); }
+    public int getInFlight() { return inFlight.get(); }
+
+    public long getIdleMillis() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000L;
+    }
+
+    void setProtocol(String protocol) {
+        this.protocol = protocol;
+    }
+
+    void bytesRead(long count) {
+        bytesIn.add(count);
+        lastActivityNanos = System.nanoTime();
+    }
+
+    void bytesWritten(long count) {
+        bytesOut.add(count);
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+        lastActivityNanos = System.nanoTime();
+    }
+
+    void requestFinished() {
+        inFlight.decrementAndGet();
+        requests.increment();
+        lastActivityNanos = System.nanoTime();
+    }
+
+    void push(Response message) {
+        context.push(message);
+    }
+
+    void close() {
+        closer.run();
+    }
+}
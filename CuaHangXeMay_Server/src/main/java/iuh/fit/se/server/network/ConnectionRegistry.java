@@ -0,0 +1,143 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.event.ChangeNotifier;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * All open client connections, for both server modes. Connections are added
+ * by the accept loop and removed by whichever thread closes them; listing
+ * them never blocks either.
+ *
+ * Idle connections are closed by a timing wheel instead of a socket read
+ * timeout. Activity only stamps ConnectionInfo; when a connection's timer
+ * fires it is closed if it has really been idle for the whole timeout,
+ * otherwise it is rescheduled for the remainder.
+ */
+public class ConnectionRegistry {
+    private static final Logger logger = Logger.getLogger(ConnectionRegistry.class);
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+
+    private static volatile ConnectionRegistry instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<Long, ConnectionInfo> connections = new ConcurrentHashMap<>();
+    private final TimingWheel<ConnectionInfo> idleWheel;
+    private volatile boolean draining;
+
+    private ConnectionRegistry() {
+        idleWheel = new TimingWheel<>("idle-reaper", TICK_MILLIS, WHEEL_SIZE, this::checkIdle);
+        idleWheel.start();
+    }
+
+    public static ConnectionRegistry getInstance() {
+        ConnectionRegistry current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = new ConnectionRegistry();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    void register(ConnectionInfo connection) {
+        connections.put(connection.getId(), connection);
+        long timeout = ServerSettings.getIdleTimeoutMillis();
+        if (timeout > 0) {
+            idleWheel.schedule(connection, timeout);
+        }
+    }
+
+    void unregister(ConnectionInfo connection) {
+        if (connections.remove(connection.getId()) != null) {
+            ChangeNotifier.getInstance().unsubscribeAll(connection.getContext());
+        }
+    }
+
+    private void checkIdle(ConnectionInfo connection) {
+        if (!connections.containsKey(connection.getId())) {
+            return;
+        }
+        long timeout = ServerSettings.getIdleTimeoutMillis();
+        if (timeout <= 0) {
+            return;
+        }
+        long idle = connection.getIdleMillis();
+        if (connection.getInFlight() > 0) {
+            idleWheel.schedule(connection, timeout);
+        } else if (idle >= timeout) {
+            logger.info("Closing idle connection " + connection.getId() + " from "
+                    + connection.getRemoteAddress() + " (idle " + idle / 1000 + "s)");
+            connection.close();
+        } else {
+            idleWheel.schedule(connection, timeout - idle);
+        }
+    }
+
+    /**
+     * Tells every client the server is going down; from now on new requests
+     * are answered with SHUTTING_DOWN (see isDraining()).
+     */
+    void beginDrain() {
+        draining = true;
+        for (ConnectionInfo connection : connections.values()) {
+            connection.push(Response.shuttingDown("Server đang tắt, vui lòng kết nối lại sau"));
+        }
+    }
+
+    void endDrain() {
+        draining = false;
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * @return requests received and not yet answered, over all connections
+     */
+    int getInFlight() {
+        int total = 0;
+        for (ConnectionInfo connection : connections.values()) {
+            total += connection.getInFlight();
+        }
+        return total;
+    }
+
+    /**
+     * Closes every open connection, e.g. when the server stops.
+     */
+    void closeAll() {
+        for (ConnectionInfo connection : new ArrayList<>(connections.values())) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return a snapshot of the open connections, oldest first
+     */
+    public List<ConnectionInfo> getConnections() {
+        List<ConnectionInfo> snapshot = new ArrayList<>(connections.values());
+        snapshot.sort(Comparator.comparingLong(ConnectionInfo::getId));
+        return snapshot;
+    }
+
+    public int size() {
+        return connections.size();
+    }
+}
@@ -0,0 +1,11 @@
+package iuh.fit.se.server.network;
+
+/**
+ * Common contract for the server modes selectable from ServerMain.
+ * start() blocks the calling thread until the server is stopped.
+ */
+public interface NetworkServer {
+    void start();
+
+    void stop();
+}
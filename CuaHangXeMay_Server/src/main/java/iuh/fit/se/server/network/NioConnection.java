@@ -0,0 +1,255 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.common.FrameIO;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.RequestContext;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-connection state for the NIO server. Reads and writes only run on the
+ * owning event loop; workers hand finished frames back through send().
+ */
+class NioConnection {
+    private static final Logger logger = Logger.getLogger(NioConnection.class);
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    // Streamed parts wait while more than this is queued for a slow client
+    private static final long MAX_QUEUED_PART_BYTES = 256 * 1024;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final NioSocketServer server;
+    private final RequestContext context;
+    private final ConnectionInfo info;
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final Condition drained = drainLock.newCondition();
+    private volatile boolean partWaiting;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    private SelectionKey key;
+    // Set by the handshake on the event loop; workers see it through dispatch()
+    private ConnectionCodec codec;
+
+    NioConnection(SocketChannel channel, NioEventLoop loop, NioSocketServer server) {
+        this.channel = channel;
+        this.loop = loop;
+        this.server = server;
+        this.context = new RequestContext(String.valueOf(channel.socket().getInetAddress()));
+        // Close on the loop so replies it has already queued are flushed first
+        this.info = new ConnectionInfo(context, () -> loop.execute(this::close));
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    RequestContext getContext() {
+        return context;
+    }
+
+    ConnectionInfo getInfo() {
+        return info;
+    }
+
+    ConnectionCodec getCodec() {
+        return codec;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    void onReadable() throws IOException {
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        info.bytesRead(read);
+
+        readBuffer.flip();
+        if (codec == null && !readHandshake()) {
+            readBuffer.compact();
+            return;
+        }
+
+        int needed = 0;
+        while (readBuffer.remaining() >= FrameIO.HEADER_SIZE) {
+            int length = readBuffer.getInt(readBuffer.position());
+            FrameIO.checkLength(length);
+            if (readBuffer.remaining() < FrameIO.HEADER_SIZE + length) {
+                needed = FrameIO.HEADER_SIZE + length;
+                break;
+            }
+            readBuffer.getInt();
+            byte flags = readBuffer.get();
+            long correlationId = readBuffer.getLong();
+            byte[] payload = new byte[length];
+            readBuffer.get(payload);
+            server.dispatch(this, new FrameIO.Frame(flags, correlationId, payload));
+        }
+
+        if (needed > readBuffer.capacity()) {
+            // Frame larger than the buffer: grow just enough to hold it
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        } else if (!readBuffer.hasRemaining() && readBuffer.capacity() > DEFAULT_BUFFER_SIZE) {
+            // Drop the oversized buffer once the large frame is consumed
+            readBuffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        } else {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * @return false while the client hello is still incomplete
+     */
+    private boolean readHandshake() throws IOException {
+        if (readBuffer.remaining() < FrameIO.CLIENT_HELLO_SIZE) {
+            return false;
+        }
+        if (readBuffer.getInt() != FrameIO.MAGIC) {
+            // Legacy object-stream clients must use the blocking server
+            throw new IOException("Client did not send the framed protocol handshake");
+        }
+        byte version = readBuffer.get();
+        byte codecId = readBuffer.get();
+        byte capabilities = readBuffer.get();
+        codec = ConnectionCodec.negotiate(version, codecId, capabilities);
+        info.setProtocol("framed, codec " + codec.getCodec().getId()
+                + (codec.getCapabilities() != 0 ? ", deflate" : ""));
+        context.setPusher(message -> sendResponse(null, message));
+        context.setPartSender(this::sendPart);
+
+        ByteBuffer hello = ByteBuffer.allocate(FrameIO.SERVER_HELLO_SIZE);
+        hello.putInt(FrameIO.MAGIC);
+        hello.put(codec.getCodec().getId());
+        hello.put(codec.getCapabilities());
+        hello.flip();
+        send(hello);
+        return true;
+    }
+
+    /**
+     * Encodes on the calling thread and queues the frame for the event loop.
+     */
+    void sendResponse(String action, Response response) {
+        try {
+            FrameIO.Frame reply = codec.encodeResponse(action, response);
+            send(FrameIO.toBuffer(reply.getFlags(), reply.getCorrelationId(), reply.getPayload()));
+        } catch (IOException e) {
+            logger.error("Error encoding response", e);
+            close();
+        }
+    }
+
+    /**
+     * Like sendResponse, but waits (on the worker) until the event loop has
+     * written enough of the queue, so a stream to a slow client holds a
+     * bounded amount of memory.
+     */
+    void sendPart(String action, Response part) {
+        sendResponse(action, part);
+        if (queuedBytes.get() <= MAX_QUEUED_PART_BYTES) {
+            return;
+        }
+        drainLock.lock();
+        try {
+            while (queuedBytes.get() > MAX_QUEUED_PART_BYTES && !closed.get()) {
+                partWaiting = true;
+                // Timed: a signal sent between the check and the wait is not lost for long
+                drained.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new InterruptedIOException("Interrupted while streaming"));
+        } finally {
+            partWaiting = false;
+            drainLock.unlock();
+        }
+        if (closed.get()) {
+            throw new UncheckedIOException(new IOException("Connection closed"));
+        }
+    }
+
+    void send(ByteBuffer frame) {
+        if (closed.get()) {
+            return;
+        }
+        queuedBytes.addAndGet(frame.remaining());
+        writeQueue.add(frame);
+        loop.execute(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                logger.info("Write failed: " + e.getMessage());
+                close();
+            }
+        });
+    }
+
+    void flush() throws IOException {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        ByteBuffer buffer;
+        while ((buffer = writeQueue.peek()) != null) {
+            info.bytesWritten(channel.write(buffer));
+            if (buffer.hasRemaining()) {
+                // Socket buffer full: wait for OP_WRITE
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            writeQueue.poll();
+            queuedBytes.addAndGet(-buffer.limit());
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (partWaiting) {
+            drainLock.lock();
+            try {
+                drained.signalAll();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing channel", e);
+        }
+        writeQueue.clear();
+        if (codec != null) {
+            codec.close();
+        }
+        server.removeConnection(this);
+    }
+
+    boolean isConnected() {
+        return !closed.get() && channel.isOpen();
+    }
+}
@@ -0,0 +1,183 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.common.FrameIO;
+import iuh.fit.se.common.Request;
+import iuh.fit.se.common.Response;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.SingleFlight;
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking server mode. A few selector threads do all socket I/O and
+ * framing, and bounded worker pools per action class run the services, so
+ * the thread count does not grow with the number of connected terminals. Requests from one
+ * connection run concurrently and replies go out as soon as each is ready.
+ * Clients must use the framed protocol (see FrameIO); the codec is
+ * negotiated per connection in the handshake.
+ */
+public class NioSocketServer implements NetworkServer {
+    private static final Logger logger = Logger.getLogger(NioSocketServer.class);
+
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
+    private RequestScheduler scheduler;
+    private ActionRegistry registry;
+    private final ConnectionRegistry connections = ConnectionRegistry.getInstance();
+    private volatile boolean isRunning;
+    private int nextLoop;
+
+    @Override
+    public void start() {
+        int port = ServerSettings.getPort();
+        try {
+            eventLoops = new NioEventLoop[Math.max(1, ServerSettings.getIoThreads())];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop("nio-loop-" + i);
+                eventLoops[i].start();
+            }
+            scheduler = new PooledRequestScheduler();
+            registry = ActionRegistry.getInstance();
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            isRunning = true;
+            logger.info("NIO server started on port " + port + " (" + eventLoops.length + " I/O threads)");
+            System.out.println("=================================");
+            System.out.println("Server (NIO) is running on port " + port);
+            System.out.println("Waiting for clients...");
+            System.out.println("=================================");
+
+            // Accept on the calling thread, then hand the channel to an event loop
+            while (isRunning) {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setKeepAlive(true);
+                channel.socket().setTcpNoDelay(true);
+                logger.info("New client connected: " + channel.socket().getInetAddress());
+
+                NioEventLoop loop = eventLoops[nextLoop++ % eventLoops.length];
+                NioConnection connection = new NioConnection(channel, loop, this);
+                connections.register(connection.getInfo());
+                loop.register(connection);
+            }
+        } catch (ClosedChannelException e) {
+            // stop() closed the server channel
+        } catch (IOException e) {
+            if (isRunning) {
+                logger.error("Server error", e);
+            }
+        }
+    }
+
+    /**
+     * Called on the event loop. The request is decoded here so it can be
+     * queued by action class; the service itself runs on a worker.
+     */
+    void dispatch(NioConnection connection, FrameIO.Frame frame) {
+        Request request;
+        try {
+            request = connection.getCodec().decodeRequest(frame);
+        } catch (Exception e) {
+            logger.error("Error decoding request", e);
+            reply(connection, null, frame.getCorrelationId(), Response.error("Server error: " + e.getMessage()));
+            return;
+        }
+
+        String action = request.getAction();
+        logger.info("Received request: " + action);
+        if (connections.isDraining()) {
+            // Not counted as in flight: the drain only waits for accepted requests
+            reply(connection, action, frame.getCorrelationId(),
+                    Response.shuttingDown("Server đang tắt, vui lòng kết nối lại sau"));
+            return;
+        }
+        ConnectionInfo info = connection.getInfo();
+        info.requestStarted();
+        SingleFlight.Call call = registry.startCall(request, connection.getContext());
+        if (call != null && !call.isLeader()) {
+            // Answered by an identical request already in flight
+            // Only queued for the event loop to write, so done on the thread that finished the call
+            call.getResponse().whenComplete((response, error) -> {
+                try {
+                    reply(connection, action, frame.getCorrelationId(),
+                            error != null ? Response.error("Server error: " + error.getMessage()) : response);
+                } finally {
+                    info.requestFinished();
+                }
+            });
+            return;
+        }
+        ActionClass actionClass = registry.classOf(request);
+        boolean accepted = scheduler.submit(actionClass, () -> {
+            Response response = null;
+            try {
+                response = call != null
+                        ? registry.dispatch(call, request, connection.getContext())
+                        : registry.dispatch(request, connection.getContext());
+            } finally {
+                // Also when the handler threw an Error: the client is answered and the request ends
+                try {
+                    reply(connection, action, frame.getCorrelationId(),
+                            response != null ? response : Response.error("Server error"));
+                } finally {
+                    info.requestFinished();
+                }
+            }
+        });
+        if (!accepted) {
+            logger.warn("Rejected " + action + ": server busy");
+            Response busy = Response.busy("Server đang bận, vui lòng thử lại sau");
+            if (call != null) {
+                registry.abandon(call, busy);
+            }
+            reply(connection, action, frame.getCorrelationId(), busy);
+            info.requestFinished();
+        }
+    }
+
+    private void reply(NioConnection connection, String action, long correlationId, Response response) {
+        response.setCorrelationId(correlationId);
+        connection.sendResponse(action, response);
+    }
+
+    void removeConnection(NioConnection connection) {
+        connections.unregister(connection.getInfo());
+        logger.info("Client removed. Total clients: " + connections.size());
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            logger.error("Error closing server channel", e);
+        }
+
+        // Event loops keep running during the drain so replies still go out
+        if (scheduler != null) {
+            ServerDrain.drain(connections, scheduler);
+        }
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                loop.shutdown();
+            }
+        }
+        logger.info("Server stopped");
+        System.out.println("Server stopped");
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
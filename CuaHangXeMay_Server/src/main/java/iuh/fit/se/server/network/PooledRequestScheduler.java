@@ -0,0 +1,73 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.metrics.SchedulerStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One fixed-size pool with a bounded queue per action class.
+ */
+public class PooledRequestScheduler implements RequestScheduler {
+    private final Map<ActionClass, ThreadPoolExecutor> pools = new EnumMap<>(ActionClass.class);
+
+    public PooledRequestScheduler() {
+        for (ActionClass actionClass : ActionClass.values()) {
+            int threads = Math.max(1, ServerSettings.getThreads(actionClass));
+            int queue = Math.max(1, ServerSettings.getQueueCapacity(actionClass));
+            AtomicInteger counter = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queue), task -> {
+                        Thread thread = new Thread(task, "worker-" + actionClass.getKey() + "-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            pools.put(actionClass, pool);
+        }
+    }
+
+    @Override
+    public boolean submit(ActionClass actionClass, Runnable task) {
+        try {
+            pools.get(actionClass).execute(SchedulerStats.track(actionClass, task));
+            SchedulerStats.accepted(actionClass);
+            return true;
+        } catch (RejectedExecutionException e) {
+            SchedulerStats.rejected(actionClass);
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        for (ThreadPoolExecutor pool : pools.values()) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor pool : pools.values()) {
+            if (!pool.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdownNow() {
+        for (ThreadPoolExecutor pool : pools.values()) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.server.action.ActionClass;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs requests on bounded workers per action class, so socket I/O threads
+ * never execute services themselves and one class cannot starve another.
+ */
+public interface RequestScheduler {
+    /**
+     * @return false if the class is at capacity; the caller should answer BUSY
+     */
+    boolean submit(ActionClass actionClass, Runnable task);
+
+    /**
+     * Stops taking requests; queued and running ones still complete.
+     */
+    void shutdown();
+
+    /**
+     * @return false if requests were still running when the timeout elapsed
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Drops queued requests and interrupts running ones.
+     */
+    void shutdownNow();
+}
@@ -0,0 +1,53 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shutdown sequence shared by the server modes, run once the listening
+ * socket is closed: tell clients, refuse new requests, wait for the ones
+ * already received (queued or running) until the drain deadline, then
+ * close every connection. The database is released by the caller after
+ * this returns.
+ */
+final class ServerDrain {
+    private static final Logger logger = Logger.getLogger(ServerDrain.class);
+    private static final long POLL_MILLIS = 50;
+
+    private ServerDrain() {
+    }
+
+    static void drain(ConnectionRegistry connections, RequestScheduler scheduler) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(ServerSettings.getDrainTimeoutSeconds());
+
+        connections.beginDrain();
+        int waiting = connections.getInFlight();
+        logger.info("Draining " + connections.size() + " connections, " + waiting + " requests in flight");
+
+        try {
+            while (connections.getInFlight() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            scheduler.shutdown();
+            scheduler.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int aborted = connections.getInFlight();
+        if (aborted > 0) {
+            logger.warn("Drain deadline passed; aborting " + aborted + " requests");
+            scheduler.shutdownNow();
+        }
+        connections.closeAll();
+        connections.endDrain();
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("Drain finished in " + millis + " ms: " + (waiting - Math.min(waiting, aborted))
+                + " requests completed, " + aborted + " aborted");
+        System.out.println("Drained in " + millis + " ms, " + aborted + " requests aborted");
+    }
+}
@@ -1,37 +1,46 @@
 package iuh.fit.se.server.network;
 
-import iuh.fit.se.common.Constants;
+import iuh.fit.se.server.config.ServerSettings;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-public class SocketServer {
+public class SocketServer implements NetworkServer {
     private static final Logger logger = Logger.getLogger(SocketServer.class);
 
     private ServerSocket serverSocket;
     private ExecutorService threadPool;
-    private List<ClientHandler> clients;
+    private RequestScheduler scheduler;
+    private final ConnectionRegistry connections = ConnectionRegistry.getInstance();
     private boolean isRunning;
 
     public SocketServer() {
-        this.threadPool = Executors.newCachedThreadPool();
-        this.clients = new ArrayList<>();
+        this(Executors.newCachedThreadPool(), new PooledRequestScheduler());
+    }
+
+    /**
+     * @param threadPool runs one ClientHandler (socket reads and writes) per connection
+     * @param scheduler  runs the requests, with a separate capacity per action class
+     */
+    protected SocketServer(ExecutorService threadPool, RequestScheduler scheduler) {
+        this.threadPool = threadPool;
+        this.scheduler = scheduler;
         this.isRunning = false;
     }
 
+    @Override
     public void start() {
+        int port = ServerSettings.getPort();
         try {
-            serverSocket = new ServerSocket(Constants.SERVER_PORT);
+            serverSocket = new ServerSocket(port);
             isRunning = true;
-            logger.info("Server started on port " + Constants.SERVER_PORT);
+            logger.info("Server started on port " + port);
             System.out.println("=================================");
-            System.out.println("Server is running on port " + Constants.SERVER_PORT);
+            System.out.println("Server is running on port " + port);
             System.out.println("Waiting for clients...");
             System.out.println("=================================");
 
@@ -40,8 +49,8 @@ public class SocketServer {
                 logger.info("New client connected: " + clientSocket.getInetAddress());
                 System.out.println("Client connected: " + clientSocket.getInetAddress());
 
-                ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-                clients.add(clientHandler);
+                ClientHandler clientHandler = new ClientHandler(clientSocket, this, scheduler, threadPool);
+                connections.register(clientHandler.getConnectionInfo());
                 threadPool.execute(clientHandler);
             }
         } catch (IOException e) {
@@ -51,18 +60,14 @@ public class SocketServer {
         }
     }
 
+    @Override
     public void stop() {
         isRunning = false;
         try {
-            for (ClientHandler client : clients) {
-                client.disconnect();
-            }
-            clients.clear();
-
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-
+            ServerDrain.drain(connections, scheduler);
             threadPool.shutdown();
             logger.info("Server stopped");
             System.out.println("Server stopped");
@@ -72,11 +77,11 @@ public class SocketServer {
     }
 
     public void removeClient(ClientHandler client) {
-        clients.remove(client);
-        logger.info("Client removed. Total clients: " + clients.size());
+        connections.unregister(client.getConnectionInfo());
+        logger.info("Client removed. Total clients: " + connections.size());
     }
 
-    public List<ClientHandler> getClients() {
-        return clients;
+    public int getConnectionCount() {
+        return connections.size();
     }
 }
@@ -0,0 +1,111 @@
+package iuh.fit.se.server.network;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: one bucket per tick, so scheduling is a queue add
+ * and each tick only looks at the entries due in that bucket. Deadlines
+ * longer than one turn of the wheel wait in their bucket for later rounds.
+ * Precision is one tick; an entry scheduled while its bucket is being
+ * drained fires one turn late, which is fine for idle checks.
+ */
+class TimingWheel<T> implements Runnable {
+    private static final Logger logger = Logger.getLogger(TimingWheel.class);
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadlineTick;
+
+        private Entry(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMillis;
+    private final List<Queue<Entry<T>>> buckets;
+    private final int mask;
+    private final Consumer<T> onExpire;
+    private final Thread thread;
+    private volatile long currentTick;
+    private volatile boolean isRunning;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     * @param onExpire  runs on the wheel thread; must not block
+     */
+    TimingWheel(String name, long tickMillis, int wheelSize, Consumer<T> onExpire) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        this.mask = size - 1;
+        this.onExpire = onExpire;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        isRunning = true;
+        thread.start();
+    }
+
+    void stop() {
+        isRunning = false;
+        thread.interrupt();
+    }
+
+    void schedule(T item, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        long deadline = currentTick + ticks;
+        buckets.get((int) (deadline & mask)).add(new Entry<>(item, deadline));
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        while (isRunning) {
+            long next = start + (currentTick + 1) * tickMillis * 1_000_000L;
+            long sleep = (next - System.nanoTime()) / 1_000_000L;
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            long tick = currentTick + 1;
+            currentTick = tick;
+            expire(tick);
+        }
+    }
+
+    private void expire(long tick) {
+        // Drain first: entries for later rounds go back into the same bucket
+        Queue<Entry<T>> bucket = buckets.get((int) (tick & mask));
+        List<Entry<T>> due = new ArrayList<>();
+        Entry<T> entry;
+        while ((entry = bucket.poll()) != null) {
+            due.add(entry);
+        }
+        for (Entry<T> e : due) {
+            if (e.deadlineTick > tick) {
+                bucket.add(e);
+                continue;
+            }
+            try {
+                onExpire.accept(e.item);
+            } catch (RuntimeException ex) {
+                logger.error("Timer task failed", ex);
+            }
+        }
+    }
+}
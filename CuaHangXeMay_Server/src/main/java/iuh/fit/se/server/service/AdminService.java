@@ -0,0 +1,237 @@
+package iuh.fit.se.server.service;
+
+import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.Access;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.database.ConnectionPool;
+import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.stock.StockEngine;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.limit.RateLimiter;
+import iuh.fit.se.server.metrics.CompressionStats;
+import iuh.fit.se.server.metrics.SchedulerStats;
+import iuh.fit.se.server.network.ConnectionInfo;
+import iuh.fit.se.server.network.ConnectionRegistry;
+import iuh.fit.se.server.session.SessionStore;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Server-side diagnostics; needs no database.
+ */
+public class AdminService {
+    private final ActionRegistry registry;
+
+    public AdminService(ActionRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.PING, ActionClass.INTERACTIVE_READ, Access.PUBLIC,
+                (request, context) -> ping());
+        registry.register(Constants.GET_SERVER_STATS, ActionClass.INTERACTIVE_READ, Access.ADMIN,
+                (request, context) -> getServerStats());
+        registry.register(Constants.GET_SESSIONS, ActionClass.INTERACTIVE_READ, Access.ADMIN,
+                (request, context) -> getSessions());
+    }
+
+    /**
+     * Health check for client-side load balancing; answered while the node
+     * accepts requests, refused with SHUTTING_DOWN once it drains.
+     */
+    public Response ping() {
+        Map<String, Object> node = new HashMap<>();
+        node.put("port", ServerSettings.getPort());
+        node.put("mode", ServerSettings.getMode());
+        node.put("time", System.currentTimeMillis());
+        return Response.success("OK", node);
+    }
+
+    public Response getServerStats() {
+        List<Map<String, Object>> actions = new ArrayList<>();
+        for (ActionRegistry.Action action : registry.getActions()) {
+            long calls = action.getCalls();
+            Map<String, Object> item = new HashMap<>();
+            item.put("action", action.getName());
+            item.put("opcode", action.getOpcode());
+            item.put("class", action.getActionClass().name());
+            item.put("calls", calls);
+            item.put("errors", action.getErrors());
+            item.put("avgMicros", calls == 0 ? 0.0 : action.getTotalNanos() / 1e3 / calls);
+            if (action.isCoalescing()) {
+                // Joined requests are not in calls: they never ran
+                long coalesced = action.getCoalesced();
+                item.put("coalesced", coalesced);
+                item.put("coalesceRate", calls + coalesced == 0 ? 0.0 : (double) coalesced / (calls + coalesced));
+                item.put("reusedPayloads", action.getReusedPayloads());
+            }
+            actions.add(item);
+        }
+
+        List<Map<String, Object>> compression = new ArrayList<>();
+        for (Map.Entry<String, CompressionStats.ActionStats> entry : CompressionStats.getStats().entrySet()) {
+            CompressionStats.ActionStats s = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("action", entry.getKey());
+            item.put("responses", s.getResponses());
+            item.put("compressedResponses", s.getCompressedResponses());
+            item.put("rawBytes", s.getRawBytes());
+            item.put("wireBytes", s.getWireBytes());
+            item.put("ratio", s.getRatio());
+            item.put("cpuMillis", s.getCpuNanos() / 1e6);
+            compression.add(item);
+        }
+
+        List<Map<String, Object>> scheduling = new ArrayList<>();
+        for (ActionClass actionClass : ActionClass.values()) {
+            SchedulerStats.ClassStats s = SchedulerStats.get(actionClass);
+            Map<String, Object> item = new HashMap<>();
+            item.put("class", actionClass.name());
+            item.put("accepted", s.getAccepted());
+            item.put("rejected", s.getRejected());
+            item.put("queued", s.getQueued());
+            item.put("running", s.getRunning());
+            item.put("avgQueueMillis", s.getAverageQueueMillis());
+            scheduling.add(item);
+        }
+
+        RateLimiter limiter = RateLimiter.getInstance();
+        List<Map<String, Object>> limits = new ArrayList<>();
+        for (ActionClass actionClass : ActionClass.values()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("class", actionClass.name());
+            item.put("perSecond", ServerSettings.getRateLimit(actionClass));
+            item.put("burst", ServerSettings.getRateBurst(actionClass));
+            item.put("rejected", limiter.getRejected(actionClass));
+            limits.add(item);
+        }
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (RateLimiter.Client client : limiter.getClients()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("client", client.getLabel());
+            for (ActionClass actionClass : ActionClass.values()) {
+                item.put(actionClass.getKey() + "Tokens", client.getTokens(actionClass));
+            }
+            buckets.add(item);
+        }
+        Map<String, Object> rateLimits = new HashMap<>();
+        rateLimits.put("limits", limits);
+        rateLimits.put("buckets", buckets);
+
+        ChangeNotifier notifier = ChangeNotifier.getInstance();
+        Map<String, Object> events = new HashMap<>();
+        events.put("published", notifier.getPublished());
+        events.put("pushed", notifier.getPushed());
+        for (String topic : new String[]{Constants.TOPIC_PRODUCTS, Constants.TOPIC_INVENTORY,
+                Constants.TOPIC_ORDERS, Constants.TOPIC_CUSTOMERS}) {
+            events.put(topic + "Subscribers", notifier.getSubscriberCount(topic));
+        }
+
+        DatabaseManager db = DatabaseManager.getInstance();
+        ConnectionPool pool = db.getPool();
+        Map<String, Object> database = new HashMap<>();
+        database.put("maxSize", pool.getMaxSize());
+        database.put("active", pool.getActive());
+        database.put("idle", pool.getIdle());
+        database.put("borrows", pool.getBorrows());
+        database.put("avgWaitMillis", pool.getAverageWaitMillis());
+        database.put("maxWaitMillis", pool.getMaxWaitMillis());
+        database.put("timeouts", pool.getTimeouts());
+        database.put("created", pool.getCreated());
+        database.put("retired", pool.getRetired());
+        database.put("leaks", pool.getLeaks());
+        List<Map<String, Object>> statements = new ArrayList<>();
+        long statementRequests = 0;
+        long statementHits = 0;
+        for (ConnectionPool.StatementStats s : pool.getStatementStats()) {
+            statementRequests += s.getRequests();
+            statementHits += s.getHits();
+            if (statements.size() >= 20) {
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("sql", s.getSql());
+            item.put("requests", s.getRequests());
+            item.put("prepares", s.getPrepares());
+            item.put("hitRatio", s.getHitRatio());
+            statements.add(item);
+        }
+        database.put("statementRequests", statementRequests);
+        database.put("statementPrepares", statementRequests - statementHits);
+        database.put("statementHitRatio", statementRequests == 0 ? 0.0 : (double) statementHits / statementRequests);
+        database.put("statements", statements);
+        // Most total time first
+        List<Map<String, Object>> queries = new ArrayList<>();
+        for (Query.Timing t : Query.getTimings()) {
+            if (queries.size() >= 20) {
+                break;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("sql", t.getSql());
+            item.put("executions", t.getExecutions());
+            item.put("avgMillis", t.getExecutions() == 0 ? 0.0 : t.getTotalNanos() / 1e6 / t.getExecutions());
+            item.put("maxMillis", t.getMaxNanos() / 1e6);
+            item.put("rows", t.getRows());
+            queries.add(item);
+        }
+        database.put("queries", queries);
+        ConnectionPool replicaPool = db.getReplicaPool();
+        if (replicaPool != null) {
+            Map<String, Object> replica = new HashMap<>();
+            replica.put("lagMillis", db.getReplicaLagMillis());
+            replica.put("replicaRoutes", db.getReplicaRoutes());
+            replica.put("primaryRoutes", db.getPrimaryRoutes());
+            replica.put("lagFallbacks", db.getLagFallbacks());
+            replica.put("ownWriteFallbacks", db.getOwnWriteFallbacks());
+            replica.put("active", replicaPool.getActive());
+            replica.put("borrows", replicaPool.getBorrows());
+            replica.put("timeouts", replicaPool.getTimeouts());
+            database.put("replica", replica);
+        }
+
+        StockEngine stockEngine = StockEngine.getInstance();
+        Map<String, Object> stock = new HashMap<>();
+        stock.put("trackedProducts", stockEngine.getTrackedProducts());
+        stock.put("reserved", stockEngine.getReserved());
+        stock.put("rejected", stockEngine.getRejected());
+        stock.put("released", stockEngine.getReleased());
+        stock.put("persistFailures", stockEngine.getPersistFailures());
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("actions", actions);
+        stats.put("stock", stock);
+        stats.put("database", database);
+        stats.put("events", events);
+        stats.put("loggedInSessions", SessionStore.getInstance().size());
+        stats.put("scheduling", scheduling);
+        stats.put("rateLimits", rateLimits);
+        stats.put("compression", compression);
+        return Response.success("Lấy thống kê server thành công", stats);
+    }
+
+    public Response getSessions() {
+        List<Map<String, Object>> sessions = new ArrayList<>();
+        for (ConnectionInfo connection : ConnectionRegistry.getInstance().getConnections()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", connection.getId());
+            item.put("remoteAddress", connection.getRemoteAddress());
+            item.put("username", connection.getUsername());
+            item.put("protocol", connection.getProtocol());
+            item.put("connectedAt", new Timestamp(connection.getConnectedAt()));
+            item.put("idleSeconds", connection.getIdleMillis() / 1000);
+            item.put("bytesIn", connection.getBytesIn());
+            item.put("bytesOut", connection.getBytesOut());
+            item.put("requests", connection.getRequests());
+            item.put("inFlight", connection.getInFlight());
+            sessions.add(item);
+        }
+        return Response.success("Lấy danh sách phiên kết nối thành công", sessions);
+    }
+}
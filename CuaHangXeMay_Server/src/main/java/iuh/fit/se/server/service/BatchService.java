@@ -0,0 +1,103 @@
+package iuh.fit.se.server.service;
+
+import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.config.ServerSettings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sub-requests of a BATCH in one round trip. Consecutive reads run
+ * in parallel; a write waits for everything before it and runs alone, so the
+ * results are the same as sending the requests one after another. Replies
+ * come back as a list in request order.
+ * <p>
+ * The parallel reads share a pool with a bounded queue. When it is full, a
+ * batch runs its next read on its own worker, so batches slow down instead of
+ * queueing without limit; the batch itself was admitted by the scheduler.
+ */
+public class BatchService {
+    public static final int MAX_REQUESTS = 50;
+
+    private final ActionRegistry registry;
+    private final ExecutorService executor;
+
+    public BatchService(ActionRegistry registry) {
+        this.registry = registry;
+        int threads = Math.max(1, ServerSettings.getBatchThreads());
+        int queue = Math.max(1, ServerSettings.getBatchQueueCapacity());
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queue), task -> {
+                    Thread thread = new Thread(task, "batch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public void registerActions(ActionRegistry registry) {
+        // Queued by its heaviest sub-request, see ActionRegistry.classOf(Request)
+        registry.register(Constants.BATCH, ActionClass.INTERACTIVE_READ,
+                this::executeBatch);
+    }
+
+    public Response executeBatch(Request request, RequestContext context) {
+        Object value = request.getData("requests");
+        if (!(value instanceof List)) {
+            return Response.error("Thiếu danh sách yêu cầu");
+        }
+        List<?> requests = (List<?>) value;
+        if (requests.size() > MAX_REQUESTS) {
+            return Response.error("Batch tối đa " + MAX_REQUESTS + " yêu cầu");
+        }
+
+        Response[] responses = new Response[requests.size()];
+        List<CompletableFuture<Void>> running = new ArrayList<>();
+        for (int i = 0; i < responses.length; i++) {
+            Object item = requests.get(i);
+            if (!(item instanceof Request)) {
+                responses[i] = Response.error("Yêu cầu không hợp lệ");
+                continue;
+            }
+            Request sub = (Request) item;
+            if (Constants.BATCH.equals(sub.getAction())) {
+                responses[i] = Response.error("Không hỗ trợ batch lồng nhau");
+                continue;
+            }
+            if (sub.getToken() == null) {
+                sub.setToken(request.getToken());
+            }
+
+            if (registry.classOf(sub.getAction()) == ActionClass.TRANSACTIONAL_WRITE) {
+                awaitAll(running);
+                responses[i] = registry.dispatch(sub, context);
+            } else {
+                int index = i;
+                running.add(CompletableFuture.runAsync(
+                        () -> responses[index] = registry.dispatch(sub, context), executor));
+            }
+        }
+        awaitAll(running);
+
+        return Response.success("Thực hiện batch thành công", new ArrayList<>(Arrays.asList(responses)));
+    }
+
+    private void awaitAll(List<CompletableFuture<Void>> running) {
+        for (CompletableFuture<Void> future : running) {
+            future.join();
+        }
+        running.clear();
+    }
+}
@@ -1,30 +1,57 @@
 package iuh.fit.se.server.service;
 
 import iuh.fit.se.common.*;
-import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.ResultStream;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+import iuh.fit.se.server.event.ChangeNotifier;
 import org.apache.log4j.Logger;
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.SQLException;
 import java.util.List;
 
+// Stateless and shared by all connections; a connection is borrowed from the pool per query
 public class CustomerService {
     private static final Logger logger = Logger.getLogger(CustomerService.class);
-    private Connection connection;
-
-    public CustomerService() {
-        this.connection = DatabaseManager.getInstance().getConnection();
+    private static final RowMapper<Customer> CUSTOMER = RowMapper.of(Customer::new)
+            .intColumn("id", Customer::setId)
+            .stringColumn("full_name", Customer::setFullName)
+            .stringColumn("email", Customer::setEmail)
+            .stringColumn("phone", Customer::setPhone)
+            .stringColumn("address", Customer::setAddress)
+            .stringColumn("city", Customer::setCity)
+            .stringColumn("district", Customer::setDistrict)
+            .intColumn("loyalty_points", Customer::setLoyaltyPoints)
+            .decimalColumn("total_spent", Customer::setTotalSpent)
+            .timestampColumn("created_at", Customer::setCreatedAt)
+            .timestampColumn("updated_at", Customer::setUpdatedAt);
+    private final ChangeNotifier notifier = ChangeNotifier.getInstance();
+
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.GET_ALL_CUSTOMERS, ActionClass.BULK_READ,
+                (request, context) -> getAllCustomers(request, context));
+        registry.register(Constants.GET_CUSTOMER_BY_ID, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getCustomerById(request));
+        registry.register(Constants.CREATE_CUSTOMER, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> createCustomer(request));
+        registry.register(Constants.UPDATE_CUSTOMER, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> updateCustomer(request));
+        registry.register(Constants.DELETE_CUSTOMER, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> deleteCustomer(request));
+        registry.register(Constants.SEARCH_CUSTOMERS, ActionClass.INTERACTIVE_READ,
+                (request, context) -> searchCustomers(request));
+        registry.coalesce(Constants.GET_ALL_CUSTOMERS, Constants.GET_CUSTOMER_BY_ID, Constants.SEARCH_CUSTOMERS);
     }
 
-    public Response getAllCustomers() {
-        String sql = "SELECT * FROM customers ORDER BY id DESC";
-        List<Customer> customers = new ArrayList<>();
+    public Response getAllCustomers(Request request, RequestContext context) {
+        ResultStream<Customer> customers = new ResultStream<>(request, context);
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                customers.add(extractCustomer(rs));
-            }
-            return Response.success("Lấy danh sách khách hàng thành công", customers);
+        try {
+            customers.query("SELECT * FROM customers", "id")
+                    .forEach(CUSTOMER, customer -> customers.add(customer.getId(), customer));
+            return customers.finish("Lấy danh sách khách hàng thành công");
         } catch (SQLException e) {
             logger.error("Error getting customers", e);
             return Response.error("Lỗi: " + e.getMessage());
@@ -33,13 +60,11 @@ public class CustomerService {
 
     public Response getCustomerById(Request request) {
         int id = (int) request.getData("id");
-        String sql = "SELECT * FROM customers WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return Response.success("Lấy thông tin khách hàng thành công", extractCustomer(rs));
+        try {
+            Customer customer = findCustomer(id);
+            if (customer != null) {
+                return Response.success("Lấy thông tin khách hàng thành công", customer);
             } else {
                 return Response.notFound("Không tìm thấy khách hàng");
             }
@@ -49,22 +74,32 @@ public class CustomerService {
         }
     }
 
+    private Customer findCustomer(int id) throws SQLException {
+        return Query.sql("SELECT * FROM customers WHERE id = ?").params(id).first(CUSTOMER);
+    }
+
+    /**
+     * Sends subscribers the customer as stored, including points and total spent.
+     */
+    private void publishCustomer(String op, int id) {
+        try {
+            notifier.publish(Constants.TOPIC_CUSTOMERS, op, id, findCustomer(id));
+        } catch (SQLException e) {
+            logger.warn("Could not load customer " + id + " for change event", e);
+            notifier.publish(Constants.TOPIC_CUSTOMERS, op, id, null);
+        }
+    }
+
     public Response createCustomer(Request request) {
         Customer customer = (Customer) request.getData("customer");
         String sql = "INSERT INTO customers (full_name, email, phone, address, city, district) VALUES (?, ?, ?, ?, ?, ?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, customer.getFullName());
-            stmt.setString(2, customer.getEmail());
-            stmt.setString(3, customer.getPhone());
-            stmt.setString(4, customer.getAddress());
-            stmt.setString(5, customer.getCity());
-            stmt.setString(6, customer.getDistrict());
-
-            int affected = stmt.executeUpdate();
-            if (affected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) customer.setId(rs.getInt(1));
+        try {
+            int id = Query.sql(sql).params(customer.getFullName(), customer.getEmail(), customer.getPhone(),
+                    customer.getAddress(), customer.getCity(), customer.getDistrict()).insert();
+            if (id > 0) {
+                customer.setId(id);
+                publishCustomer(Constants.EVENT_CREATED, customer.getId());
                 return Response.success("Tạo khách hàng thành công", customer);
             }
             return Response.error("Không thể tạo khách hàng");
@@ -78,17 +113,11 @@ public class CustomerService {
         Customer customer = (Customer) request.getData("customer");
         String sql = "UPDATE customers SET full_name=?, email=?, phone=?, address=?, city=?, district=? WHERE id=?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, customer.getFullName());
-            stmt.setString(2, customer.getEmail());
-            stmt.setString(3, customer.getPhone());
-            stmt.setString(4, customer.getAddress());
-            stmt.setString(5, customer.getCity());
-            stmt.setString(6, customer.getDistrict());
-            stmt.setInt(7, customer.getId());
-
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(customer.getFullName(), customer.getEmail(), customer.getPhone(),
+                    customer.getAddress(), customer.getCity(), customer.getDistrict(), customer.getId()).update();
             if (affected > 0) {
+                publishCustomer(Constants.EVENT_UPDATED, customer.getId());
                 return Response.success("Cập nhật khách hàng thành công", customer);
             }
             return Response.error("Không thể cập nhật khách hàng");
@@ -102,10 +131,10 @@ public class CustomerService {
         int id = (int) request.getData("id");
         String sql = "DELETE FROM customers WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(id).update();
             if (affected > 0) {
+                notifier.publish(Constants.TOPIC_CUSTOMERS, Constants.EVENT_DELETED, id, null);
                 return Response.success("Xóa khách hàng thành công", null);
             }
             return Response.error("Không thể xóa khách hàng");
@@ -118,36 +147,14 @@ public class CustomerService {
     public Response searchCustomers(Request request) {
         String keyword = (String) request.getData("keyword");
         String sql = "SELECT * FROM customers WHERE full_name LIKE ? OR phone LIKE ?";
-        List<Customer> customers = new ArrayList<>();
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try {
             String search = "%" + keyword + "%";
-            stmt.setString(1, search);
-            stmt.setString(2, search);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                customers.add(extractCustomer(rs));
-            }
+            List<Customer> customers = Query.sql(sql).params(search, search).list(CUSTOMER);
             return Response.success("Tìm kiếm thành công", customers);
         } catch (SQLException e) {
             logger.error("Error searching customers", e);
             return Response.error("Lỗi: " + e.getMessage());
         }
     }
-
-    private Customer extractCustomer(ResultSet rs) throws SQLException {
-        Customer c = new Customer();
-        c.setId(rs.getInt("id"));
-        c.setFullName(rs.getString("full_name"));
-        c.setEmail(rs.getString("email"));
-        c.setPhone(rs.getString("phone"));
-        c.setAddress(rs.getString("address"));
-        c.setCity(rs.getString("city"));
-        c.setDistrict(rs.getString("district"));
-        c.setLoyaltyPoints(rs.getInt("loyalty_points"));
-        c.setTotalSpent(rs.getBigDecimal("total_spent"));
-        c.setCreatedAt(rs.getTimestamp("created_at"));
-        c.setUpdatedAt(rs.getTimestamp("updated_at"));
-        return c;
-    }
 }
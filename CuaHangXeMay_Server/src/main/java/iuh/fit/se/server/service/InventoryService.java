@@ -1,44 +1,68 @@
 package iuh.fit.se.server.service;
 
 import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.ResultStream;
 import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.stock.StockEngine;
 import org.apache.log4j.Logger;
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class InventoryService {
     private static final Logger logger = Logger.getLogger(InventoryService.class);
-    private Connection connection;
+    // Inventory with "p.name, p.brand, p.model" joined in
+    private static final RowMapper<Map<String, Object>> INVENTORY_ROW = RowMapper.<Map<String, Object>>of(HashMap::new)
+            .intColumn("id", (row, value) -> row.put("id", value))
+            .intColumn("product_id", (row, value) -> row.put("productId", value))
+            .stringColumn("name", (row, value) -> row.put("productName", value))
+            .stringColumn("brand", (row, value) -> row.put("brand", value))
+            .stringColumn("model", (row, value) -> row.put("model", value))
+            .intColumn("quantity_in", (row, value) -> row.put("quantityIn", value))
+            .intColumn("quantity_out", (row, value) -> row.put("quantityOut", value))
+            .intColumn("quantity_current", (row, value) -> row.put("quantityCurrent", value))
+            .timestampColumn("last_updated", (row, value) -> row.put("lastUpdated", value));
+    private static final RowMapper<Map<String, Object>> LOW_STOCK = RowMapper.<Map<String, Object>>of(HashMap::new)
+            .intColumn("id", (row, value) -> row.put("id", value))
+            .stringColumn("name", (row, value) -> row.put("name", value))
+            .stringColumn("brand", (row, value) -> row.put("brand", value))
+            .stringColumn("model", (row, value) -> row.put("model", value))
+            .intColumn("quantity_current", (row, value) -> row.put("quantityCurrent", value));
+    // Stateless and shared by all connections; a connection is borrowed from the pool per call
+    private final DatabaseManager db;
+    private final ChangeNotifier notifier = ChangeNotifier.getInstance();
+    private final StockEngine stock = StockEngine.getInstance();
 
     public InventoryService() {
-        this.connection = DatabaseManager.getInstance().getConnection();
+        this.db = DatabaseManager.getInstance();
     }
 
-    public Response getAllInventory() {
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.GET_ALL_INVENTORY, ActionClass.BULK_READ,
+                (request, context) -> getAllInventory(request, context));
+        registry.register(Constants.UPDATE_INVENTORY, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> updateInventory(request));
+        registry.register(Constants.GET_LOW_STOCK_PRODUCTS, ActionClass.BULK_READ,
+                (request, context) -> getLowStockProducts());
+        registry.coalesce(Constants.GET_ALL_INVENTORY, Constants.GET_LOW_STOCK_PRODUCTS);
+    }
+
+    public Response getAllInventory(Request request, RequestContext context) {
         String sql = "SELECT i.*, p.name, p.brand, p.model FROM inventory i " +
-                "LEFT JOIN products p ON i.product_id = p.id " +
-                "ORDER BY i.id DESC";
-        List<Map<String, Object>> inventory = new ArrayList<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Map<String, Object> item = new HashMap<>();
-                item.put("id", rs.getInt("id"));
-                item.put("productId", rs.getInt("product_id"));
-                item.put("productName", rs.getString("name"));
-                item.put("brand", rs.getString("brand"));
-                item.put("model", rs.getString("model"));
-                item.put("quantityIn", rs.getInt("quantity_in"));
-                item.put("quantityOut", rs.getInt("quantity_out"));
-                item.put("quantityCurrent", rs.getInt("quantity_current"));
-                item.put("lastUpdated", rs.getTimestamp("last_updated"));
-                inventory.add(item);
-            }
-            return Response.success("Lấy tồn kho thành công", inventory);
+                "LEFT JOIN products p ON i.product_id = p.id";
+        ResultStream<Map<String, Object>> inventory = new ResultStream<>(request, context);
+
+        try {
+            inventory.query(sql, "i.id").forEach(INVENTORY_ROW, row -> inventory.add((int) row.get("id"), row));
+            return inventory.finish("Lấy tồn kho thành công");
         } catch (SQLException e) {
             logger.error("Error getting inventory", e);
             return Response.error("Lỗi: " + e.getMessage());
@@ -49,70 +73,122 @@ public class InventoryService {
         int productId = (int) request.getData("productId");
         int quantityChange = (int) request.getData("quantityChange");
         String type = (String) request.getData("type"); // "IN" or "OUT"
+        if (quantityChange <= 0) {
+            return Response.error("Số lượng phải lớn hơn 0");
+        }
+        if ("OUT".equals(type)) {
+            return takeOut(productId, quantityChange);
+        }
+        if (!"IN".equals(type)) {
+            return Response.error("Loại cập nhật tồn kho không hợp lệ: " + type);
+        }
 
-        try {
+        // The pool restores auto-commit when the connection is returned; queries run
+        // on this thread until then use the same connection, so they are part of the transaction
+        try (Connection connection = db.getConnection()) {
             connection.setAutoCommit(false);
+            try {
+                String sql = "UPDATE inventory SET quantity_in = quantity_in + ?, quantity_current = quantity_current + ? WHERE product_id = ?";
+                Query inQuery = Query.sql(sql).params(quantityChange, quantityChange, productId);
+                if (inQuery.update() == 0) {
+                    // No inventory row yet: create it from products.quantity as a sale would
+                    stock.createMissingInventory(connection, productId);
+                    if (inQuery.update() == 0) {
+                        connection.rollback();
+                        return Response.notFound("Không tìm thấy sản phẩm");
+                    }
+                }
 
-            String sql;
-            if ("IN".equals(type)) {
-                sql = "UPDATE inventory SET quantity_in = quantity_in + ?, quantity_current = quantity_current + ? WHERE product_id = ?";
-            } else {
-                sql = "UPDATE inventory SET quantity_out = quantity_out + ?, quantity_current = quantity_current - ? WHERE product_id = ?";
-            }
-
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setInt(1, quantityChange);
-                stmt.setInt(2, quantityChange);
-                stmt.setInt(3, productId);
-                stmt.executeUpdate();
-            }
+                // Update product quantity
+                String productSql = "UPDATE products SET quantity = (SELECT quantity_current FROM inventory WHERE product_id = ?) WHERE id = ?";
+                Query.sql(productSql).params(productId, productId).update();
 
-            // Update product quantity
-            String productSql = "UPDATE products SET quantity = (SELECT quantity_current FROM inventory WHERE product_id = ?) WHERE id = ?";
-            try (PreparedStatement stmt = connection.prepareStatement(productSql)) {
-                stmt.setInt(1, productId);
-                stmt.setInt(2, productId);
-                stmt.executeUpdate();
+                connection.commit();
+                // Reloaded with the new units on the next sale
+                stock.invalidate(productId);
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    logger.error("Error rolling back", ex);
+                }
+                throw e;
             }
 
-            connection.commit();
+            publishInventory(productId);
+            notifier.publish(Constants.TOPIC_PRODUCTS, Constants.EVENT_UPDATED, productId, null);
             return Response.success("Cập nhật tồn kho thành công", null);
 
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                logger.error("Error rolling back", ex);
+            logger.error("Error updating inventory", e);
+            return Response.error("Lỗi: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stock going out other than by an order (damage, transfer): taken like a
+     * sale, so it cannot go below zero either.
+     */
+    private Response takeOut(int productId, int quantity) {
+        Map<Integer, Integer> units = Map.of(productId, quantity);
+        StockEngine.Reservation reservation;
+        try {
+            reservation = stock.reserve(units);
+            if (!reservation.isReserved()) {
+                return Response.error("Không đủ số lượng trong kho");
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading stock", e);
+            return Response.error("Lỗi: " + e.getMessage());
+        }
+        boolean settled = false;
+        try (Connection connection = db.getConnection()) {
+            if (!stock.persist(connection, units)) {
+                stock.invalidate(productId);
+                settled = true;
+                return Response.error("Không đủ số lượng trong kho, vui lòng thử lại");
             }
+            settled = true;
+            publishInventory(productId);
+            notifier.publish(Constants.TOPIC_PRODUCTS, Constants.EVENT_UPDATED, productId, null);
+            return Response.success("Cập nhật tồn kho thành công", null);
+        } catch (SQLException e) {
             logger.error("Error updating inventory", e);
             return Response.error("Lỗi: " + e.getMessage());
         } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException e) {
-                logger.error("Error setting auto commit", e);
+            if (!settled) {
+                stock.release(reservation);
             }
         }
     }
 
+    /**
+     * Sends subscribers the inventory row in the same shape as GET_ALL_INVENTORY.
+     */
+    private void publishInventory(int productId) {
+        String sql = "SELECT i.*, p.name, p.brand, p.model FROM inventory i " +
+                "LEFT JOIN products p ON i.product_id = p.id " +
+                "WHERE i.product_id = ?";
+
+        try {
+            Map<String, Object> row = Query.sql(sql).params(productId).first(INVENTORY_ROW);
+            if (row != null) {
+                notifier.publish(Constants.TOPIC_INVENTORY, Constants.EVENT_UPDATED, (int) row.get("id"), row);
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not load inventory of product " + productId + " for change event", e);
+            notifier.publish(Constants.TOPIC_INVENTORY, Constants.EVENT_UPDATED, productId, null);
+        }
+    }
+
     public Response getLowStockProducts() {
         String sql = "SELECT p.*, i.quantity_current FROM products p " +
                 "LEFT JOIN inventory i ON p.id = i.product_id " +
                 "WHERE i.quantity_current < 5 " +
                 "ORDER BY i.quantity_current ASC";
-        List<Map<String, Object>> products = new ArrayList<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Map<String, Object> product = new HashMap<>();
-                product.put("id", rs.getInt("id"));
-                product.put("name", rs.getString("name"));
-                product.put("brand", rs.getString("brand"));
-                product.put("model", rs.getString("model"));
-                product.put("quantityCurrent", rs.getInt("quantity_current"));
-                products.add(product);
-            }
+
+        try {
+            List<Map<String, Object>> products = Query.sql(sql).list(LOW_STOCK);
             return Response.success("Lấy sản phẩm sắp hết hàng thành công", products);
         } catch (SQLException e) {
             logger.error("Error getting low stock products", e);
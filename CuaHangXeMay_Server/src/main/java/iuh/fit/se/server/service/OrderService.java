@@ -1,34 +1,84 @@
 package iuh.fit.se.server.service;
 
 import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.ResultStream;
+import iuh.fit.se.server.database.CodeGenerator;
 import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.stock.StockEngine;
 import org.apache.log4j.Logger;
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class OrderService {
     private static final Logger logger = Logger.getLogger(OrderService.class);
-    private Connection connection;
+    // Orders with "c.full_name as customer_name, u.full_name as user_name" joined in
+    private static final RowMapper<Order> ORDER = RowMapper.of(Order::new)
+            .intColumn("id", Order::setId)
+            .stringColumn("order_code", Order::setOrderCode)
+            .intColumn("customer_id", Order::setCustomerId)
+            .stringColumn("customer_name", Order::setCustomerName)
+            .intColumn("user_id", Order::setUserId)
+            .stringColumn("user_name", Order::setUserName)
+            .decimalColumn("total_amount", Order::setTotalAmount)
+            .decimalColumn("discount_amount", Order::setDiscountAmount)
+            .decimalColumn("final_amount", Order::setFinalAmount)
+            .stringColumn("status", Order::setStatus)
+            .stringColumn("payment_method", Order::setPaymentMethod)
+            .stringColumn("notes", Order::setNotes)
+            .timestampColumn("created_at", Order::setCreatedAt)
+            .timestampColumn("updated_at", Order::setUpdatedAt);
+    private static final RowMapper<OrderItem> ORDER_ITEM = RowMapper.of(OrderItem::new)
+            .intColumn("id", OrderItem::setId)
+            .intColumn("order_id", OrderItem::setOrderId)
+            .intColumn("product_id", OrderItem::setProductId)
+            .stringColumn("product_name", OrderItem::setProductName)
+            .intColumn("quantity", OrderItem::setQuantity)
+            .decimalColumn("unit_price", OrderItem::setUnitPrice)
+            .decimalColumn("total_price", OrderItem::setTotalPrice);
+    // Stateless and shared by all connections; a connection is borrowed from the pool per call
+    private final DatabaseManager db;
+    private final ChangeNotifier notifier = ChangeNotifier.getInstance();
+    private final StockEngine stock = StockEngine.getInstance();
+    private final CodeGenerator orderCodes = CodeGenerator.forPrefix("ORD");
 
     public OrderService() {
-        this.connection = DatabaseManager.getInstance().getConnection();
+        this.db = DatabaseManager.getInstance();
     }
 
-    public Response getAllOrders() {
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.GET_ALL_ORDERS, ActionClass.BULK_READ,
+                (request, context) -> getAllOrders(request, context));
+        registry.register(Constants.GET_ORDER_BY_ID, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getOrderById(request));
+        registry.register(Constants.CREATE_ORDER, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> createOrder(request));
+        registry.register(Constants.UPDATE_ORDER_STATUS, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> updateOrderStatus(request));
+        registry.register(Constants.GET_ORDER_ITEMS, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getOrderItems(request));
+        registry.coalesce(Constants.GET_ALL_ORDERS, Constants.GET_ORDER_BY_ID, Constants.GET_ORDER_ITEMS);
+    }
+
+    public Response getAllOrders(Request request, RequestContext context) {
         String sql = "SELECT o.*, c.full_name as customer_name, u.full_name as user_name " +
                 "FROM orders o " +
                 "LEFT JOIN customers c ON o.customer_id = c.id " +
-                "LEFT JOIN users u ON o.user_id = u.id " +
-                "ORDER BY o.id DESC";
-        List<Order> orders = new ArrayList<>();
+                "LEFT JOIN users u ON o.user_id = u.id";
+        ResultStream<Order> orders = new ResultStream<>(request, context);
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                orders.add(extractOrder(rs));
-            }
-            return Response.success("Lấy danh sách đơn hàng thành công", orders);
+        try {
+            orders.query(sql, "o.id").forEach(ORDER, order -> orders.add(order.getId(), order));
+            return orders.finish("Lấy danh sách đơn hàng thành công");
         } catch (SQLException e) {
             logger.error("Error getting orders", e);
             return Response.error("Lỗi: " + e.getMessage());
@@ -37,17 +87,10 @@ public class OrderService {
 
     public Response getOrderById(Request request) {
         int id = (int) request.getData("id");
-        String sql = "SELECT o.*, c.full_name as customer_name, u.full_name as user_name " +
-                "FROM orders o " +
-                "LEFT JOIN customers c ON o.customer_id = c.id " +
-                "LEFT JOIN users u ON o.user_id = u.id " +
-                "WHERE o.id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                Order order = extractOrder(rs);
+        try {
+            Order order = findOrder(id);
+            if (order != null) {
                 // Get order items
                 order.setOrderItems(getOrderItemsByOrderId(id));
                 return Response.success("Lấy thông tin đơn hàng thành công", order);
@@ -59,68 +102,109 @@ public class OrderService {
         }
     }
 
+    private Order findOrder(int id) throws SQLException {
+        String sql = "SELECT o.*, c.full_name as customer_name, u.full_name as user_name " +
+                "FROM orders o " +
+                "LEFT JOIN customers c ON o.customer_id = c.id " +
+                "LEFT JOIN users u ON o.user_id = u.id " +
+                "WHERE o.id = ?";
+        return Query.sql(sql).params(id).first(ORDER);
+    }
+
+    /**
+     * Sends subscribers the order row (without items), as the order list shows it.
+     */
+    private void publishOrder(String op, int id) {
+        try {
+            notifier.publish(Constants.TOPIC_ORDERS, op, id, findOrder(id));
+        } catch (SQLException e) {
+            logger.warn("Could not load order " + id + " for change event", e);
+            notifier.publish(Constants.TOPIC_ORDERS, op, id, null);
+        }
+    }
+
     public Response createOrder(Request request) {
         Order order = (Order) request.getData("order");
+        // Quantity per product, in product id order
+        Map<Integer, Integer> sold = new TreeMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            sold.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+
+        // Taken before the transaction: a new block of codes borrows a connection of its own,
+        // which must not be waited for while this order holds one (see CodeGenerator)
+        String orderCode;
+        try {
+            orderCode = orderCodes.next();
+        } catch (SQLException e) {
+            logger.error("Error generating order code", e);
+            return Response.error("Lỗi: " + e.getMessage());
+        }
 
+        // Decided in memory, before any row is locked; see StockEngine
+        StockEngine.Reservation reservation;
         try {
+            reservation = stock.reserve(sold);
+            if (!reservation.isReserved()) {
+                return Response.error("Sản phẩm #" + reservation.getShortProduct() + " không đủ số lượng trong kho");
+            }
+        } catch (SQLException e) {
+            logger.error("Error loading stock", e);
+            return Response.error("Lỗi: " + e.getMessage());
+        }
+        // Set once the reserved units are sold or accounted for, so they are not given back
+        boolean settled = false;
+
+        // The pool restores auto-commit when the connection is returned; queries run
+        // on this thread until then use the same connection, so they are part of the transaction
+        try (Connection connection = db.getConnection()) {
             connection.setAutoCommit(false);
+            try {
+                // Insert order
+                String orderSql = "INSERT INTO orders (order_code, customer_id, user_id, total_amount, " +
+                        "discount_amount, final_amount, status, payment_method, notes) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-            // Insert order
-            String orderSql = "INSERT INTO orders (order_code, customer_id, user_id, total_amount, " +
-                    "discount_amount, final_amount, status, payment_method, notes) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            try (PreparedStatement stmt = connection.prepareStatement(orderSql, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setString(1, generateOrderCode());
-                stmt.setInt(2, order.getCustomerId());
-                stmt.setInt(3, order.getUserId());
-                stmt.setBigDecimal(4, order.getTotalAmount());
-                stmt.setBigDecimal(5, order.getDiscountAmount());
-                stmt.setBigDecimal(6, order.getFinalAmount());
-                stmt.setString(7, order.getStatus());
-                stmt.setString(8, order.getPaymentMethod());
-                stmt.setString(9, order.getNotes());
-
-                stmt.executeUpdate();
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    order.setId(rs.getInt(1));
+                order.setId(Query.sql(orderSql).params(orderCode, order.getCustomerId(), order.getUserId(),
+                        order.getTotalAmount(), order.getDiscountAmount(), order.getFinalAmount(),
+                        order.getStatus(), order.getPaymentMethod(), order.getNotes()).insert());
+
+                // One statement each for the items and the stock, whatever the basket size
+                if (!order.getOrderItems().isEmpty()) {
+                    insertOrderItems(order);
+                    if (!stock.persist(connection, sold)) {
+                        // Stock was changed outside this server: refuse, and reload the counts
+                        connection.rollback();
+                        stock.invalidate(sold.keySet());
+                        settled = true;
+                        return Response.error("Không đủ số lượng trong kho, vui lòng thử lại");
+                    }
                 }
-            }
 
-            // Insert order items
-            String itemSql = "INSERT INTO order_items (order_id, product_id, quantity, unit_price, total_price) " +
-                    "VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement stmt = connection.prepareStatement(itemSql)) {
-                for (OrderItem item : order.getOrderItems()) {
-                    stmt.setInt(1, order.getId());
-                    stmt.setInt(2, item.getProductId());
-                    stmt.setInt(3, item.getQuantity());
-                    stmt.setBigDecimal(4, item.getUnitPrice());
-                    stmt.setBigDecimal(5, item.getTotalPrice());
-                    stmt.executeUpdate();
-
-                    // Update product quantity
-                    updateProductQuantity(item.getProductId(), -item.getQuantity());
+                connection.commit();
+                settled = true;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    logger.error("Error rolling back", ex);
                 }
+                throw e;
             }
 
-            connection.commit();
+            publishOrder(Constants.EVENT_CREATED, order.getId());
+            // Stock went down; subscribers reload just these rows
+            for (int productId : sold.keySet()) {
+                notifier.publish(Constants.TOPIC_PRODUCTS, Constants.EVENT_UPDATED, productId, null);
+            }
             return Response.success("Tạo đơn hàng thành công", order);
 
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                logger.error("Error rolling back", ex);
-            }
             logger.error("Error creating order", e);
             return Response.error("Lỗi: " + e.getMessage());
         } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException e) {
-                logger.error("Error setting auto commit", e);
+            if (!settled) {
+                stock.release(reservation);
             }
         }
     }
@@ -130,11 +214,10 @@ public class OrderService {
         String status = (String) request.getData("status");
         String sql = "UPDATE orders SET status = ? WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, status);
-            stmt.setInt(2, id);
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(status, id).update();
             if (affected > 0) {
+                publishOrder(Constants.EVENT_UPDATED, id);
                 return Response.success("Cập nhật trạng thái thành công", null);
             }
             return Response.error("Không thể cập nhật trạng thái");
@@ -151,60 +234,34 @@ public class OrderService {
     }
 
     private List<OrderItem> getOrderItemsByOrderId(int orderId) {
-        List<OrderItem> items = new ArrayList<>();
         String sql = "SELECT oi.*, p.name as product_name FROM order_items oi " +
                 "LEFT JOIN products p ON oi.product_id = p.id " +
                 "WHERE oi.order_id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, orderId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                OrderItem item = new OrderItem();
-                item.setId(rs.getInt("id"));
-                item.setOrderId(rs.getInt("order_id"));
-                item.setProductId(rs.getInt("product_id"));
-                item.setProductName(rs.getString("product_name"));
-                item.setQuantity(rs.getInt("quantity"));
-                item.setUnitPrice(rs.getBigDecimal("unit_price"));
-                item.setTotalPrice(rs.getBigDecimal("total_price"));
-                items.add(item);
-            }
+        try {
+            return Query.sql(sql).params(orderId).list(ORDER_ITEM);
         } catch (SQLException e) {
             logger.error("Error getting order items", e);
+            return new ArrayList<>();
         }
-        return items;
     }
 
-    private void updateProductQuantity(int productId, int quantityChange) throws SQLException {
-        String sql = "UPDATE products SET quantity = quantity + ? WHERE id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, quantityChange);
-            stmt.setInt(2, productId);
-            stmt.executeUpdate();
+    /**
+     * Inserts all items of the order with one multi-row INSERT.
+     */
+    private void insertOrderItems(Order order) throws SQLException {
+        List<OrderItem> items = order.getOrderItems();
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO order_items (order_id, product_id, quantity, unit_price, total_price) VALUES ");
+        List<Object> params = new ArrayList<>(items.size() * 5);
+        for (OrderItem item : items) {
+            sql.append(params.isEmpty() ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+            params.add(order.getId());
+            params.add(item.getProductId());
+            params.add(item.getQuantity());
+            params.add(item.getUnitPrice());
+            params.add(item.getTotalPrice());
         }
-    }
-
-    private String generateOrderCode() {
-        return "ORD" + System.currentTimeMillis();
-    }
-
-    private Order extractOrder(ResultSet rs) throws SQLException {
-        Order o = new Order();
-        o.setId(rs.getInt("id"));
-        o.setOrderCode(rs.getString("order_code"));
-        o.setCustomerId(rs.getInt("customer_id"));
-        o.setCustomerName(rs.getString("customer_name"));
-        o.setUserId(rs.getInt("user_id"));
-        o.setUserName(rs.getString("user_name"));
-        o.setTotalAmount(rs.getBigDecimal("total_amount"));
-        o.setDiscountAmount(rs.getBigDecimal("discount_amount"));
-        o.setFinalAmount(rs.getBigDecimal("final_amount"));
-        o.setStatus(rs.getString("status"));
-        o.setPaymentMethod(rs.getString("payment_method"));
-        o.setNotes(rs.getString("notes"));
-        o.setCreatedAt(rs.getTimestamp("created_at"));
-        o.setUpdatedAt(rs.getTimestamp("updated_at"));
-        return o;
+        Query.sql(sql.toString()).params(params.toArray()).update();
     }
 }
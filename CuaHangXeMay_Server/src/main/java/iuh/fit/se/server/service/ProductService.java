@@ -1,35 +1,80 @@
 package iuh.fit.se.server.service;
 
 import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.ResultStream;
 import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.stock.StockEngine;
 import org.apache.log4j.Logger;
 
-import java.sql.*;
-import java.util.ArrayList;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.List;
 
+// Stateless and shared by all connections; a connection is borrowed from the pool per query
 public class ProductService {
     private static final Logger logger = Logger.getLogger(ProductService.class);
-    private Connection connection;
-
-    public ProductService() {
-        this.connection = DatabaseManager.getInstance().getConnection();
+    // Products with "c.name as category_name" joined in
+    private static final RowMapper<Product> PRODUCT = RowMapper.of(Product::new)
+            .intColumn("id", Product::setId)
+            .intColumn("category_id", Product::setCategoryId)
+            .stringColumn("category_name", Product::setCategoryName)
+            .stringColumn("name", Product::setName)
+            .stringColumn("model", Product::setModel)
+            .stringColumn("brand", Product::setBrand)
+            .stringColumn("color", Product::setColor)
+            .decimalColumn("price", Product::setPrice)
+            .intColumn("quantity", Product::setQuantity)
+            .stringColumn("description", Product::setDescription)
+            .stringColumn("image_path", Product::setImagePath)
+            .stringColumn("status", Product::setStatus)
+            .timestampColumn("created_at", Product::setCreatedAt)
+            .timestampColumn("updated_at", Product::setUpdatedAt);
+    private static final RowMapper<Category> CATEGORY = RowMapper.of(Category::new)
+            .intColumn("id", Category::setId)
+            .stringColumn("name", Category::setName)
+            .stringColumn("description", Category::setDescription)
+            .timestampColumn("created_at", Category::setCreatedAt);
+    private final DatabaseManager db = DatabaseManager.getInstance();
+    private final ChangeNotifier notifier = ChangeNotifier.getInstance();
+
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.GET_ALL_PRODUCTS, ActionClass.BULK_READ,
+                (request, context) -> getAllProducts(request, context));
+        registry.register(Constants.GET_PRODUCT_BY_ID, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getProductById(request));
+        registry.register(Constants.CREATE_PRODUCT, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> createProduct(request));
+        registry.register(Constants.UPDATE_PRODUCT, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> updateProduct(request));
+        registry.register(Constants.DELETE_PRODUCT, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> deleteProduct(request));
+        registry.register(Constants.SEARCH_PRODUCTS, ActionClass.INTERACTIVE_READ,
+                (request, context) -> searchProducts(request));
+        registry.register(Constants.GET_PRODUCTS_BY_CATEGORY, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getProductsByCategory(request));
+        registry.register(Constants.GET_ALL_CATEGORIES, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getAllCategories());
+        registry.register(Constants.CREATE_CATEGORY, ActionClass.TRANSACTIONAL_WRITE,
+                (request, context) -> createCategory(request));
+        // Read-only: identical concurrent requests share one query, e.g. every terminal loading at opening time
+        registry.coalesce(Constants.GET_ALL_PRODUCTS, Constants.GET_PRODUCT_BY_ID, Constants.SEARCH_PRODUCTS,
+                Constants.GET_PRODUCTS_BY_CATEGORY, Constants.GET_ALL_CATEGORIES);
     }
 
-    public Response getAllProducts() {
+    public Response getAllProducts(Request request, RequestContext context) {
         String sql = "SELECT p.*, c.name as category_name FROM products p " +
-                "LEFT JOIN categories c ON p.category_id = c.id " +
-                "ORDER BY p.id DESC";
-        List<Product> products = new ArrayList<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+                "LEFT JOIN categories c ON p.category_id = c.id";
+        ResultStream<Product> products = new ResultStream<>(request, context);
 
-            while (rs.next()) {
-                products.add(extractProduct(rs));
-            }
-
-            return Response.success("Lấy danh sách sản phẩm thành công", products);
+        try {
+            products.query(sql, "p.id").forEach(PRODUCT, product -> products.add(product.getId(), product));
+            return products.finish("Lấy danh sách sản phẩm thành công");
         } catch (SQLException e) {
             logger.error("Error getting all products", e);
             return Response.error("Lỗi: " + e.getMessage());
@@ -38,16 +83,11 @@ public class ProductService {
 
     public Response getProductById(Request request) {
         int id = (int) request.getData("id");
-        String sql = "SELECT p.*, c.name as category_name FROM products p " +
-                "LEFT JOIN categories c ON p.category_id = c.id " +
-                "WHERE p.id = ?";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
 
-            if (rs.next()) {
-                return Response.success("Lấy thông tin sản phẩm thành công", extractProduct(rs));
+        try {
+            Product product = findProduct(id);
+            if (product != null) {
+                return Response.success("Lấy thông tin sản phẩm thành công", product);
             } else {
                 return Response.notFound("Không tìm thấy sản phẩm");
             }
@@ -57,6 +97,25 @@ public class ProductService {
         }
     }
 
+    private Product findProduct(int id) throws SQLException {
+        String sql = "SELECT p.*, c.name as category_name FROM products p " +
+                "LEFT JOIN categories c ON p.category_id = c.id " +
+                "WHERE p.id = ?";
+        return Query.sql(sql).params(id).first(PRODUCT);
+    }
+
+    /**
+     * Sends subscribers the product as stored, with its category name.
+     */
+    private void publishProduct(String op, int id) {
+        try {
+            notifier.publish(Constants.TOPIC_PRODUCTS, op, id, findProduct(id));
+        } catch (SQLException e) {
+            logger.warn("Could not load product " + id + " for change event", e);
+            notifier.publish(Constants.TOPIC_PRODUCTS, op, id, null);
+        }
+    }
+
     public Response createProduct(Request request) {
         Product product = (Product) request.getData("product");
 
@@ -64,29 +123,32 @@ public class ProductService {
                 "price, quantity, description, image_path, status) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setInt(1, product.getCategoryId());
-            stmt.setString(2, product.getName());
-            stmt.setString(3, product.getModel());
-            stmt.setString(4, product.getBrand());
-            stmt.setString(5, product.getColor());
-            stmt.setBigDecimal(6, product.getPrice());
-            stmt.setInt(7, product.getQuantity());
-            stmt.setString(8, product.getDescription());
-            stmt.setString(9, product.getImagePath());
-            stmt.setString(10, product.getStatus());
-
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    product.setId(rs.getInt(1));
-
-                    // Create inventory record
-                    createInventoryForProduct(product.getId(), product.getQuantity());
+        // Product and inventory row in one transaction: a product is never sold without stock to count
+        try (Connection connection = db.getConnection()) {
+            connection.setAutoCommit(false);
+            int id;
+            try {
+                id = Query.sql(sql).params(product.getCategoryId(), product.getName(), product.getModel(),
+                        product.getBrand(), product.getColor(), product.getPrice(), product.getQuantity(),
+                        product.getDescription(), product.getImagePath(), product.getStatus()).insert();
+                if (id > 0) {
+                    createInventoryForProduct(id, product.getQuantity());
                 }
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    logger.error("Error rolling back", ex);
+                }
+                throw e;
+            }
+
+            if (id > 0) {
+                product.setId(id);
                 logger.info("Product created: " + product.getName());
+                publishProduct(Constants.EVENT_CREATED, product.getId());
+                notifier.publish(Constants.TOPIC_INVENTORY, Constants.EVENT_CREATED, product.getId(), null);
                 return Response.success("Tạo sản phẩm thành công", product);
             } else {
                 return Response.error("Không thể tạo sản phẩm");
@@ -100,27 +162,20 @@ public class ProductService {
     public Response updateProduct(Request request) {
         Product product = (Product) request.getData("product");
 
+        // Not quantity: stock changes only through inventory (updateInventory and orders), which
+        // keeps products.quantity equal to inventory.quantity_current and StockEngine's count
         String sql = "UPDATE products SET category_id = ?, name = ?, model = ?, " +
-                "brand = ?, color = ?, price = ?, quantity = ?, " +
+                "brand = ?, color = ?, price = ?, " +
                 "description = ?, image_path = ?, status = ? WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, product.getCategoryId());
-            stmt.setString(2, product.getName());
-            stmt.setString(3, product.getModel());
-            stmt.setString(4, product.getBrand());
-            stmt.setString(5, product.getColor());
-            stmt.setBigDecimal(6, product.getPrice());
-            stmt.setInt(7, product.getQuantity());
-            stmt.setString(8, product.getDescription());
-            stmt.setString(9, product.getImagePath());
-            stmt.setString(10, product.getStatus());
-            stmt.setInt(11, product.getId());
-
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(product.getCategoryId(), product.getName(), product.getModel(),
+                    product.getBrand(), product.getColor(), product.getPrice(),
+                    product.getDescription(), product.getImagePath(), product.getStatus(), product.getId()).update();
 
             if (affected > 0) {
                 logger.info("Product updated: " + product.getId());
+                publishProduct(Constants.EVENT_UPDATED, product.getId());
                 return Response.success("Cập nhật sản phẩm thành công", product);
             } else {
                 return Response.error("Không thể cập nhật sản phẩm");
@@ -135,12 +190,14 @@ public class ProductService {
         int id = (int) request.getData("id");
         String sql = "DELETE FROM products WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(id).update();
 
             if (affected > 0) {
                 logger.info("Product deleted: " + id);
+                StockEngine.getInstance().invalidate(id);
+                notifier.publish(Constants.TOPIC_PRODUCTS, Constants.EVENT_DELETED, id, null);
+                notifier.publish(Constants.TOPIC_INVENTORY, Constants.EVENT_DELETED, id, null);
                 return Response.success("Xóa sản phẩm thành công", null);
             } else {
                 return Response.error("Không thể xóa sản phẩm");
@@ -157,19 +214,9 @@ public class ProductService {
                 "LEFT JOIN categories c ON p.category_id = c.id " +
                 "WHERE p.name LIKE ? OR p.brand LIKE ? OR p.model LIKE ?";
 
-        List<Product> products = new ArrayList<>();
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        try {
             String searchTerm = "%" + keyword + "%";
-            stmt.setString(1, searchTerm);
-            stmt.setString(2, searchTerm);
-            stmt.setString(3, searchTerm);
-
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                products.add(extractProduct(rs));
-            }
-
+            List<Product> products = Query.sql(sql).params(searchTerm, searchTerm, searchTerm).list(PRODUCT);
             return Response.success("Tìm kiếm thành công", products);
         } catch (SQLException e) {
             logger.error("Error searching products", e);
@@ -183,16 +230,8 @@ public class ProductService {
                 "LEFT JOIN categories c ON p.category_id = c.id " +
                 "WHERE p.category_id = ?";
 
-        List<Product> products = new ArrayList<>();
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, categoryId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                products.add(extractProduct(rs));
-            }
-
+        try {
+            List<Product> products = Query.sql(sql).params(categoryId).list(PRODUCT);
             return Response.success("Lấy sản phẩm theo danh mục thành công", products);
         } catch (SQLException e) {
             logger.error("Error getting products by category", e);
@@ -202,20 +241,9 @@ public class ProductService {
 
     public Response getAllCategories() {
         String sql = "SELECT * FROM categories ORDER BY name";
-        List<Category> categories = new ArrayList<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Category category = new Category();
-                category.setId(rs.getInt("id"));
-                category.setName(rs.getString("name"));
-                category.setDescription(rs.getString("description"));
-                category.setCreatedAt(rs.getTimestamp("created_at"));
-                categories.add(category);
-            }
 
+        try {
+            List<Category> categories = Query.sql(sql).list(CATEGORY);
             return Response.success("Lấy danh mục thành công", categories);
         } catch (SQLException e) {
             logger.error("Error getting categories", e);
@@ -227,16 +255,10 @@ public class ProductService {
         Category category = (Category) request.getData("category");
         String sql = "INSERT INTO categories (name, description) VALUES (?, ?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, category.getName());
-            stmt.setString(2, category.getDescription());
-
-            int affected = stmt.executeUpdate();
-            if (affected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    category.setId(rs.getInt(1));
-                }
+        try {
+            int id = Query.sql(sql).params(category.getName(), category.getDescription()).insert();
+            if (id > 0) {
+                category.setId(id);
                 return Response.success("Tạo danh mục thành công", category);
             } else {
                 return Response.error("Không thể tạo danh mục");
@@ -247,34 +269,8 @@ public class ProductService {
         }
     }
 
-    private void createInventoryForProduct(int productId, int initialQuantity) {
+    private void createInventoryForProduct(int productId, int initialQuantity) throws SQLException {
         String sql = "INSERT INTO inventory (product_id, quantity_in, quantity_current) VALUES (?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, productId);
-            stmt.setInt(2, initialQuantity);
-            stmt.setInt(3, initialQuantity);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            logger.error("Error creating inventory", e);
-        }
-    }
-
-    private Product extractProduct(ResultSet rs) throws SQLException {
-        Product product = new Product();
-        product.setId(rs.getInt("id"));
-        product.setCategoryId(rs.getInt("category_id"));
-        product.setCategoryName(rs.getString("category_name"));
-        product.setName(rs.getString("name"));
-        product.setModel(rs.getString("model"));
-        product.setBrand(rs.getString("brand"));
-        product.setColor(rs.getString("color"));
-        product.setPrice(rs.getBigDecimal("price"));
-        product.setQuantity(rs.getInt("quantity"));
-        product.setDescription(rs.getString("description"));
-        product.setImagePath(rs.getString("image_path"));
-        product.setStatus(rs.getString("status"));
-        product.setCreatedAt(rs.getTimestamp("created_at"));
-        product.setUpdatedAt(rs.getTimestamp("updated_at"));
-        return product;
+        Query.sql(sql).params(productId, initialQuantity, initialQuantity).update();
     }
 }
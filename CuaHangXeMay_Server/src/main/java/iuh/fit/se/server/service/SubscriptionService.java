@@ -0,0 +1,60 @@
+package iuh.fit.se.server.service;
+
+import iuh.fit.se.common.*;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.event.ChangeNotifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SUBSCRIBE / UNSUBSCRIBE to change events for this connection.
+ */
+public class SubscriptionService {
+    private final ChangeNotifier notifier = ChangeNotifier.getInstance();
+
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.SUBSCRIBE, ActionClass.INTERACTIVE_READ,
+                this::subscribe);
+        registry.register(Constants.UNSUBSCRIBE, ActionClass.INTERACTIVE_READ,
+                this::unsubscribe);
+    }
+
+    public Response subscribe(Request request, RequestContext context) {
+        if (!context.canPush()) {
+            return Response.error("Kết nối này không hỗ trợ nhận sự kiện, hãy dùng giao thức framed");
+        }
+        List<String> topics = readTopics(request);
+        if (topics == null) {
+            return Response.error("Chủ đề không hợp lệ");
+        }
+        notifier.subscribe(context, topics);
+        return Response.success("Đăng ký nhận thay đổi thành công", topics);
+    }
+
+    public Response unsubscribe(Request request, RequestContext context) {
+        List<String> topics = readTopics(request);
+        if (topics == null) {
+            return Response.error("Chủ đề không hợp lệ");
+        }
+        notifier.unsubscribe(context, topics);
+        return Response.success("Hủy đăng ký thành công", topics);
+    }
+
+    private List<String> readTopics(Request request) {
+        Object value = request.getData("topics");
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<String> topics = new ArrayList<>();
+        for (Object topic : (List<?>) value) {
+            if (!(topic instanceof String) || !ChangeNotifier.isTopic((String) topic)) {
+                return null;
+            }
+            topics.add((String) topic);
+        }
+        return topics;
+    }
+}
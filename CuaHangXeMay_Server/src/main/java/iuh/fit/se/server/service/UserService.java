@@ -1,19 +1,85 @@
 package iuh.fit.se.server.service;
 
 import iuh.fit.se.common.*;
-import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.action.Access;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.action.ActionRegistry;
+import iuh.fit.se.server.action.RequestContext;
+import iuh.fit.se.server.action.ResultStream;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+import iuh.fit.se.server.event.ChangeNotifier;
+import iuh.fit.se.server.session.Session;
+import iuh.fit.se.server.session.SessionStore;
 import org.apache.log4j.Logger;
 
-import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
+// Stateless and shared by all connections; a connection is borrowed from the pool per query
 public class UserService {
     private static final Logger logger = Logger.getLogger(UserService.class);
-    private Connection connection;
+    // The password column is never read, so it cannot reach a client
+    private static final RowMapper<User> USER = RowMapper.of(User::new)
+            .intColumn("id", User::setId)
+            .stringColumn("username", User::setUsername)
+            .stringColumn("full_name", User::setFullName)
+            .stringColumn("email", User::setEmail)
+            .stringColumn("phone", User::setPhone)
+            .stringColumn("role", User::setRole)
+            .stringColumn("status", User::setStatus)
+            .timestampColumn("created_at", User::setCreatedAt)
+            .timestampColumn("updated_at", User::setUpdatedAt);
+
+    public void registerActions(ActionRegistry registry) {
+        registry.register(Constants.LOGIN, ActionClass.INTERACTIVE_READ, Access.PUBLIC,
+                (request, context) -> login(request, context));
+        registry.register(Constants.LOGOUT, ActionClass.INTERACTIVE_READ, Access.PUBLIC,
+                (request, context) -> logout(request, context));
+        registry.register(Constants.GET_ALL_USERS, ActionClass.BULK_READ, Access.ADMIN,
+                (request, context) -> getAllUsers(request, context));
+        registry.register(Constants.GET_USER_BY_ID, ActionClass.INTERACTIVE_READ,
+                (request, context) -> getUserById(request));
+        registry.register(Constants.CREATE_USER, ActionClass.TRANSACTIONAL_WRITE, Access.ADMIN,
+                (request, context) -> createUser(request));
+        registry.register(Constants.UPDATE_USER, ActionClass.TRANSACTIONAL_WRITE, Access.ADMIN,
+                (request, context) -> updateUser(request));
+        registry.register(Constants.DELETE_USER, ActionClass.TRANSACTIONAL_WRITE, Access.ADMIN,
+                (request, context) -> deleteUser(request));
+        registry.coalesce(Constants.GET_ALL_USERS, Constants.GET_USER_BY_ID);
+    }
 
-    public UserService() {
-        this.connection = DatabaseManager.getInstance().getConnection();
+    /**
+     * On success the data is a map with the "user" and the session "token"
+     * that later requests must carry.
+     */
+    public Response login(Request request, RequestContext context) {
+        Response response = login(request);
+        if (!response.isSuccess()) {
+            return response;
+        }
+        User user = (User) response.getData();
+        Session session;
+        try {
+            session = SessionStore.getInstance().create(user);
+        } catch (SQLException e) {
+            logger.error("Error creating session", e);
+            return Response.error("Lỗi đăng nhập: " + e.getMessage());
+        }
+        context.setUsername(user.getUsername());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("user", user);
+        data.put("token", session.getToken());
+        return Response.success(response.getMessage(), data);
+    }
+
+    public Response logout(Request request, RequestContext context) {
+        SessionStore.getInstance().invalidate(request.getToken());
+        ChangeNotifier.getInstance().unsubscribeAll(context);
+        context.setUsername(null);
+        return Response.success("Đăng xuất thành công", null);
     }
 
     public Response login(Request request) {
@@ -22,15 +88,10 @@ public class UserService {
 
         String sql = "SELECT * FROM users WHERE username = ? AND password = ? AND status = 'ACTIVE'";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, username);
-            stmt.setString(2, password);
-
-            ResultSet rs = stmt.executeQuery();
+        try {
+            User user = Query.sql(sql).params(username, password).first(USER);
 
-            if (rs.next()) {
-                User user = extractUser(rs);
-                user.setPassword(null); // Don't send password to client
+            if (user != null) {
                 logger.info("User logged in: " + username);
                 return Response.success("Đăng nhập thành công", user);
             } else {
@@ -42,20 +103,12 @@ public class UserService {
         }
     }
 
-    public Response getAllUsers() {
-        String sql = "SELECT * FROM users ORDER BY id DESC";
-        List<User> users = new ArrayList<>();
+    public Response getAllUsers(Request request, RequestContext context) {
+        ResultStream<User> users = new ResultStream<>(request, context);
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                User user = extractUser(rs);
-                user.setPassword(null);
-                users.add(user);
-            }
-
-            return Response.success("Lấy danh sách người dùng thành công", users);
+        try {
+            users.query("SELECT * FROM users", "id").forEach(USER, user -> users.add(user.getId(), user));
+            return users.finish("Lấy danh sách người dùng thành công");
         } catch (SQLException e) {
             logger.error("Error getting all users", e);
             return Response.error("Lỗi lấy danh sách: " + e.getMessage());
@@ -66,13 +119,10 @@ public class UserService {
         int id = (int) request.getData("id");
         String sql = "SELECT * FROM users WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            ResultSet rs = stmt.executeQuery();
+        try {
+            User user = Query.sql(sql).params(id).first(USER);
 
-            if (rs.next()) {
-                User user = extractUser(rs);
-                user.setPassword(null);
+            if (user != null) {
                 return Response.success("Lấy thông tin người dùng thành công", user);
             } else {
                 return Response.notFound("Không tìm thấy người dùng");
@@ -89,22 +139,12 @@ public class UserService {
         String sql = "INSERT INTO users (username, password, full_name, email, phone, role, status) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setString(1, user.getUsername());
-            stmt.setString(2, user.getPassword());
-            stmt.setString(3, user.getFullName());
-            stmt.setString(4, user.getEmail());
-            stmt.setString(5, user.getPhone());
-            stmt.setString(6, user.getRole());
-            stmt.setString(7, user.getStatus());
-
-            int affected = stmt.executeUpdate();
+        try {
+            int id = Query.sql(sql).params(user.getUsername(), user.getPassword(), user.getFullName(),
+                    user.getEmail(), user.getPhone(), user.getRole(), user.getStatus()).insert();
 
-            if (affected > 0) {
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    user.setId(rs.getInt(1));
-                }
+            if (id > 0) {
+                user.setId(id);
                 logger.info("User created: " + user.getUsername());
                 return Response.success("Tạo người dùng thành công", user);
             } else {
@@ -125,18 +165,13 @@ public class UserService {
         String sql = "UPDATE users SET full_name = ?, email = ?, phone = ?, " +
                 "role = ?, status = ? WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, user.getFullName());
-            stmt.setString(2, user.getEmail());
-            stmt.setString(3, user.getPhone());
-            stmt.setString(4, user.getRole());
-            stmt.setString(5, user.getStatus());
-            stmt.setInt(6, user.getId());
-
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(user.getFullName(), user.getEmail(), user.getPhone(),
+                    user.getRole(), user.getStatus(), user.getId()).update();
 
             if (affected > 0) {
                 logger.info("User updated: " + user.getId());
+                SessionStore.getInstance().updateUser(user);
                 return Response.success("Cập nhật người dùng thành công", user);
             } else {
                 return Response.error("Không thể cập nhật người dùng");
@@ -151,12 +186,12 @@ public class UserService {
         int id = (int) request.getData("id");
         String sql = "DELETE FROM users WHERE id = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            int affected = stmt.executeUpdate();
+        try {
+            int affected = Query.sql(sql).params(id).update();
 
             if (affected > 0) {
                 logger.info("User deleted: " + id);
+                SessionStore.getInstance().invalidateUser(id);
                 return Response.success("Xóa người dùng thành công", null);
             } else {
                 return Response.error("Không thể xóa người dùng");
@@ -166,19 +201,4 @@ public class UserService {
             return Response.error("Lỗi: " + e.getMessage());
         }
     }
-
-    private User extractUser(ResultSet rs) throws SQLException {
-        User user = new User();
-        user.setId(rs.getInt("id"));
-        user.setUsername(rs.getString("username"));
-        user.setPassword(rs.getString("password"));
-        user.setFullName(rs.getString("full_name"));
-        user.setEmail(rs.getString("email"));
-        user.setPhone(rs.getString("phone"));
-        user.setRole(rs.getString("role"));
-        user.setStatus(rs.getString("status"));
-        user.setCreatedAt(rs.getTimestamp("created_at"));
-        user.setUpdatedAt(rs.getTimestamp("updated_at"));
-        return user;
-    }
 }
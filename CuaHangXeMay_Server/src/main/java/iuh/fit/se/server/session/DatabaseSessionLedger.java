@@ -0,0 +1,147 @@
+package iuh.fit.se.server.session;
+
+import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.database.Query;
+import iuh.fit.se.server.database.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SessionLedger in the session_tokens table, joined with users. Always on
+ * the primary: a replica may not have a token issued a moment ago on
+ * another node, or a revocation.
+ */
+class DatabaseSessionLedger implements SessionLedger {
+    // Tokens looked up per statement
+    private static final int CHUNK = 200;
+    private static final String SELECT = "SELECT t.token_hash, t.user_id, t.last_access, t.revoked_at, u.role, u.status " +
+            "FROM session_tokens t LEFT JOIN users u ON u.id = t.user_id WHERE t.token_hash";
+
+    private static final class Row {
+        String tokenHash;
+        int userId;
+        long lastAccess;
+        // 0 = not revoked
+        long revokedAt;
+        String role;
+        String status;
+
+        TokenState toState() {
+            return new TokenState(userId, lastAccess, revokedAt != 0, role, "ACTIVE".equals(status));
+        }
+    }
+
+    private static final RowMapper<Row> ROW = RowMapper.of(Row::new)
+            .stringColumn("token_hash", (row, value) -> row.tokenHash = value)
+            .intColumn("user_id", (row, value) -> row.userId = value)
+            .longColumn("last_access", (row, value) -> row.lastAccess = value)
+            .longColumn("revoked_at", (row, value) -> row.revokedAt = value)
+            .stringColumn("role", (row, value) -> row.role = value)
+            .stringColumn("status", (row, value) -> row.status = value);
+
+    private final DatabaseManager db = DatabaseManager.getInstance();
+    private volatile boolean tableChecked;
+
+    private interface Work<T> {
+        T run() throws SQLException;
+    }
+
+    private <T> T onPrimary(Work<T> work) throws SQLException {
+        Boolean route = db.route(false, 0);
+        try {
+            ensureTable();
+            return work.run();
+        } finally {
+            db.restoreRoute(route);
+        }
+    }
+
+    @Override
+    public void issued(String tokenHash, int userId, long issuedAt, long expiresAt) throws SQLException {
+        onPrimary(() -> Query.sql("INSERT INTO session_tokens (token_hash, user_id, last_access, expires_at) " +
+                "VALUES (?, ?, ?, ?)").params(tokenHash, userId, issuedAt, expiresAt).update());
+    }
+
+    @Override
+    public TokenState lookup(String tokenHash) throws SQLException {
+        Row row = onPrimary(() -> Query.sql(SELECT + " = ?").params(tokenHash).first(ROW));
+        return row != null ? row.toState() : null;
+    }
+
+    @Override
+    public Map<String, TokenState> lookup(Collection<String> tokenHashes) throws SQLException {
+        Map<String, TokenState> states = new HashMap<>();
+        List<String> hashes = new ArrayList<>(tokenHashes);
+        for (int from = 0; from < hashes.size(); from += CHUNK) {
+            List<String> chunk = hashes.subList(from, Math.min(from + CHUNK, hashes.size()));
+            StringBuilder sql = new StringBuilder(SELECT).append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            onPrimary(() -> Query.sql(sql.toString()).params(chunk.toArray())
+                    .forEach(ROW, row -> states.put(row.tokenHash, row.toState())));
+        }
+        return states;
+    }
+
+    @Override
+    public void touched(Map<String, Long> lastAccess) throws SQLException {
+        if (lastAccess.isEmpty()) {
+            return;
+        }
+        onPrimary(() -> {
+            String sql = "UPDATE session_tokens SET last_access = GREATEST(last_access, ?) WHERE token_hash = ?";
+            try (Connection connection = db.getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                for (Map.Entry<String, Long> entry : lastAccess.entrySet()) {
+                    stmt.setLong(1, entry.getValue());
+                    stmt.setString(2, entry.getKey());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void revoke(String tokenHash, long at) throws SQLException {
+        onPrimary(() -> Query.sql("UPDATE session_tokens SET revoked_at = ? WHERE token_hash = ? AND revoked_at IS NULL")
+                .params(at, tokenHash).update());
+    }
+
+    @Override
+    public void revokeUser(int userId, long at) throws SQLException {
+        onPrimary(() -> Query.sql("UPDATE session_tokens SET revoked_at = ? WHERE user_id = ? AND revoked_at IS NULL")
+                .params(at, userId).update());
+    }
+
+    @Override
+    public void purge(long now) throws SQLException {
+        onPrimary(() -> Query.sql("DELETE FROM session_tokens WHERE expires_at < ?").params(now).update());
+    }
+
+    // Databases created before session_tokens was added to init.sql
+    private void ensureTable() throws SQLException {
+        if (tableChecked) {
+            return;
+        }
+        try (Connection connection = db.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS session_tokens (" +
+                    "token_hash CHAR(64) PRIMARY KEY, user_id INT NOT NULL, last_access BIGINT NOT NULL, " +
+                    "revoked_at BIGINT NULL, expires_at BIGINT NOT NULL, " +
+                    "INDEX idx_user (user_id), INDEX idx_expires (expires_at)) ENGINE=InnoDB");
+        }
+        tableChecked = true;
+    }
+}
@@ -0,0 +1,45 @@
+package iuh.fit.se.server.session;
+
+import iuh.fit.se.common.Constants;
+
+/**
+ * A logged-in user, as recorded at login. Requests carry its token and are
+ * authorized from these fields without a database query.
+ */
+public class Session {
+    private final String token;
+    private final int userId;
+    private final String username;
+    // Kept current by SessionStore when an admin edits the user, here or on another node
+    private volatile String role;
+    private final long createdAt;
+    private volatile long lastAccessMillis;
+
+    Session(String token, int userId, String username, String role, long createdAt) {
+        this.token = token;
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.createdAt = createdAt;
+        this.lastAccessMillis = System.currentTimeMillis();
+    }
+
+    public String getToken() { return token; }
+    public int getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public String getRole() { return role; }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastAccessMillis() { return lastAccessMillis; }
+
+    public boolean isAdmin() {
+        return Constants.ROLE_ADMIN.equals(role);
+    }
+
+    void setRole(String role) {
+        this.role = role;
+    }
+
+    void touch(long now) {
+        lastAccessMillis = now;
+    }
+}
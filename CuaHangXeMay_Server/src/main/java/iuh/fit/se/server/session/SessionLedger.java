@@ -0,0 +1,71 @@
+package iuh.fit.se.server.session;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The state of every issued token that all server nodes see: when it was
+ * last used on any node, whether it was revoked, and its user's current role
+ * and status. Tokens are identified by TokenCodec.hash().
+ */
+interface SessionLedger {
+
+    /**
+     * A token as recorded, joined with its user.
+     */
+    final class TokenState {
+        final int userId;
+        final long lastAccess;
+        final boolean revoked;
+        // Null if the user no longer exists
+        final String role;
+        final boolean active;
+
+        TokenState(int userId, long lastAccess, boolean revoked, String role, boolean active) {
+            this.userId = userId;
+            this.lastAccess = lastAccess;
+            this.revoked = revoked;
+            this.role = role;
+            this.active = active;
+        }
+
+        /**
+         * @return whether the token may still be used at now, judged by its idle time across nodes
+         */
+        boolean isUsable(long now, long timeoutMillis) {
+            return !revoked && active && role != null && now - lastAccess <= timeoutMillis;
+        }
+    }
+
+    void issued(String tokenHash, int userId, long issuedAt, long expiresAt) throws SQLException;
+
+    /**
+     * @return the token's state, or null if it was never issued or has been purged
+     */
+    TokenState lookup(String tokenHash) throws SQLException;
+
+    /**
+     * @return the state of each known token among tokenHashes
+     */
+    Map<String, TokenState> lookup(Collection<String> tokenHashes) throws SQLException;
+
+    /**
+     * Records use on this node; a token's last access only moves forward.
+     *
+     * @param lastAccess last access per token hash
+     */
+    void touched(Map<String, Long> lastAccess) throws SQLException;
+
+    void revoke(String tokenHash, long at) throws SQLException;
+
+    /**
+     * Revokes every token of the user issued so far, e.g. when the user is deleted or deactivated.
+     */
+    void revokeUser(int userId, long at) throws SQLException;
+
+    /**
+     * Forgets tokens past their maximum age, which are refused on their signature alone.
+     */
+    void purge(long now) throws SQLException;
+}
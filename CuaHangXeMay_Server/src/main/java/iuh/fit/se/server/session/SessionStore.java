@@ -0,0 +1,290 @@
+package iuh.fit.se.server.session;
+
+import iuh.fit.se.common.User;
+import iuh.fit.se.server.config.ServerSettings;
+import org.apache.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sessions by token, in memory. A session expires after
+ * server.sessionTimeoutMinutes without requests (sliding expiry) on any
+ * node; resolve() of a session in use is a hash lookup and never touches
+ * the database.
+ * <p>
+ * A token carries the user, signed with server.sessionSecret, so any node
+ * sharing the secret can take over a session without the client logging in
+ * again. Every issued token is also recorded in the session_tokens table,
+ * and a node only adopts a token that is recorded there, not revoked, not
+ * idle on every node, and whose user is still active; the role is the
+ * user's current one. Logout, idle expiry and the deletion or deactivation
+ * of a user are recorded there too. Every server.sessionSyncSeconds each
+ * node writes when its sessions were last used and drops or updates them
+ * from the table, so such a change reaches sessions already open on other
+ * nodes within that time.
+ */
+public class SessionStore {
+    private static final Logger logger = Logger.getLogger(SessionStore.class);
+
+    private static volatile SessionStore instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final TokenCodec codec;
+    private final SessionLedger ledger;
+    private final long timeoutMillis;
+    // Sessions used after this time have not been written to the ledger yet
+    private volatile long lastSyncAt;
+
+    SessionStore(TokenCodec codec, SessionLedger ledger, long timeoutMillis) {
+        this.codec = codec;
+        this.ledger = ledger;
+        this.timeoutMillis = timeoutMillis;
+        this.lastSyncAt = System.currentTimeMillis();
+    }
+
+    public static SessionStore getInstance() {
+        SessionStore current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = createDefault();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    private static SessionStore createDefault() {
+        String secret = ServerSettings.getSessionSecret();
+        byte[] key;
+        if (secret != null && !secret.isEmpty()) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            logger.warn("server.sessionSecret is not set: session tokens are valid on this node only");
+        }
+        SessionStore store = new SessionStore(new TokenCodec(key, ServerSettings.getSessionMaxAgeMillis()),
+                new DatabaseSessionLedger(), ServerSettings.getSessionTimeoutMillis());
+        ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "session-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int period = ServerSettings.getSessionSyncSeconds();
+        syncer.scheduleWithFixedDelay(() -> store.sync(System.currentTimeMillis()), period, period, TimeUnit.SECONDS);
+        return store;
+    }
+
+    /**
+     * @throws SQLException if the token could not be recorded; the user is then not logged in
+     */
+    public Session create(User user) throws SQLException {
+        long now = System.currentTimeMillis();
+        String token = codec.issue(user.getId(), user.getUsername(), user.getRole(), now);
+        ledger.issued(TokenCodec.hash(token), user.getId(), now, now + codec.getMaxAgeMillis());
+        Session session = new Session(token, user.getId(), user.getUsername(), user.getRole(), now);
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * @return the live session for the token, with its expiry pushed back,
+     *         or null if the token is missing, unknown, revoked or expired
+     */
+    public Session resolve(String token) {
+        return resolve(token, System.currentTimeMillis());
+    }
+
+    Session resolve(String token, long now) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return adopt(token, now);
+        }
+        if (now - session.getLastAccessMillis() > timeoutMillis && !usedElsewhere(session, now)) {
+            expire(session, now);
+            return null;
+        }
+        session.touch(now);
+        return session;
+    }
+
+    /**
+     * Idle here: the session lives on only if another node used it recently.
+     */
+    private boolean usedElsewhere(Session session, long now) {
+        try {
+            SessionLedger.TokenState state = ledger.lookup(TokenCodec.hash(session.getToken()));
+            if (state != null && state.isUsable(now, timeoutMillis)) {
+                session.setRole(state.role);
+                return true;
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not check session of " + session.getUsername() + "; treating it as expired", e);
+        }
+        return false;
+    }
+
+    /**
+     * @return a session for a token signed with our secret and still usable
+     *         according to the ledger, or null
+     */
+    private Session adopt(String token, long now) {
+        TokenCodec.Claims claims = codec.verify(token, now);
+        if (claims == null) {
+            return null;
+        }
+        SessionLedger.TokenState state;
+        try {
+            state = ledger.lookup(TokenCodec.hash(token));
+        } catch (SQLException e) {
+            // Without the ledger a revoked token cannot be told apart, so it is refused
+            logger.warn("Could not check session token of " + claims.username, e);
+            return null;
+        }
+        if (state == null || state.userId != claims.userId || !state.isUsable(now, timeoutMillis)) {
+            return null;
+        }
+        Session session = new Session(token, claims.userId, claims.username, state.role, claims.issuedAt);
+        session.touch(now);
+        Session existing = sessions.putIfAbsent(token, session);
+        return existing != null ? existing : session;
+    }
+
+    public boolean invalidate(String token) {
+        if (token == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Session session = sessions.remove(token);
+        if (session == null && codec.verify(token, now) == null) {
+            return false;
+        }
+        // Also when never used on this node, so no node adopts it later
+        try {
+            ledger.revoke(TokenCodec.hash(token), now);
+        } catch (SQLException e) {
+            logger.error("Could not record logout; the token stays valid on other nodes until it expires", e);
+        }
+        return session != null;
+    }
+
+    private void expire(Session session, long now) {
+        if (sessions.remove(session.getToken(), session)) {
+            try {
+                ledger.revoke(TokenCodec.hash(session.getToken()), now);
+            } catch (SQLException e) {
+                logger.warn("Could not record expiry of session of " + session.getUsername(), e);
+            }
+        }
+    }
+
+    /**
+     * Applies an admin's edit to the user's open sessions here: a new role
+     * takes effect on the next request, and a user who is no longer active
+     * is logged out on every node.
+     */
+    public void updateUser(User user) {
+        boolean active = "ACTIVE".equals(user.getStatus());
+        if (!active) {
+            revokeUser(user.getId());
+        }
+        for (Session session : sessions.values()) {
+            if (session.getUserId() != user.getId()) {
+                continue;
+            }
+            if (active) {
+                session.setRole(user.getRole());
+            } else {
+                sessions.remove(session.getToken(), session);
+            }
+        }
+    }
+
+    public void invalidateUser(int userId) {
+        revokeUser(userId);
+        sessions.values().removeIf(session -> session.getUserId() == userId);
+    }
+
+    private void revokeUser(int userId) {
+        try {
+            ledger.revokeUser(userId, System.currentTimeMillis());
+        } catch (SQLException e) {
+            // Other nodes still drop the sessions once they see the user deleted or inactive
+            logger.error("Could not revoke sessions of user " + userId, e);
+        }
+    }
+
+    /**
+     * Writes when sessions were last used here, then drops the sessions that
+     * are revoked, idle on every node or whose user is gone or inactive, and
+     * takes up role changes. Also forgets tokens past their maximum age.
+     */
+    void sync(long now) {
+        long since = lastSyncAt;
+        lastSyncAt = now;
+        Map<String, Session> byHash = new HashMap<>();
+        Map<String, Long> touched = new HashMap<>();
+        for (Session session : sessions.values()) {
+            String hash = TokenCodec.hash(session.getToken());
+            byHash.put(hash, session);
+            if (session.getLastAccessMillis() >= since) {
+                touched.put(hash, session.getLastAccessMillis());
+            }
+        }
+        try {
+            ledger.touched(touched);
+            Map<String, SessionLedger.TokenState> states = ledger.lookup(byHash.keySet());
+            List<Session> idle = new ArrayList<>();
+            int dropped = 0;
+            for (Map.Entry<String, Session> entry : byHash.entrySet()) {
+                Session session = entry.getValue();
+                SessionLedger.TokenState state = states.get(entry.getKey());
+                if (state == null || state.revoked || !state.active || state.role == null) {
+                    if (sessions.remove(session.getToken(), session)) {
+                        dropped++;
+                    }
+                } else if (now - Math.max(state.lastAccess, session.getLastAccessMillis()) > timeoutMillis) {
+                    idle.add(session);
+                } else {
+                    session.setRole(state.role);
+                    if (state.lastAccess > session.getLastAccessMillis()) {
+                        session.touch(state.lastAccess);
+                    }
+                }
+            }
+            for (Session session : idle) {
+                expire(session, now);
+            }
+            ledger.purge(now);
+            if (dropped + idle.size() > 0) {
+                logger.info("Expired " + idle.size() + " sessions, dropped " + dropped + " revoked");
+            }
+        } catch (SQLException e) {
+            logger.warn("Could not sync sessions", e);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,133 @@
+package iuh.fit.se.server.session;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Session tokens: a random id, the user, role and issue time, signed with
+ * HMAC-SHA256 so that every node sharing the key can read them. The role in
+ * a token is only what it was at login; SessionStore takes the current one
+ * from the database.
+ */
+final class TokenCodec {
+    private static final int ID_BYTES = 16;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long maxAgeMillis;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * What a token says about its user.
+     */
+    static final class Claims {
+        final int userId;
+        final String username;
+        final String role;
+        final long issuedAt;
+
+        Claims(int userId, String username, String role, long issuedAt) {
+            this.userId = userId;
+            this.username = username;
+            this.role = role;
+            this.issuedAt = issuedAt;
+        }
+    }
+
+    TokenCodec(byte[] key, long maxAgeMillis) {
+        this.key = new SecretKeySpec(key, MAC_ALGORITHM);
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    String issue(int userId, String username, String role, long issuedAt) {
+        byte[] id = new byte[ID_BYTES];
+        random.nextBytes(id);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(id);
+            out.writeInt(userId);
+            out.writeUTF(username);
+            out.writeUTF(role);
+            out.writeLong(issuedAt);
+            byte[] payload = bytes.toByteArray();
+
+            Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+            return encoder.encodeToString(payload) + "." + encoder.encodeToString(sign(payload));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode session token", e);
+        }
+    }
+
+    /**
+     * @return the token's claims, or null if it is malformed, not signed with
+     *         this key, or older than the maximum age at now
+     */
+    Claims verify(String token, long now) {
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            byte[] payload = decoder.decode(token.substring(0, dot));
+            byte[] signature = decoder.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            in.skipBytes(ID_BYTES);
+            Claims claims = new Claims(in.readInt(), in.readUTF(), in.readUTF(), in.readLong());
+            if (now - claims.issuedAt > maxAgeMillis) {
+                return null;
+            }
+            return claims;
+        } catch (IllegalArgumentException | IOException e) {
+            // Not base64 or truncated: not a token we issued
+            return null;
+        }
+    }
+
+    /**
+     * @return the key a token is stored under in the session table; the token itself is not stored
+     */
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            // Mac is not thread-safe, and tokens are signed only at login and adoption
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package iuh.fit.se.server.stock;
+
+import iuh.fit.se.server.database.DatabaseManager;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Units available per product, kept in memory so that a sale is decided by
+ * a compare-and-set instead of a row lock. A sale reserves its units here
+ * first, then writes them with persist() in its transaction, and gives the
+ * Reservation back with release() if that transaction does not commit. A product's
+ * count is loaded from inventory.quantity_current the first time it is sold;
+ * a product without an inventory row gets one then, holding products.quantity.
+ * <p>
+ * The counts are this server's view only: stock changed elsewhere (another
+ * server node, a manual edit) is not seen until invalidate(). persist() is
+ * conditional on the database still having the units, so such a sale fails
+ * instead of overselling; the caller then invalidates the products.
+ */
+public class StockEngine {
+    private static final Logger logger = Logger.getLogger(StockEngine.class);
+
+    private static volatile StockEngine instance;
+    private static final ReentrantLock instanceLock = new ReentrantLock();
+
+    private final Map<Integer, StripedCounter> counters = new ConcurrentHashMap<>();
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder persistFailures = new LongAdder();
+
+    /**
+     * Units taken by reserve(), from the counters they were taken from.
+     */
+    public static final class Reservation {
+        private final List<StripedCounter> counters = new ArrayList<>();
+        private final List<Integer> units = new ArrayList<>();
+        private int shortProduct = -1;
+
+        private Reservation() {
+        }
+
+        public boolean isReserved() {
+            return shortProduct < 0;
+        }
+
+        /**
+         * @return the id of a product without enough units, or -1 if all were reserved
+         */
+        public int getShortProduct() {
+            return shortProduct;
+        }
+    }
+
+    private StockEngine() {
+    }
+
+    public static StockEngine getInstance() {
+        StockEngine current = instance;
+        if (current != null) {
+            return current;
+        }
+        instanceLock.lock();
+        try {
+            if (instance == null) {
+                instance = new StockEngine();
+            }
+            return instance;
+        } finally {
+            instanceLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the units of every product, or none of them.
+     *
+     * @param quantities units per product id
+     * @return the reservation; if some product is short, nothing is taken and
+     *         getShortProduct() tells which
+     * @throws IllegalArgumentException if a quantity is not positive
+     */
+    public Reservation reserve(Map<Integer, Integer> quantities) throws SQLException {
+        for (int quantity : quantities.values()) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Số lượng không hợp lệ: " + quantity);
+            }
+        }
+        Reservation reservation = new Reservation();
+        for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+            StripedCounter counter = counter(entry.getKey());
+            if (!counter.tryTake(entry.getValue())) {
+                giveBack(reservation);
+                reservation.shortProduct = entry.getKey();
+                rejected.increment();
+                return reservation;
+            }
+            reservation.counters.add(counter);
+            reservation.units.add(entry.getValue());
+        }
+        reserved.increment();
+        return reservation;
+    }
+
+    /**
+     * Gives back the units of a reservation whose sale was not committed.
+     */
+    public void release(Reservation reservation) {
+        if (reservation.isReserved()) {
+            giveBack(reservation);
+            released.increment();
+        }
+    }
+
+    // Only to the counters the units came from: one invalidated meanwhile is no
+    // longer in the map, and its replacement was loaded from the database, which
+    // never had these units taken, so they are dropped with the old counter
+    private void giveBack(Reservation reservation) {
+        for (int i = 0; i < reservation.counters.size(); i++) {
+            reservation.counters.get(i).add(reservation.units.get(i));
+        }
+        reservation.counters.clear();
+        reservation.units.clear();
+    }
+
+    /**
+     * Writes a reserved sale to inventory (quantity_out, quantity_current) and
+     * products.quantity, with one statement, only if every product still has
+     * the units in inventory.quantity_current.
+     *
+     * @return false, changing nothing, if some product is short in the database
+     */
+    public boolean persist(Connection connection, Map<Integer, Integer> quantities) throws SQLException {
+        StringBuilder byProduct = new StringBuilder("CASE i.product_id");
+        for (int i = 0; i < quantities.size(); i++) {
+            byProduct.append(" WHEN ? THEN ?");
+        }
+        byProduct.append(" END");
+        StringBuilder sql = new StringBuilder("UPDATE inventory i JOIN products p ON p.id = i.product_id SET ")
+                .append("i.quantity_out = i.quantity_out + ").append(byProduct)
+                .append(", i.quantity_current = i.quantity_current - ").append(byProduct)
+                .append(", p.quantity = p.quantity - ").append(byProduct)
+                .append(" WHERE i.quantity_current >= ").append(byProduct)
+                .append(" AND i.product_id IN (");
+        for (int i = 0; i < quantities.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int repeat = 0; repeat < 4; repeat++) {
+                for (Map.Entry<Integer, Integer> entry : quantities.entrySet()) {
+                    stmt.setInt(index++, entry.getKey());
+                    stmt.setInt(index++, entry.getValue());
+                }
+            }
+            for (int productId : quantities.keySet()) {
+                stmt.setInt(index++, productId);
+            }
+            // Matched rows, counted in both tables
+            if (stmt.executeUpdate() == 2 * quantities.size()) {
+                return true;
+            }
+        }
+        persistFailures.increment();
+        return false;
+    }
+
+    /**
+     * Forgets the in-memory count, so the next sale reloads it from the database.
+     */
+    public void invalidate(int productId) {
+        counters.remove(productId);
+    }
+
+    public void invalidate(Collection<Integer> productIds) {
+        for (int productId : productIds) {
+            invalidate(productId);
+        }
+    }
+
+    private StripedCounter counter(int productId) throws SQLException {
+        StripedCounter counter = counters.get(productId);
+        if (counter != null) {
+            return counter;
+        }
+        int units = load(productId);
+        if (units < 0) {
+            // No such product: nothing to sell, and nothing worth keeping
+            return new StripedCounter(0);
+        }
+        // Units are only taken through a counter in the map, so none can go between this load and the insert
+        StripedCounter loaded = new StripedCounter(units);
+        counter = counters.putIfAbsent(productId, loaded);
+        return counter != null ? counter : loaded;
+    }
+
+    /**
+     * @return inventory.quantity_current, or -1 if there is no such product
+     */
+    private int load(int productId) throws SQLException {
+        try (Connection connection = DatabaseManager.getInstance().getConnection()) {
+            int units = selectCurrent(connection, productId);
+            if (units < 0) {
+                createMissingInventory(connection, productId);
+                // Still none if there is no such product
+                units = selectCurrent(connection, productId);
+            }
+            logger.debug("Loaded stock of product " + productId + ": " + units);
+            return units;
+        }
+    }
+
+    private int selectCurrent(Connection connection, int productId) throws SQLException {
+        String sql = "SELECT quantity_current FROM inventory WHERE product_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, productId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Gives a product created without an inventory row (before rows were
+     * created with the product, or by hand) one holding products.quantity,
+     * so it can be sold as before. Does nothing if the row exists or there is
+     * no such product.
+     */
+    public void createMissingInventory(Connection connection, int productId) throws SQLException {
+        // IGNORE: another node may create the row at the same time
+        String sql = "INSERT IGNORE INTO inventory (product_id, quantity_in, quantity_current) " +
+                "SELECT id, quantity, quantity FROM products WHERE id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, productId);
+            if (stmt.executeUpdate() > 0) {
+                logger.info("Created missing inventory row of product " + productId);
+            }
+        }
+    }
+
+    /**
+     * @return units this server would still sell of a product, or -1 if it is not loaded
+     */
+    public int getAvailable(int productId) {
+        StripedCounter counter = counters.get(productId);
+        return counter != null ? counter.sum() : -1;
+    }
+
+    public int getTrackedProducts() { return counters.size(); }
+    public long getReserved() { return reserved.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getReleased() { return released.sum(); }
+    public long getPersistFailures() { return persistFailures.sum(); }
+}
@@ -0,0 +1,96 @@
+package iuh.fit.se.server.stock;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Units of one product, spread over a few cells so that threads buying the
+ * same product mostly compare-and-set different cache lines. A cell never
+ * goes below zero, so the units taken never exceed the units there are.
+ * <p>
+ * A thread takes from its own cell without locking. Only when that cell
+ * cannot cover the request (the product is running low) does it take the
+ * drain lock and collect units from all cells. Drains are serialized, so a
+ * drain that comes up short does not make another one fail while it holds
+ * the partial units.
+ */
+class StripedCounter {
+    // Ints per cell: 16 * 4 bytes keeps each cell on its own 64-byte line
+    private static final int PAD = 16;
+    private static final int STRIPES = stripeCount();
+
+    private final AtomicIntegerArray cells = new AtomicIntegerArray(STRIPES * PAD);
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    StripedCounter(int units) {
+        int share = Math.max(units, 0) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PAD, share);
+        }
+        cells.addAndGet(0, Math.max(units, 0) - share * STRIPES);
+    }
+
+    private static int stripeCount() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return Math.min(Integer.highestOneBit(Math.max(cpus, 1) * 2 - 1), 16);
+    }
+
+    private static int home() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) * 0x9E3779B9L >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+     * @return true if the units were taken, false (taking none) if there are not enough
+     */
+    boolean tryTake(int units) {
+        int home = home() * PAD;
+        int current;
+        while ((current = cells.get(home)) >= units) {
+            if (cells.compareAndSet(home, current, current - units)) {
+                return true;
+            }
+        }
+        return drain(home / PAD, units);
+    }
+
+    private boolean drain(int home, int units) {
+        drainLock.lock();
+        try {
+            int taken = 0;
+            for (int i = 0; i < STRIPES && taken < units; i++) {
+                int cell = ((home + i) & (STRIPES - 1)) * PAD;
+                int current;
+                while ((current = cells.get(cell)) > 0) {
+                    int take = Math.min(current, units - taken);
+                    if (cells.compareAndSet(cell, current, current - take)) {
+                        taken += take;
+                        break;
+                    }
+                }
+            }
+            if (taken == units) {
+                return true;
+            }
+            cells.addAndGet(home * PAD, taken);
+            return false;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    void add(int units) {
+        cells.addAndGet(home() * PAD, units);
+    }
+
+    /**
+     * @return units left; exact only when nothing is being taken or added
+     */
+    int sum() {
+        int sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+}
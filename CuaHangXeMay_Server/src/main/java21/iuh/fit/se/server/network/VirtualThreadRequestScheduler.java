@@ -0,0 +1,81 @@
+package iuh.fit.se.server.network;
+
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.metrics.SchedulerStats;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual-thread version of PooledRequestScheduler: every request gets its
+ * own virtual thread, and a semaphore per action class caps how many run at
+ * once. Requests beyond threads + queue capacity are refused.
+ */
+public class VirtualThreadRequestScheduler implements RequestScheduler {
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vt-req-", 0).factory());
+    private final Map<ActionClass, Semaphore> permits = new EnumMap<>(ActionClass.class);
+    private final Map<ActionClass, AtomicInteger> admitted = new EnumMap<>(ActionClass.class);
+
+    public VirtualThreadRequestScheduler() {
+        for (ActionClass actionClass : ActionClass.values()) {
+            permits.put(actionClass, new Semaphore(Math.max(1, ServerSettings.getThreads(actionClass))));
+            admitted.put(actionClass, new AtomicInteger());
+        }
+    }
+
+    @Override
+    public boolean submit(ActionClass actionClass, Runnable task) {
+        int limit = Math.max(1, ServerSettings.getThreads(actionClass))
+                + Math.max(1, ServerSettings.getQueueCapacity(actionClass));
+        AtomicInteger count = admitted.get(actionClass);
+        if (count.incrementAndGet() > limit) {
+            count.decrementAndGet();
+            SchedulerStats.rejected(actionClass);
+            return false;
+        }
+
+        Semaphore semaphore = permits.get(actionClass);
+        Runnable tracked = SchedulerStats.track(actionClass, task);
+        try {
+            executor.execute(() -> {
+                semaphore.acquireUninterruptibly();
+                try {
+                    tracked.run();
+                } finally {
+                    semaphore.release();
+                    count.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down: refused like a full queue, as PooledRequestScheduler does
+            count.decrementAndGet();
+            SchedulerStats.rejected(actionClass);
+            return false;
+        }
+        SchedulerStats.accepted(actionClass);
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,17 @@
+package iuh.fit.se.server.network;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Blocking server that runs every connection and every request on its own
+ * virtual thread, with per-class concurrency caps
+ * (VirtualThreadRequestScheduler). Only compiled with the java21 profile
+ * (mvn -Pjava21 package) and loaded by ServerMain through reflection.
+ */
+public class VirtualThreadSocketServer extends SocketServer {
+
+    public VirtualThreadSocketServer() {
+        super(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vt-conn-", 0).factory()),
+                new VirtualThreadRequestScheduler());
+    }
+}
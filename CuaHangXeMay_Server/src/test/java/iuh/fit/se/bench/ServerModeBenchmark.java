@@ -0,0 +1,191 @@
+package iuh.fit.se.bench;
+
+import iuh.fit.se.common.*;
+import iuh.fit.se.server.ServerMain;
+import iuh.fit.se.server.action.ActionClass;
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.network.NetworkServer;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares server modes (blocking thread pool, virtual threads, NIO) with
+ * 100 / 1,000 / 5,000 concurrent clients, each sending GET_PRODUCT_BY_ID.
+ *
+ * Needs the MariaDB database from database/init.sql. Virtual-thread mode needs
+ * a Java 21 runtime and a build with -Pjava21. Example:
+ *
+ *   mvn -Pjava21 test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -Xss256k -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *        iuh.fit.se.bench.ServerModeBenchmark blocking virtual nio
+ *
+ * 5,000 clients in blocking mode means ~10,000 platform threads in this JVM,
+ * so raise "ulimit -u" if thread creation fails.
+ */
+public class ServerModeBenchmark {
+    private static final int[] CLIENT_COUNTS = {100, 1000, 5000};
+    private static final int REQUESTS_PER_CLIENT = 20;
+    private static final int BASE_PORT = 19999;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String[] modes = args.length > 0 ? args : new String[]{ServerSettings.MODE_BLOCKING, ServerSettings.MODE_VIRTUAL};
+        int port = BASE_PORT;
+        // Every bench client logs in from the same address; measure the server, not the rate limits
+        for (ActionClass actionClass : ActionClass.values()) {
+            ServerSettings.setRateLimit(actionClass, 0);
+        }
+
+        System.out.printf("%-9s %8s %12s %10s %10s %14s%n",
+                "mode", "clients", "req/s", "p50 ms", "p99 ms", "server threads");
+        for (String mode : modes) {
+            for (int clients : CLIENT_COUNTS) {
+                run(mode, clients, port++);
+            }
+        }
+    }
+
+    private static void run(String mode, int clients, int port) throws Exception {
+        ServerSettings.setPort(port);
+        NetworkServer server = ServerMain.createServer(mode);
+        Thread serverThread = new Thread(server::start, "bench-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort(port);
+
+        // NIO only speaks the framed protocol; the other modes keep the legacy stream for comparison
+        boolean framed = ServerSettings.MODE_NIO.equals(mode);
+        int baselineThreads = threads.getThreadCount();
+        long[][] latencies = new long[clients][REQUESTS_PER_CLIENT];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+
+        for (int i = 0; i < clients; i++) {
+            final int clientIndex = i;
+            Thread client = new Thread(null, () -> {
+                try (BenchClient bench = new BenchClient(port, framed)) {
+                    bench.login();
+                    connected.countDown();
+                    go.await();
+                    for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        Request request = new Request(Constants.GET_PRODUCT_BY_ID);
+                        request.addData("id", 1 + (r % 10));
+                        long start = System.nanoTime();
+                        Response response = bench.send(request);
+                        latencies[clientIndex][r] = System.nanoTime() - start;
+                        if (!response.isSuccess()) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    connected.countDown();
+                } finally {
+                    done.countDown();
+                }
+            }, "bench-client-" + i, 256 * 1024);
+            client.setDaemon(true);
+            client.start();
+        }
+
+        connected.await();
+        int peakThreads = threads.getThreadCount();
+        long start = System.nanoTime();
+        go.countDown();
+        while (!done.await(50, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+            peakThreads = Math.max(peakThreads, threads.getThreadCount());
+        }
+        long elapsed = System.nanoTime() - start;
+        server.stop();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).filter(l -> l > 0).sorted().toArray();
+        double throughput = all.length / (elapsed / 1e9);
+        // Platform threads only; the benchmark's own client threads are subtracted
+        int serverThreads = peakThreads - baselineThreads - clients;
+
+        System.out.printf("%-9s %8d %12.0f %10.2f %10.2f %14d%s%n",
+                mode, clients, throughput, percentile(all, 50), percentile(all, 99), Math.max(0, serverThreads),
+                failures.get() > 0 ? "  (" + failures.get() + " failures)" : "");
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket ignored = new Socket(Constants.SERVER_HOST, port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    private static class BenchClient implements Closeable {
+        private final Socket socket;
+        private MessageCodec codec;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+        private DataOutputStream frameOut;
+        private DataInputStream frameIn;
+        private String token;
+
+        BenchClient(int port, boolean framed) throws IOException {
+            this.socket = new Socket(Constants.SERVER_HOST, port);
+            if (framed) {
+                frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                frameIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                FrameIO.writeClientHello(frameOut, BinaryCodec.ID, (byte) 0);
+                codec = FrameIO.readServerHello(frameIn).getCodec();
+            } else {
+                out = new ObjectOutputStream(socket.getOutputStream());
+                out.flush();
+                in = new ObjectInputStream(socket.getInputStream());
+            }
+        }
+
+        void login() throws IOException, ClassNotFoundException {
+            Request request = new Request(Constants.LOGIN);
+            request.addData("username", "admin");
+            request.addData("password", "admin123");
+            Response response = send(request);
+            if (!response.isSuccess()) {
+                throw new IOException("Login failed: " + response.getMessage());
+            }
+            token = (String) ((Map<?, ?>) response.getData()).get("token");
+        }
+
+        Response send(Request request) throws IOException, ClassNotFoundException {
+            request.setToken(token);
+            if (codec != null) {
+                FrameIO.writeFrame(frameOut, (byte) 0, 0, codec.encode(request));
+                return (Response) codec.decode(FrameIO.readFrame(frameIn).getPayload());
+            }
+            out.reset();
+            out.writeObject(request);
+            out.flush();
+            return (Response) in.readObject();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package iuh.fit.se.bench;
+
+import iuh.fit.se.server.config.ServerSettings;
+import iuh.fit.se.server.database.DatabaseManager;
+import iuh.fit.se.server.stock.StockEngine;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 64 threads buying one unit at a time of the same product, more often than
+ * there is stock, three ways:
+ *
+ *   check-then-update  the old path: read the quantity, then an unconditional
+ *                      "quantity = quantity - 1" (the check and the write race)
+ *   conditional-sql    one conditional UPDATE per attempt (StockEngine.persist
+ *                      alone): correct, but every attempt, sold out or not,
+ *                      queues for the row lock
+ *   stock-engine       compare-and-set reservation in memory, then the
+ *                      conditional UPDATE; sold-out attempts never reach the database
+ *
+ * Needs the MariaDB database from database/init.sql. The product's stock is
+ * set for each run and put back at the end.
+ *
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) iuh.fit.se.bench.StockContentionBenchmark [productId]
+ */
+public class StockContentionBenchmark {
+    private static final int THREADS = 64;
+    private static final int STOCK = 500;
+    private static final int ATTEMPTS_PER_THREAD = 20;
+
+    private interface Purchase {
+        boolean buy(int productId) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int productId = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        ServerSettings.setDbPoolSize(THREADS);
+        DatabaseManager db = DatabaseManager.getInstance();
+        StockEngine engine = StockEngine.getInstance();
+        int[] original = readStock(db, productId);
+
+        System.out.printf("%d threads x %d attempts, %d units in stock%n", THREADS, ATTEMPTS_PER_THREAD, STOCK);
+        System.out.printf("%-18s %8s %9s %11s %13s %10s %12s%n",
+                "path", "sold", "refused", "inventory", "products.qty", "oversold", "attempts/s");
+        try {
+            run("check-then-update", db, productId, original[2], id -> checkThenUpdate(db, id));
+            run("conditional-sql", db, productId, original[2], id -> {
+                try (Connection connection = db.getConnection()) {
+                    return engine.persist(connection, Map.of(id, 1));
+                }
+            });
+            run("stock-engine", db, productId, original[2], id -> {
+                Map<Integer, Integer> units = Map.of(id, 1);
+                if (!engine.reserve(units).isReserved()) {
+                    return false;
+                }
+                try (Connection connection = db.getConnection()) {
+                    if (engine.persist(connection, units)) {
+                        return true;
+                    }
+                }
+                engine.invalidate(id);
+                return false;
+            });
+        } finally {
+            setStock(db, productId, original[0], original[1], original[2]);
+            engine.invalidate(productId);
+            db.closeConnection();
+        }
+    }
+
+    private static void run(String name, DatabaseManager db, int productId, int quantityOut,
+                            Purchase purchase) throws Exception {
+        setStock(db, productId, STOCK, STOCK, quantityOut);
+        StockEngine.getInstance().invalidate(productId);
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        for (int i = 0; i < THREADS; i++) {
+            Thread buyer = new Thread(() -> {
+                try {
+                    go.await();
+                    for (int a = 0; a < ATTEMPTS_PER_THREAD; a++) {
+                        try {
+                            (purchase.buy(productId) ? sold : refused).incrementAndGet();
+                        } catch (SQLException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "buyer-" + i);
+            buyer.setDaemon(true);
+            buyer.start();
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        int[] after = readStock(db, productId);
+        int oversold = Math.max(0, sold.get() - STOCK);
+        System.out.printf("%-18s %8d %9d %11d %13d %10d %12.0f%s%n",
+                name, sold.get(), refused.get(), after[0], after[1], oversold,
+                THREADS * ATTEMPTS_PER_THREAD / (elapsed / 1e9),
+                failures.get() > 0 ? "  (" + failures.get() + " errors)" : "");
+    }
+
+    private static boolean checkThenUpdate(DatabaseManager db, int productId) throws SQLException {
+        try (Connection connection = db.getConnection()) {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT quantity FROM products WHERE id = ?")) {
+                stmt.setInt(1, productId);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next() || rs.getInt(1) < 1) {
+                    return false;
+                }
+            }
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "UPDATE products SET quantity = quantity + ? WHERE id = ?")) {
+                stmt.setInt(1, -1);
+                stmt.setInt(2, productId);
+                stmt.executeUpdate();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return inventory.quantity_current, products.quantity and inventory.quantity_out
+     */
+    private static int[] readStock(DatabaseManager db, int productId) throws SQLException {
+        String sql = "SELECT i.quantity_current, p.quantity, i.quantity_out FROM inventory i " +
+                "JOIN products p ON p.id = i.product_id WHERE i.product_id = ?";
+        try (Connection connection = db.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, productId);
+            ResultSet rs = stmt.executeQuery();
+            if (!rs.next()) {
+                throw new IllegalArgumentException("No inventory row for product " + productId);
+            }
+            return new int[]{rs.getInt(1), rs.getInt(2), rs.getInt(3)};
+        }
+    }
+
+    private static void setStock(DatabaseManager db, int productId, int inventory, int products, int quantityOut)
+            throws SQLException {
+        String sql = "UPDATE inventory i JOIN products p ON p.id = i.product_id " +
+                "SET i.quantity_current = ?, p.quantity = ?, i.quantity_out = ? WHERE i.product_id = ?";
+        try (Connection connection = db.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, inventory);
+            stmt.setInt(2, products);
+            stmt.setInt(3, quantityOut);
+            stmt.setInt(4, productId);
+            stmt.executeUpdate();
+        }
+    }
+}
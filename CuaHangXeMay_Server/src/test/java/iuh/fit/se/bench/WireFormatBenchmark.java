@@ -0,0 +1,195 @@
+package iuh.fit.se.bench;
+
+import iuh.fit.se.common.*;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bytes on the wire and encode+decode time per response for the three
+ * protocols: the legacy ObjectOutputStream stream (reset() per message, as
+ * ClientHandler does), framed Java serialization, and framed BinaryCodec,
+ * the framed ones also with PayloadCompressor (Deflate) applied.
+ * Uses synthetic GET_ALL_PRODUCTS / GET_ALL_ORDERS replies, no database needed.
+ *
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) iuh.fit.se.bench.WireFormatBenchmark
+ */
+public class WireFormatBenchmark {
+    private static final int PRODUCTS = 200;
+    private static final int ORDERS = 200;
+    private static final int ITEMS_PER_ORDER = 3;
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        Response products = Response.success("Lấy danh sách sản phẩm thành công", products());
+        Response orders = Response.success("Lấy danh sách đơn hàng thành công", orders());
+
+        System.out.printf("%-18s %-11s %12s %14s%n", "response", "protocol", "bytes", "enc+dec us");
+        run("GET_ALL_PRODUCTS", products);
+        run("GET_ALL_ORDERS", orders);
+    }
+
+    private static void run(String name, Response response) throws Exception {
+        LegacyStream legacy = new LegacyStream();
+        MessageCodec serialized = FrameIO.codecFor(SerializedCodec.ID);
+        MessageCodec binary = FrameIO.codecFor(BinaryCodec.ID);
+
+        // Sanity check: decoding and re-encoding must give back the same bytes
+        byte[] encoded = binary.encode(response);
+        if (!Arrays.equals(encoded, binary.encode(binary.decode(encoded)))) {
+            throw new IllegalStateException("Binary round trip changed the payload");
+        }
+
+        print(name, "legacy", legacy.roundTrip(response), time(() -> legacy.roundTrip(response)));
+        print(name, "framed", frameSize(serialized, response), time(() -> roundTrip(serialized, response)));
+        print(name, "binary", frameSize(binary, response), time(() -> roundTrip(binary, response)));
+
+        PayloadCompressor compressor = new PayloadCompressor(0);
+        print(name, "framed+zip", compressedFrameSize(serialized, compressor, response),
+                time(() -> compressedRoundTrip(serialized, compressor, response)));
+        print(name, "binary+zip", compressedFrameSize(binary, compressor, response),
+                time(() -> compressedRoundTrip(binary, compressor, response)));
+        compressor.close();
+    }
+
+    private static int compressedFrameSize(MessageCodec codec, PayloadCompressor compressor,
+                                           Response response) throws IOException {
+        return FrameIO.HEADER_SIZE + compressor.compress(codec.encode(response)).length;
+    }
+
+    private static int compressedRoundTrip(MessageCodec codec, PayloadCompressor compressor,
+                                           Response response) throws IOException {
+        byte[] payload = compressor.compress(codec.encode(response));
+        codec.decode(compressor.decompress(payload));
+        return payload.length;
+    }
+
+    private static int frameSize(MessageCodec codec, Response response) throws IOException {
+        return FrameIO.HEADER_SIZE + codec.encode(response).length;
+    }
+
+    private static int roundTrip(MessageCodec codec, Response response) throws IOException {
+        byte[] payload = codec.encode(response);
+        codec.decode(payload);
+        return payload.length;
+    }
+
+    private static double time(Task task) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1e3 / ITERATIONS;
+    }
+
+    private static void print(String name, String protocol, int bytes, double micros) {
+        System.out.printf("%-18s %-11s %12d %14.1f%n", name, protocol, bytes, micros);
+    }
+
+    private interface Task {
+        int run() throws Exception;
+    }
+
+    /**
+     * One long-lived object stream pair, like a legacy client connection.
+     */
+    private static class LegacyStream {
+        private static final byte[] STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ObjectOutputStream out;
+
+        LegacyStream() throws IOException {
+            out = new ObjectOutputStream(bytes);
+            out.flush();
+        }
+
+        int roundTrip(Response response) throws IOException, ClassNotFoundException {
+            bytes.reset();
+            out.reset();
+            out.writeObject(response);
+            out.flush();
+            int size = bytes.size();
+
+            // Replay the stream header so a fresh reader can decode this message
+            ByteArrayOutputStream message = new ByteArrayOutputStream(STREAM_HEADER.length + size);
+            message.write(STREAM_HEADER);
+            bytes.writeTo(message);
+            new ObjectInputStream(new ByteArrayInputStream(message.toByteArray())).readObject();
+            bytes.reset();
+            return size;
+        }
+    }
+
+    private static List<Product> products() {
+        String[] brands = {"Honda", "Yamaha", "Suzuki", "Piaggio", "SYM"};
+        String[] colors = {"Đỏ", "Đen", "Trắng", "Xanh dương", "Bạc"};
+        List<Product> list = new ArrayList<>();
+        for (int i = 1; i <= PRODUCTS; i++) {
+            Product p = new Product();
+            p.setId(i);
+            p.setCategoryId(1 + i % 4);
+            p.setCategoryName("Xe tay ga");
+            p.setName("Xe máy mẫu " + i);
+            p.setModel("MD-" + (2020 + i % 5));
+            p.setBrand(brands[i % brands.length]);
+            p.setColor(colors[i % colors.length]);
+            p.setPrice(new BigDecimal(25_000_000L + i * 150_000L).setScale(2));
+            p.setQuantity(i % 30);
+            p.setDescription("Động cơ 125cc, tiết kiệm nhiên liệu, bảo hành 3 năm");
+            p.setImagePath("images/products/" + i + ".jpg");
+            p.setStatus("ACTIVE");
+            p.setCreatedAt(new Timestamp(1_700_000_000_000L + i * 60_000L));
+            p.setUpdatedAt(new Timestamp(1_700_000_000_000L + i * 90_000L));
+            list.add(p);
+        }
+        return list;
+    }
+
+    private static List<Order> orders() {
+        List<Order> list = new ArrayList<>();
+        for (int i = 1; i <= ORDERS; i++) {
+            Order o = new Order();
+            o.setId(i);
+            o.setOrderCode(String.format("DH%08d", i));
+            o.setCustomerId(1 + i % 50);
+            o.setCustomerName("Nguyễn Văn Khách " + (i % 50));
+            o.setUserId(1 + i % 3);
+            o.setUserName("Nhân viên " + (i % 3));
+            o.setStatus("COMPLETED");
+            o.setPaymentMethod("CASH");
+            o.setNotes(i % 4 == 0 ? "Giao hàng tận nơi" : null);
+            o.setCreatedAt(new Timestamp(1_700_000_000_000L + i * 3_600_000L));
+            o.setUpdatedAt(o.getCreatedAt());
+
+            List<OrderItem> items = new ArrayList<>();
+            BigDecimal total = BigDecimal.ZERO;
+            for (int j = 1; j <= ITEMS_PER_ORDER; j++) {
+                OrderItem item = new OrderItem();
+                item.setId(i * ITEMS_PER_ORDER + j);
+                item.setOrderId(i);
+                item.setProductId(1 + (i + j) % PRODUCTS);
+                item.setProductName("Xe máy mẫu " + item.getProductId());
+                item.setQuantity(1 + j % 2);
+                item.setUnitPrice(new BigDecimal(30_000_000L + j * 500_000L).setScale(2));
+                item.setTotalPrice(item.getUnitPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+                total = total.add(item.getTotalPrice());
+                items.add(item);
+            }
+            o.setOrderItems(items);
+            o.setTotalAmount(total);
+            o.setDiscountAmount(BigDecimal.ZERO.setScale(2));
+            o.setFinalAmount(total);
+            list.add(o);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,171 @@
+package iuh.fit.se.common;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class BinaryCodecTest extends TestCase {
+    private final BinaryCodec codec = new BinaryCodec();
+
+    private Object roundTrip(Object value) throws IOException {
+        return codec.decode(codec.encode(value));
+    }
+
+    private void assertRejected(byte... payload) {
+        try {
+            codec.decode(payload);
+            fail("Decoded " + Arrays.toString(payload));
+        } catch (IOException expected) {
+            // Refused as malformed, not with an unchecked exception or an Error
+        }
+    }
+
+    public void testScalarsRoundTrip() throws IOException {
+        assertNull(roundTrip(null));
+        assertEquals("xe máy", roundTrip("xe máy"));
+        assertEquals("", roundTrip(""));
+        assertEquals(-42, roundTrip(-42));
+        assertEquals(Integer.MIN_VALUE, roundTrip(Integer.MIN_VALUE));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE));
+        assertEquals(Boolean.TRUE, roundTrip(true));
+        assertEquals(1.5, roundTrip(1.5));
+        assertEquals(new BigDecimal("-12.50"), roundTrip(new BigDecimal("-12.50")));
+        BigDecimal big = new BigDecimal("123456789012345678901234567890.123");
+        assertEquals(big, roundTrip(big));
+
+        Timestamp time = new Timestamp(1_700_000_000_123L);
+        time.setNanos(123_456_789);
+        assertEquals(time, roundTrip(time));
+    }
+
+    public void testCollectionsRoundTrip() throws IOException {
+        List<Object> list = new ArrayList<>(Arrays.asList(1, "two", null, 3L));
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", list);
+        map.put("empty", new ArrayList<>());
+
+        assertEquals(map, roundTrip(map));
+    }
+
+    public void testRequestAndResponseRoundTrip() throws IOException {
+        Request request = new Request(Constants.GET_PRODUCT_BY_ID);
+        request.setToken("token");
+        request.addData("id", 7);
+
+        Request decoded = (Request) roundTrip(request);
+
+        assertEquals(Constants.GET_PRODUCT_BY_ID, decoded.getType());
+        assertEquals("token", decoded.getToken());
+        assertEquals(7, decoded.getData("id"));
+
+        Response page = Response.success("ok", Arrays.asList(1, 2));
+        page.setContinuationToken("next");
+        Response decodedPage = (Response) roundTrip(page);
+
+        assertEquals(Constants.SUCCESS, decodedPage.getStatus());
+        assertEquals("ok", decodedPage.getMessage());
+        assertEquals("next", decodedPage.getContinuationToken());
+        assertEquals(Arrays.asList(1, 2), decodedPage.getData());
+        assertNull(((Response) roundTrip(Response.error("lỗi"))).getContinuationToken());
+    }
+
+    public void testDomainObjectsRoundTrip() throws IOException {
+        Product product = new Product();
+        product.setId(3);
+        product.setName("Wave");
+        product.setPrice(new BigDecimal("18000000"));
+        product.setQuantity(5);
+        product.setCreatedAt(new Timestamp(1_700_000_000_000L));
+        Product decodedProduct = (Product) roundTrip(product);
+        assertEquals("Wave", decodedProduct.getName());
+        assertEquals(new BigDecimal("18000000"), decodedProduct.getPrice());
+        assertEquals(5, decodedProduct.getQuantity());
+        assertEquals(product.getCreatedAt(), decodedProduct.getCreatedAt());
+        assertNull(decodedProduct.getUpdatedAt());
+
+        Category category = new Category();
+        category.setName("Xe số");
+        assertEquals("Xe số", ((Category) roundTrip(category)).getName());
+
+        Customer customer = new Customer();
+        customer.setFullName("Nguyễn Văn A");
+        customer.setLoyaltyPoints(10);
+        Customer decodedCustomer = (Customer) roundTrip(customer);
+        assertEquals("Nguyễn Văn A", decodedCustomer.getFullName());
+        assertEquals(10, decodedCustomer.getLoyaltyPoints());
+
+        User user = new User();
+        user.setUsername("admin");
+        user.setRole("ADMIN");
+        assertEquals("ADMIN", ((User) roundTrip(user)).getRole());
+
+        OrderItem item = new OrderItem();
+        item.setProductId(3);
+        item.setQuantity(2);
+        item.setUnitPrice(BigDecimal.TEN);
+        Order order = new Order();
+        order.setOrderCode("ORD1");
+        order.setOrderItems(new ArrayList<>(Arrays.asList(item)));
+        Order decodedOrder = (Order) roundTrip(order);
+        assertEquals("ORD1", decodedOrder.getOrderCode());
+        assertEquals(1, decodedOrder.getOrderItems().size());
+        assertEquals(2, decodedOrder.getOrderItems().get(0).getQuantity());
+        assertEquals(2, ((OrderItem) roundTrip(item)).getQuantity());
+
+        order.setOrderItems(null);
+        assertNull(((Order) roundTrip(order)).getOrderItems());
+    }
+
+    public void testSerializableFallbackRoundTrip() throws IOException {
+        UUID id = UUID.randomUUID();
+        assertEquals(id, roundTrip(id));
+    }
+
+    public void testTruncatedPayloadsAreRejected() throws IOException {
+        Request request = new Request(Constants.LOGIN);
+        request.addData("username", "admin");
+        byte[] payload = codec.encode(request);
+
+        for (int length = 0; length < payload.length; length++) {
+            assertRejected(Arrays.copyOf(payload, length));
+        }
+    }
+
+    public void testHugeCountsAreRejected() {
+        // List and map with Integer.MAX_VALUE elements, in a six-byte payload
+        assertRejected((byte) 8, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x07);
+        assertRejected((byte) 9, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x07);
+        // Serialized value and string longer than the payload
+        assertRejected((byte) 127, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x07);
+        assertRejected((byte) 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x0F);
+        // Big decimal whose unscaled value is longer than the payload
+        assertRejected((byte) 6, (byte) 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x07);
+    }
+
+    public void testNegativeCountsAreRejected() {
+        // zig-zag 1 = -1
+        assertRejected((byte) 8, (byte) 1);
+        assertRejected((byte) 9, (byte) 1);
+        assertRejected((byte) 127, (byte) 1);
+        // Order whose item count is -2
+        byte[] order = new byte[]{16, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3};
+        assertRejected(order);
+    }
+
+    public void testMalformedValuesAreRejected() {
+        // Unknown tag
+        assertRejected((byte) 99);
+        // Request whose data is a string instead of a map
+        assertRejected((byte) 10, (byte) 0, (byte) 0, (byte) 1, (byte) 1, (byte) 'x');
+        // Timestamp with nanos out of range
+        assertRejected((byte) 7, (byte) 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x0F);
+    }
+}
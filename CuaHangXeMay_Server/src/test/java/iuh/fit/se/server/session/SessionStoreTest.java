@@ -0,0 +1,263 @@
+package iuh.fit.se.server.session;
+
+import iuh.fit.se.common.User;
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Two nodes sharing a secret and a ledger, as two servers sharing a database.
+ */
+public class SessionStoreTest extends TestCase {
+    private static final long TIMEOUT = 30 * 60_000L;
+    private static final long MAX_AGE = 12 * 3_600_000L;
+    private static final byte[] SECRET = "secret".getBytes(StandardCharsets.UTF_8);
+
+    private MemoryLedger ledger;
+    private SessionStore nodeA;
+    private SessionStore nodeB;
+    private User admin;
+
+    @Override
+    protected void setUp() {
+        ledger = new MemoryLedger();
+        nodeA = new SessionStore(new TokenCodec(SECRET, MAX_AGE), ledger, TIMEOUT);
+        nodeB = new SessionStore(new TokenCodec(SECRET, MAX_AGE), ledger, TIMEOUT);
+        admin = user(1, "admin", "ADMIN", "ACTIVE");
+    }
+
+    public void testOtherNodeAdoptsToken() throws Exception {
+        String token = nodeA.create(admin).getToken();
+
+        Session adopted = nodeB.resolve(token);
+
+        assertNotNull(adopted);
+        assertEquals("admin", adopted.getUsername());
+        assertTrue(adopted.isAdmin());
+    }
+
+    public void testUnrecordedTokenIsRefused() {
+        // Validly signed, but never issued through the ledger
+        String token = new TokenCodec(SECRET, MAX_AGE).issue(1, "admin", "ADMIN", System.currentTimeMillis());
+
+        assertNull(nodeB.resolve(token));
+    }
+
+    public void testLogoutIsSeenByOtherNodes() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        assertNotNull(nodeB.resolve(token));
+
+        assertTrue(nodeA.invalidate(token));
+
+        assertNull(nodeA.resolve(token));
+        nodeB.sync(System.currentTimeMillis());
+        assertNull(nodeB.resolve(token));
+        assertNull(new SessionStore(new TokenCodec(SECRET, MAX_AGE), ledger, TIMEOUT).resolve(token));
+    }
+
+    public void testLogoutOfTokenNeverUsedHereIsRecorded() throws Exception {
+        String token = nodeA.create(admin).getToken();
+
+        assertFalse(nodeB.invalidate(token));
+
+        nodeA.sync(System.currentTimeMillis());
+        assertNull(nodeA.resolve(token));
+    }
+
+    public void testDeactivatedUserIsLoggedOutOnEveryNode() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        assertNotNull(nodeB.resolve(token));
+
+        admin.setStatus("INACTIVE");
+        ledger.users.put(1, admin);
+        nodeA.updateUser(admin);
+
+        assertNull(nodeA.resolve(token));
+        nodeB.sync(System.currentTimeMillis());
+        assertNull(nodeB.resolve(token));
+    }
+
+    public void testReactivatedUserMustLogInAgain() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        admin.setStatus("INACTIVE");
+        nodeA.updateUser(admin);
+
+        admin.setStatus("ACTIVE");
+        nodeA.updateUser(admin);
+
+        assertNull(nodeB.resolve(token));
+        assertNotNull(nodeB.resolve(nodeA.create(admin).getToken()));
+    }
+
+    public void testDeletedUserIsRefused() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        assertNotNull(nodeB.resolve(token));
+
+        ledger.users.remove(1);
+        nodeA.invalidateUser(1);
+
+        assertNull(nodeA.resolve(token));
+        nodeB.sync(System.currentTimeMillis());
+        assertNull(nodeB.resolve(token));
+    }
+
+    public void testDemotedAdminIsNotAdminOnOtherNodes() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        Session onB = nodeB.resolve(token);
+        assertTrue(onB.isAdmin());
+
+        // Edited on node A: node A applies it at once, node B at its next sync
+        ledger.users.put(1, user(1, "admin", "STAFF", "ACTIVE"));
+        nodeA.updateUser(ledger.users.get(1));
+        assertFalse(nodeA.resolve(token).isAdmin());
+        nodeB.sync(System.currentTimeMillis());
+        assertFalse(nodeB.resolve(token).isAdmin());
+
+        // A node adopting the token later takes the current role, not the signed one
+        SessionStore nodeC = new SessionStore(new TokenCodec(SECRET, MAX_AGE), ledger, TIMEOUT);
+        assertFalse(nodeC.resolve(token).isAdmin());
+    }
+
+    public void testIdleTokenIsNotAdoptedElsewhere() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        long later = System.currentTimeMillis() + TIMEOUT + 1;
+
+        assertNull(nodeA.resolve(token, later));
+        assertNull(nodeB.resolve(token, later));
+        assertNull(nodeB.resolve(token));
+    }
+
+    public void testIdleTokenNeverUsedAnywhereIsNotAdopted() throws Exception {
+        String token = nodeA.create(admin).getToken();
+
+        assertNull(nodeB.resolve(token, System.currentTimeMillis() + TIMEOUT + 1));
+    }
+
+    public void testUseOnOneNodeKeepsSessionAliveOnAnother() throws Exception {
+        long start = System.currentTimeMillis();
+        String token = nodeA.create(admin).getToken();
+        assertNotNull(nodeB.resolve(token, start));
+
+        // Used only on node B, which records it at its sync
+        long later = start + TIMEOUT - 1000;
+        assertNotNull(nodeB.resolve(token, later));
+        nodeB.sync(later);
+
+        assertNotNull(nodeA.resolve(token, start + TIMEOUT + 1000));
+    }
+
+    public void testSyncExpiresSessionsIdleOnEveryNode() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        long later = System.currentTimeMillis() + TIMEOUT + 1;
+
+        nodeA.sync(later);
+
+        assertEquals(0, nodeA.size());
+        assertTrue(ledger.tokens.get(TokenCodec.hash(token)).revoked);
+    }
+
+    public void testLedgerFailureRefusesAdoption() throws Exception {
+        String token = nodeA.create(admin).getToken();
+        ledger.down = true;
+
+        assertNull(nodeB.resolve(token));
+        // Sessions in use are served from memory
+        assertNotNull(nodeA.resolve(token));
+    }
+
+    private static User user(int id, String username, String role, String status) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRole(role);
+        user.setStatus(status);
+        return user;
+    }
+
+    private class MemoryLedger implements SessionLedger {
+        final Map<String, SessionLedger.TokenState> tokens = new HashMap<>();
+        final Map<Integer, User> users = new HashMap<>();
+        boolean down;
+
+        private void check() throws SQLException {
+            if (down) {
+                throw new SQLException("down");
+            }
+        }
+
+        // Joined with the user as the database ledger does
+        private SessionLedger.TokenState joined(SessionLedger.TokenState token) {
+            User user = users.get(token.userId);
+            return new SessionLedger.TokenState(token.userId, token.lastAccess, token.revoked,
+                    user != null ? user.getRole() : null, user != null && "ACTIVE".equals(user.getStatus()));
+        }
+
+        @Override
+        public void issued(String tokenHash, int userId, long issuedAt, long expiresAt) throws SQLException {
+            check();
+            if (userId == admin.getId()) {
+                users.putIfAbsent(userId, admin);
+            }
+            tokens.put(tokenHash, new SessionLedger.TokenState(userId, issuedAt, false, null, false));
+        }
+
+        @Override
+        public SessionLedger.TokenState lookup(String tokenHash) throws SQLException {
+            check();
+            SessionLedger.TokenState token = tokens.get(tokenHash);
+            return token != null ? joined(token) : null;
+        }
+
+        @Override
+        public Map<String, SessionLedger.TokenState> lookup(Collection<String> tokenHashes) throws SQLException {
+            Map<String, SessionLedger.TokenState> states = new HashMap<>();
+            for (String hash : tokenHashes) {
+                SessionLedger.TokenState state = lookup(hash);
+                if (state != null) {
+                    states.put(hash, state);
+                }
+            }
+            return states;
+        }
+
+        @Override
+        public void touched(Map<String, Long> lastAccess) throws SQLException {
+            check();
+            for (Map.Entry<String, Long> entry : lastAccess.entrySet()) {
+                SessionLedger.TokenState token = tokens.get(entry.getKey());
+                if (token != null && entry.getValue() > token.lastAccess) {
+                    tokens.put(entry.getKey(), new SessionLedger.TokenState(token.userId, entry.getValue(),
+                            token.revoked, null, false));
+                }
+            }
+        }
+
+        @Override
+        public void revoke(String tokenHash, long at) throws SQLException {
+            check();
+            SessionLedger.TokenState token = tokens.get(tokenHash);
+            if (token != null) {
+                tokens.put(tokenHash, new SessionLedger.TokenState(token.userId, token.lastAccess, true, null, false));
+            }
+        }
+
+        @Override
+        public void revokeUser(int userId, long at) throws SQLException {
+            check();
+            for (Map.Entry<String, SessionLedger.TokenState> entry : tokens.entrySet()) {
+                SessionLedger.TokenState token = entry.getValue();
+                if (token.userId == userId) {
+                    entry.setValue(new SessionLedger.TokenState(userId, token.lastAccess, true, null, false));
+                }
+            }
+        }
+
+        @Override
+        public void purge(long now) {
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package iuh.fit.se.server.session;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public class TokenCodecTest extends TestCase {
+    private static final long MAX_AGE = 60_000;
+    private static final long NOW = 1_000_000;
+
+    private final TokenCodec codec = new TokenCodec("secret".getBytes(StandardCharsets.UTF_8), MAX_AGE);
+
+    public void testVerifyReturnsIssuedClaims() {
+        String token = codec.issue(7, "admin", "ADMIN", NOW);
+
+        TokenCodec.Claims claims = codec.verify(token, NOW + 1);
+
+        assertNotNull(claims);
+        assertEquals(7, claims.userId);
+        assertEquals("admin", claims.username);
+        assertEquals("ADMIN", claims.role);
+        assertEquals(NOW, claims.issuedAt);
+    }
+
+    public void testTokensAreUnique() {
+        assertFalse(codec.issue(7, "admin", "ADMIN", NOW).equals(codec.issue(7, "admin", "ADMIN", NOW)));
+    }
+
+    public void testTokenFromAnotherKeyIsRefused() {
+        TokenCodec other = new TokenCodec("other".getBytes(StandardCharsets.UTF_8), MAX_AGE);
+
+        assertNull(codec.verify(other.issue(7, "admin", "ADMIN", NOW), NOW));
+    }
+
+    public void testTamperedPayloadIsRefused() {
+        String token = codec.issue(7, "staff", "STAFF", NOW);
+        int dot = token.indexOf('.');
+        byte[] payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+        // Last byte of the issue time
+        payload[payload.length - 1] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(payload) + token.substring(dot);
+
+        assertNull(codec.verify(tampered, NOW));
+    }
+
+    public void testTamperedSignatureIsRefused() {
+        String token = codec.issue(7, "staff", "STAFF", NOW);
+        // First character of the signature: every one of its bits is data (the last one carries padding bits)
+        int first = token.indexOf('.') + 1;
+        char c = token.charAt(first);
+        String tampered = token.substring(0, first) + (c == 'A' ? 'B' : 'A') + token.substring(first + 1);
+
+        assertNull(codec.verify(tampered, NOW));
+    }
+
+    public void testMalformedTokensAreRefused() {
+        assertNull(codec.verify("", NOW));
+        assertNull(codec.verify("no-dot", NOW));
+        assertNull(codec.verify("not base64!.x", NOW));
+        assertNull(codec.verify("AAAA.AAAA", NOW));
+    }
+
+    public void testTokenOlderThanMaxAgeIsRefused() {
+        String token = codec.issue(7, "admin", "ADMIN", NOW);
+
+        assertNotNull(codec.verify(token, NOW + MAX_AGE));
+        assertNull(codec.verify(token, NOW + MAX_AGE + 1));
+    }
+
+    public void testHashIsStableHex() {
+        String hash = TokenCodec.hash("token");
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, TokenCodec.hash("token"));
+        assertFalse(hash.equals(TokenCodec.hash("token2")));
+    }
+}
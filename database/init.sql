@@ -186,6 +186,27 @@ CREATE TABLE invoices (
                           INDEX idx_status (status)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
+-- ================================================
+-- TABLE: code_sequences (Bộ đếm mã đơn hàng, hóa đơn)
+-- ================================================
+CREATE TABLE code_sequences (
+                                name VARCHAR(50) PRIMARY KEY,
+                                next_value BIGINT NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- ================================================
+-- TABLE: session_tokens (Phiên đăng nhập dùng chung giữa các server)
+-- ================================================
+CREATE TABLE session_tokens (
+                                token_hash CHAR(64) PRIMARY KEY,
+                                user_id INT NOT NULL,
+                                last_access BIGINT NOT NULL,
+                                revoked_at BIGINT NULL,
+                                expires_at BIGINT NOT NULL,
+                                INDEX idx_user (user_id),
+                                INDEX idx_expires (expires_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
 -- ================================================
 -- INSERT SAMPLE DATA
 -- ================================================